@@ -0,0 +1,90 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.frameworkstate.entropy;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.framework.ServiceReference;
+
+import com.beinformed.framework.osgi.frameworkstate.Token;
+import com.beinformed.framework.osgi.osgitest.benchmark.Fixtures;
+
+/**
+ * Service events and units of work reported to {@link EntropyBasedFrameworkStateService} by many threads at once,
+ * as happens while a large number of bundles starts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntropyBasedFrameworkStateServiceBenchmark {
+
+	private EntropyBasedFrameworkStateService frameworkStateService;
+
+	private ServiceReference reference;
+
+	private Object service;
+
+	@Setup
+	public void setup() {
+		frameworkStateService = new EntropyBasedFrameworkStateService();
+		reference = Fixtures.serviceReference("objectClass", new String[] { Runnable.class.getName() });
+		service = new Object();
+	}
+
+	@TearDown
+	public void tearDown() {
+		frameworkStateService.stop();
+	}
+
+	@Benchmark
+	public void serviceAdded() {
+		frameworkStateService.serviceAdded(reference, service);
+	}
+
+	@Benchmark
+	@Threads(8)
+	public void serviceAddedContended() {
+		frameworkStateService.serviceAdded(reference, service);
+	}
+
+	@Benchmark
+	public void work() {
+		Token token = frameworkStateService.startWork(this);
+		frameworkStateService.endWork(token);
+	}
+
+	@Benchmark
+	@Threads(8)
+	public void workContended() {
+		Token token = frameworkStateService.startWork(this);
+		frameworkStateService.endWork(token);
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.annotation.processor;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.beinformed.framework.osgi.osgitest.TestMonitor;
+import com.beinformed.framework.osgi.osgitest.base.NullTestMonitor;
+
+/**
+ * Invocation of a test case of an annotation based test suite through {@link TestSuiteImpl#test(String, TestMonitor)},
+ * for the first and the last test case of test suites of increasing size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TestSuiteImplBenchmark {
+
+	@Param({ "1", "16", "256" })
+	int testCases;
+
+	private TestSuiteImpl testSuite;
+
+	private TestMonitor monitor;
+
+	private String lastTestCase;
+
+	@Setup
+	public void setup() throws Exception {
+		testSuite = new TestSuiteImpl();
+		testSuite.setLabel("Benchmark test suite");
+		Fixture fixture = new Fixture();
+		for (int i = 0; i < testCases; i++) {
+			TestCaseImpl testCase = new TestCaseImpl();
+			testCase.setIdentifier("test" + i);
+			testCase.setLabel("test" + i);
+			testCase.setInstance(fixture);
+			testCase.setMethod(Fixture.class.getMethod("test", TestMonitor.class));
+			testSuite.addTestCase(testCase);
+		}
+		monitor = new NullTestMonitor();
+		lastTestCase = "test" + (testCases - 1);
+	}
+
+	@Benchmark
+	public void firstTestCase() {
+		testSuite.test("test0", monitor);
+	}
+
+	@Benchmark
+	public void lastTestCase() {
+		testSuite.test(lastTestCase, monitor);
+	}
+
+	public static class Fixture {
+
+		public void test(TestMonitor monitor) {
+			monitor.assertion(true, null);
+		}
+	}
+}
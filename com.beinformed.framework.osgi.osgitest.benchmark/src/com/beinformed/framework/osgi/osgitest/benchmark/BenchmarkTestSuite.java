@@ -0,0 +1,93 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.benchmark;
+
+import com.beinformed.framework.osgi.osgitest.TestMonitor;
+import com.beinformed.framework.osgi.osgitest.base.TestSuiteBase;
+
+/**
+ * Test suite with 16 trivial test cases, test00 up to test15.
+ */
+public class BenchmarkTestSuite extends TestSuiteBase {
+
+	public BenchmarkTestSuite() {
+		super("Benchmark test suite");
+	}
+
+	public void test00(TestMonitor monitor) {
+		monitor.assertion(true, null);
+	}
+
+	public void test01(TestMonitor monitor) {
+		monitor.assertion(true, null);
+	}
+
+	public void test02(TestMonitor monitor) {
+		monitor.assertion(true, null);
+	}
+
+	public void test03(TestMonitor monitor) {
+		monitor.assertion(true, null);
+	}
+
+	public void test04(TestMonitor monitor) {
+		monitor.assertion(true, null);
+	}
+
+	public void test05(TestMonitor monitor) {
+		monitor.assertion(true, null);
+	}
+
+	public void test06(TestMonitor monitor) {
+		monitor.assertion(true, null);
+	}
+
+	public void test07(TestMonitor monitor) {
+		monitor.assertion(true, null);
+	}
+
+	public void test08(TestMonitor monitor) {
+		monitor.assertion(true, null);
+	}
+
+	public void test09(TestMonitor monitor) {
+		monitor.assertion(true, null);
+	}
+
+	public void test10(TestMonitor monitor) {
+		monitor.assertion(true, null);
+	}
+
+	public void test11(TestMonitor monitor) {
+		monitor.assertion(true, null);
+	}
+
+	public void test12(TestMonitor monitor) {
+		monitor.assertion(true, null);
+	}
+
+	public void test13(TestMonitor monitor) {
+		monitor.assertion(true, null);
+	}
+
+	public void test14(TestMonitor monitor) {
+		monitor.assertion(true, null);
+	}
+
+	public void test15(TestMonitor monitor) {
+		monitor.assertion(true, null);
+	}
+}
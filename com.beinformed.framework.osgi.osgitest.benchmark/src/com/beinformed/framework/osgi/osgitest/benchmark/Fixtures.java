@@ -0,0 +1,108 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.osgi.framework.ServiceReference;
+
+import com.beinformed.framework.osgi.osgitest.ScopedTestMonitor;
+import com.beinformed.framework.osgi.osgitest.TestCase;
+import com.beinformed.framework.osgi.osgitest.TestSuite;
+import com.beinformed.framework.osgi.osgitest.base.NullTestMonitor;
+
+/**
+ * Test doubles shared by the benchmarks.
+ */
+public final class Fixtures {
+
+	private Fixtures() {
+	}
+
+	/**
+	 * Creates a service reference that only answers its properties. Every reference is a distinct object, so
+	 * references can be used as map keys.
+	 * @param properties the service properties, as alternating keys and values.
+	 */
+	public static ServiceReference serviceReference(Object... properties) {
+		final Map<String, Object> map = new HashMap<String, Object>();
+		for (int i = 0; i + 1 < properties.length; i += 2) {
+			map.put((String) properties[i], properties[i + 1]);
+		}
+		return (ServiceReference) Proxy.newProxyInstance(Fixtures.class.getClassLoader(), new Class<?>[] { ServiceReference.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if ("getProperty".equals(method.getName())) {
+							return map.get(args[0]);
+						} else if ("getPropertyKeys".equals(method.getName())) {
+							return map.keySet().toArray(new String[map.size()]);
+						} else if ("hashCode".equals(method.getName())) {
+							return System.identityHashCode(proxy);
+						} else if ("equals".equals(method.getName())) {
+							return proxy == args[0];
+						} else if ("toString".equals(method.getName())) {
+							return "ServiceReference" + Collections.unmodifiableMap(map);
+						}
+						return null;
+					}
+				});
+	}
+
+	/**
+	 * @return a test case with the given identifier, labelled with the identifier.
+	 */
+	public static TestCase testCase(final String identifier) {
+		return new TestCase() {
+			@Override
+			public String getIdentifier() {
+				return identifier;
+			}
+
+			@Override
+			public String getLabel() {
+				return identifier;
+			}
+		};
+	}
+
+	/**
+	 * ScopedTestMonitor that ignores all events.
+	 */
+	public static class NullScopedTestMonitor extends NullTestMonitor implements ScopedTestMonitor {
+
+		@Override
+		public void beginTest(TestSuite suite, TestCase testCase) {
+		}
+
+		@Override
+		public void assertion(TestSuite suite, TestCase testCase, boolean condition, String messageOnFailure) {
+		}
+
+		@Override
+		public void error(TestSuite suite, TestCase testCase, String message, Throwable exception) {
+		}
+
+		@Override
+		public void endTest(TestSuite suite, TestCase testCase) {
+		}
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.beinformed.framework.osgi.osgitest.TestMonitor;
+import com.beinformed.framework.osgi.osgitest.base.NullTestMonitor;
+import com.beinformed.framework.osgi.osgitest.base.TestSuiteBase;
+
+/**
+ * Invocation of a test case through {@link TestSuiteBase#test(String, TestMonitor)}: the lookup of the test method
+ * and its reflective invocation, single threaded and with concurrent callers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TestSuiteBaseBenchmark {
+
+	private TestSuiteBase testSuite;
+
+	private TestMonitor monitor;
+
+	@Setup
+	public void setup() {
+		testSuite = new BenchmarkTestSuite();
+		monitor = new NullTestMonitor();
+	}
+
+	@Benchmark
+	public void test() {
+		testSuite.test("test15", monitor);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void testContended() {
+		testSuite.test("test15", monitor);
+	}
+
+	@Benchmark
+	public void testUnknown() {
+		testSuite.test("unknown", monitor);
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.testrunner;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.framework.ServiceReference;
+
+import com.beinformed.framework.osgi.osgitest.TestCase;
+import com.beinformed.framework.osgi.osgitest.TestMonitor;
+import com.beinformed.framework.osgi.osgitest.TestSuite;
+import com.beinformed.framework.osgi.osgitest.base.NullTestMonitor;
+import com.beinformed.framework.osgi.osgitest.base.TestSuiteBase;
+import com.beinformed.framework.osgi.osgitest.benchmark.Fixtures;
+
+/**
+ * Dispatch of test events by {@link CompositeTestMonitor} to the registered test monitors, either synchronously or
+ * through an {@link AsyncTestMonitor} per test monitor with the given overflow.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompositeTestMonitorBenchmark {
+
+	@Param({ "1", "4", "16" })
+	int monitors;
+
+	@Param({ "false", "true" })
+	boolean scoped;
+
+	@Param({ "sync", "block", "drop-passes", "spill" })
+	String dispatch;
+
+	private Map<ServiceReference, TestMonitor> testMonitors;
+
+	private CompositeTestMonitor compositeTestMonitor;
+
+	private TestSuite testSuite;
+
+	private TestCase testCase;
+
+	@Setup
+	public void setup() {
+		testMonitors = new ConcurrentHashMap<ServiceReference, TestMonitor>();
+		for (int i = 0; i < monitors; i++) {
+			TestMonitor testMonitor = scoped ? new Fixtures.NullScopedTestMonitor() : new NullTestMonitor();
+			if (!"sync".equals(dispatch)) {
+				testMonitor = new AsyncTestMonitor(testMonitor, 8192, MonitorOverflow.parse(dispatch));
+			}
+			testMonitors.put(Fixtures.serviceReference(), testMonitor);
+		}
+		compositeTestMonitor = new CompositeTestMonitor(testMonitors);
+		testSuite = new TestSuiteBase("suite") {
+		};
+		testCase = Fixtures.testCase("case");
+	}
+
+	@TearDown
+	public void tearDown() {
+		for (TestMonitor testMonitor : testMonitors.values()) {
+			if (testMonitor instanceof AsyncTestMonitor) {
+				((AsyncTestMonitor) testMonitor).close();
+			}
+		}
+	}
+
+	@Benchmark
+	public void assertion() {
+		compositeTestMonitor.assertion(testSuite, testCase, true, "message");
+	}
+
+	@Benchmark
+	public void testCase() {
+		compositeTestMonitor.beginTest(testSuite, testCase);
+		compositeTestMonitor.assertion(testSuite, testCase, true, "message");
+		compositeTestMonitor.endTest(testSuite, testCase);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void assertionContended() {
+		compositeTestMonitor.assertion(testSuite, testCase, true, "message");
+	}
+}
@@ -0,0 +1,51 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest;
+
+/**
+ * Latency statistics of the measured invocations of a test case. All durations are in nanoseconds.
+ */
+public interface LatencyStatistics {
+
+	/**
+	 * @return the number of measured invocations.
+	 */
+	long getCount();
+
+	/**
+	 * @return the shortest measured duration, or 0 if nothing was measured.
+	 */
+	long getMin();
+
+	/**
+	 * @return the mean of the measured durations, or 0 if nothing was measured.
+	 */
+	double getMean();
+
+	/**
+	 * Returns the duration that the given percentage of the measured invocations did not exceed.
+	 * 
+	 * @param percentile
+	 *            The percentile, between 0 and 100.
+	 * @return the duration at the given percentile, or 0 if nothing was measured.
+	 */
+	long getPercentile(double percentile);
+
+	/**
+	 * @return the longest measured duration, or 0 if nothing was measured.
+	 */
+	long getMax();
+}
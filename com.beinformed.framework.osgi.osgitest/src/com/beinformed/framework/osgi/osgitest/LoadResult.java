@@ -0,0 +1,59 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest;
+
+/**
+ * Result of driving a test case with load through a {@link LoadTestRunner}. The latency statistics cover all
+ * invocations of the test case; all durations are in nanoseconds.
+ */
+public interface LoadResult extends LatencyStatistics {
+
+	/**
+	 * @return the number of completed invocations of the test case, equal to {@link #getCount()}.
+	 */
+	long getOperations();
+
+	/**
+	 * @return the number of invocations that reported a failed assertion or an error, or threw an exception.
+	 */
+	long getErrors();
+
+	/**
+	 * @return the fraction of the invocations that failed, between 0 and 1.
+	 */
+	double getErrorRate();
+
+	/**
+	 * @return the time between the start of the first and the end of the last invocation.
+	 */
+	long getDuration();
+
+	/**
+	 * @return the number of completed invocations per second.
+	 */
+	double getThroughput();
+
+	/**
+	 * @return the number of invocations per second an open loop load was asked to start, or 0 for a closed loop.
+	 */
+	double getTargetRate();
+
+	/**
+	 * @return the number of invocations per second that were actually started. For an open loop load this falls
+	 *         below the target rate when the test case or the workers cannot keep up.
+	 */
+	double getAchievedRate();
+}
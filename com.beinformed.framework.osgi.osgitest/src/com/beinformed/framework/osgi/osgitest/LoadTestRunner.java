@@ -0,0 +1,78 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest;
+
+/**
+ * Test runner service interface for using test cases as load generators. <br />
+ * The test case is executed through {@link TestSuite#test(String, TestMonitor)} with a {@link TestCaseMonitor}
+ * that is cancelled when the load ends. Assertions are not reported individually; an invocation counts as failed
+ * when it reports a failed assertion or an error, or throws an exception. The result is also reported to the
+ * {@link MeasurementMonitor}s.
+ */
+public interface LoadTestRunner {
+
+	/**
+	 * Drives a test case in a closed loop: each worker executes the test case again as soon as its previous
+	 * invocation has returned, until the duration has elapsed or the number of iterations has been executed.
+	 * 
+	 * @param testSuiteLabel
+	 *            The label of the test suite.
+	 * @param testCaseIdentifier
+	 *            The identifier of the test case to execute.
+	 * @param workers
+	 *            The number of concurrent workers.
+	 * @param executor
+	 *            The kind of threads the workers run on: "platform" or "virtual".
+	 * @param durationMillis
+	 *            The duration of the load in milliseconds, or 0 for no limit.
+	 * @param iterations
+	 *            The total number of invocations, or 0 for no limit.
+	 * @return the result, or null if the test case does not exist or its test suite could not be wired.
+	 * @throws IllegalArgumentException
+	 *             if the number of workers is not positive, or if neither a duration nor a number of iterations is
+	 *             given.
+	 */
+	LoadResult executeClosedLoop(String testSuiteLabel, String testCaseIdentifier, int workers, String executor, long durationMillis,
+			long iterations);
+
+	/**
+	 * Drives a test case in an open loop: invocations are started at a constant rate, regardless of how long
+	 * earlier invocations take, until the duration has elapsed or the number of iterations has been started. The
+	 * latency of each invocation is measured from the time it was scheduled to start, so time spent waiting for a
+	 * slow test case or for a free worker is included in the latency (no coordinated omission).
+	 * 
+	 * @param testSuiteLabel
+	 *            The label of the test suite.
+	 * @param testCaseIdentifier
+	 *            The identifier of the test case to execute.
+	 * @param ratePerSecond
+	 *            The number of invocations to start per second.
+	 * @param executor
+	 *            The kind of threads the invocations run on: "platform" or "virtual".
+	 * @param maxConcurrency
+	 *            The maximum number of invocations running at once, or 0 for no limit. This is also the number of
+	 *            platform threads.
+	 * @param durationMillis
+	 *            The duration of the load in milliseconds, or 0 for no limit.
+	 * @param iterations
+	 *            The total number of invocations, or 0 for no limit.
+	 * @return the result, or null if the test case does not exist or its test suite could not be wired.
+	 * @throws IllegalArgumentException
+	 *             if the rate is not positive, or if neither a duration nor a number of iterations is given.
+	 */
+	LoadResult executeOpenLoop(String testSuiteLabel, String testCaseIdentifier, double ratePerSecond, String executor, int maxConcurrency,
+			long durationMillis, long iterations);
+}
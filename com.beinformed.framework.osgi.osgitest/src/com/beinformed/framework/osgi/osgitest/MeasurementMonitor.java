@@ -0,0 +1,37 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest;
+
+/**
+ * Optional extension of {@link TestMonitor} for monitors that want the latencies of test cases. <br />
+ * When test cases are executed repeatedly, test runners time every measured invocation and report the
+ * latency statistics of each test case once all measured runs of its test suite have completed. A
+ * {@link LoadTestRunner} reports a {@link LoadResult} when a load run has completed.
+ */
+public interface MeasurementMonitor extends TestMonitor {
+
+	/**
+	 * Call back with the latency statistics of a test case.
+	 * 
+	 * @param suite
+	 *            The TestSuite the test case belongs to.
+	 * @param testCase
+	 *            The measured test case.
+	 * @param statistics
+	 *            The latencies of the measured invocations of the test case.
+	 */
+	void measurement(TestSuite suite, TestCase testCase, LatencyStatistics statistics);
+}
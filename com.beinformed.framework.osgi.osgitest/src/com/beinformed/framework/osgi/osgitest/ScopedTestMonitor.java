@@ -0,0 +1,76 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest;
+
+/**
+ * Optional extension of {@link TestMonitor} for monitors that want test case
+ * results attributed to the test case they belong to. <br />
+ * When a TestMonitor implements this interface, test runners report test case
+ * events through the methods below instead of their unqualified counterparts.
+ * These methods may be called concurrently for different test cases, so
+ * implementations should not keep the state of the current test case in
+ * shared fields.
+ */
+public interface ScopedTestMonitor extends TestMonitor {
+
+	/**
+	 * Call back to indicate the start of a test case.
+	 * 
+	 * @param suite
+	 *            The TestSuite the test case belongs to.
+	 * @param testCase
+	 *            The meta data of the test case that is about to begin.
+	 */
+	void beginTest(TestSuite suite, TestCase testCase);
+
+	/**
+	 * Performs the given assertion for the given test case.
+	 * 
+	 * @param suite
+	 *            The TestSuite the test case belongs to.
+	 * @param testCase
+	 *            The test case the assertion belongs to.
+	 * @param condition
+	 *            The condition to evaluate
+	 * @param messageOnFailure
+	 *            The message to be applied when the condition fails.
+	 */
+	void assertion(TestSuite suite, TestCase testCase, boolean condition, String messageOnFailure);
+
+	/**
+	 * Call back to indicate something went wrong in the given test case.
+	 * 
+	 * @param suite
+	 *            The TestSuite the test case belongs to.
+	 * @param testCase
+	 *            The test case the error belongs to.
+	 * @param message
+	 *            The failure message.
+	 * @param exception
+	 *            An optional exception.
+	 */
+	void error(TestSuite suite, TestCase testCase, String message, Throwable exception);
+
+	/**
+	 * Call back to indicate the end of a test case.
+	 * 
+	 * @param suite
+	 *            The TestSuite the test case belongs to.
+	 * @param testCase
+	 *            The meta data of the test case that has ended.
+	 */
+	void endTest(TestSuite suite, TestCase testCase);
+}
@@ -0,0 +1,42 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest;
+
+/**
+ * Test runner service interface for executing a selection of the registered test cases.
+ * 
+ * @since 1.1
+ */
+public interface SelectiveTestRunner {
+
+	/**
+	 * Execute the test cases matched by a selection expression. The expression combines terms with {@code and},
+	 * {@code or} (or {@code ,}), {@code not} (or {@code !}) and parentheses. The terms are:
+	 * <ul>
+	 * <li>{@code suite:<label>} matches all test cases of the test suites with the given label,</li>
+	 * <li>{@code case:<identifier>} matches the test cases with the given identifier,</li>
+	 * <li>{@code tag:<tag>} matches the test cases with the given tag and all test cases of the test suites with
+	 * it, see {@link Tagged}.</li>
+	 * </ul>
+	 * Labels, identifiers and tags may contain the wildcards {@code *} and {@code ?}, and may be quoted to include
+	 * spaces. For example: {@code tag:smoke and not tag:slow}.
+	 * 
+	 * @return the number of test cases that matched and were executed.
+	 * @throws IllegalArgumentException
+	 *             if the selection expression is not valid.
+	 */
+	public int executeTests(String selection);
+}
@@ -0,0 +1,40 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest;
+
+/**
+ * Optional extension of {@link ScopedTestMonitor} for monitors that tell test cases that were not executed from
+ * test cases that passed. <br />
+ * A test runner that does not execute a test case, for instance because it passed the last time and nothing it
+ * depends on changed since, still begins and ends the test case, so other monitors count it as passed. In between
+ * it reports why the test case was skipped.
+ * 
+ * @since 1.1
+ */
+public interface SkipMonitor extends ScopedTestMonitor {
+
+	/**
+	 * Call back to indicate that the given test case, which has begun, is not executed.
+	 * 
+	 * @param suite
+	 *            The TestSuite the test case belongs to.
+	 * @param testCase
+	 *            The skipped test case.
+	 * @param reason
+	 *            Why the test case is not executed.
+	 */
+	void skipped(TestSuite suite, TestCase testCase, String reason);
+}
@@ -0,0 +1,34 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest;
+
+import java.util.Set;
+
+/**
+ * Optional interface for {@link TestSuite}s and {@link TestCase}s that carry tags, such as {@code smoke},
+ * {@code slow} or {@code prod-safe}. <br />
+ * Test runners can select test cases by tag. The tags of a test suite apply to all its test cases. Test suites can
+ * also be tagged with the {@link TestSuite#TAGS_PROPERTY} service property.
+ * 
+ * @since 1.1
+ */
+public interface Tagged {
+
+	/**
+	 * @return The tags, never null.
+	 */
+	Set<String> getTags();
+}
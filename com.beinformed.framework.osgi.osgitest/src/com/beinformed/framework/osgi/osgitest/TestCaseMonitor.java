@@ -0,0 +1,46 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest;
+
+/**
+ * Monitor that is scoped to the execution of a single test case. <br />
+ * TestRunner implementations may pass a TestCaseMonitor to
+ * {@link TestSuite#test(String, TestMonitor)}. All results reported through it
+ * are attributed to the test case it was created for, also when multiple test
+ * cases are executed concurrently.
+ */
+public interface TestCaseMonitor extends TestMonitor {
+
+	/**
+	 * @return The TestSuite the test case belongs to
+	 */
+	TestSuite getTestSuite();
+
+	/**
+	 * @return The test case this monitor is scoped to
+	 */
+	TestCase getTestCase();
+
+	/**
+	 * Indicates whether the test case has been cancelled, e.g. because it
+	 * exceeded its timeout. Long running test cases should check this
+	 * regularly and return as soon as it is true. The thread running a
+	 * cancelled test case is also interrupted.
+	 * 
+	 * @return true if the test case has been cancelled
+	 */
+	boolean isCancelled();
+}
@@ -20,6 +20,14 @@ package com.beinformed.framework.osgi.osgitest;
  */
 public interface TestMonitor {
 
+	/**
+	 * Service property of a test monitor with whether test runners dispatch events to it on a thread of its own, as
+	 * a {@code Boolean} or a {@code String}. It overrides the dispatch setting of the test runner for that monitor.
+	 * 
+	 * @since 1.1
+	 */
+	String ASYNC_DISPATCH_PROPERTY = "osgitest.asyncDispatch";
+
 	/**
 	 * Call back method to indicate the begin of a test run.
 	 */
@@ -28,7 +28,41 @@ import java.util.List;
 public interface TestSuite {
 
 	/**
-	 * @return A list of all test cases for this TestSuite
+	 * Service property with the id of the bundle that contains the test suite, for test suites that are
+	 * registered by another bundle on its behalf. Test runners use it to find out what a test suite depends on.
+	 * 
+	 * @since 1.1
+	 */
+	String BUNDLE_PROPERTY = "osgitest.bundle";
+
+	/**
+	 * Service property with the names of the services a test suite depends on, as a {@code String[]}.
+	 * Test runners use it to find out what a test suite depends on.
+	 * 
+	 * @since 1.1
+	 */
+	String DEPENDENCIES_PROPERTY = "osgitest.dependencies";
+
+	/**
+	 * Service property with the tags of a test suite, as a {@code String[]} or a comma separated {@code String}.
+	 * Test runners can select test suites by tag.
+	 * 
+	 * @since 1.1
+	 */
+	String TAGS_PROPERTY = "osgitest.tags";
+
+	/**
+	 * Service property of a lifecycle test suite with the time (in milliseconds) its dependencies are given to become
+	 * available, as a {@code Number} or a {@code String}. It overrides the wiring timeout of the test runner.
+	 * 
+	 * @since 1.1
+	 */
+	String WIRING_TIMEOUT_PROPERTY = "osgitest.wiringTimeout";
+
+	/**
+	 * @return A list of all test cases for this TestSuite. Test runners may index the test cases when the
+	 *         TestSuite service is registered; a TestSuite that changes its test cases afterwards should modify
+	 *         the properties of its service, so they are indexed again.
 	 */
 	List<TestCase> getTestCases();
 	
@@ -38,7 +72,9 @@ public interface TestSuite {
 	 * @param testCaseId
 	 *            the test case to execute
 	 * @param monitor
-	 *            the call back monitor to accept test results.
+	 *            the call back monitor to accept test results. Test runners
+	 *            may pass a {@link TestCaseMonitor} scoped to the given test
+	 *            case.
 	 */
 	void test(String testCaseId, TestMonitor monitor);
 	
@@ -25,4 +25,11 @@ import java.lang.annotation.Target;
 public @interface TestCase {
 	String identifier();
 	String label();
+
+	/**
+	 * Tags of the test case, in addition to the tags of its test suite.
+	 *
+	 * @since 1.1
+	 */
+	String[] tags() default {};
 }
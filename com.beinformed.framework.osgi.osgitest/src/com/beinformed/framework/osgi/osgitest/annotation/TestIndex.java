@@ -0,0 +1,47 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.annotation;
+
+/**
+ * Describes the test index of a bundle. <br />
+ * The test index lists the classes of a bundle that are annotated with {@link TestSuite}. It is
+ * written at build time by the bnd plugin
+ * {@code com.beinformed.framework.osgi.osgitest.annotation.indexer.TestIndexPlugin}, and read by
+ * the annotation processor, which only turns services into test suites when their class is listed
+ * in the index of their bundle. <br />
+ * The index is a UTF-8 text resource with one fully qualified class name per line. Empty lines and
+ * lines that start with {@code #} are ignored. <br />
+ * The bnd plugin is compiled against the constants of this class but runs without it, so they must
+ * stay compile time constants.
+ *
+ * @since 1.1
+ */
+public final class TestIndex {
+
+	/**
+	 * Manifest header that holds the path of the test index resource within the bundle.
+	 */
+	public static final String HEADER = "OSGiTest-Index";
+
+	/**
+	 * Default path of the test index resource within the bundle.
+	 */
+	public static final String DEFAULT_LOCATION = "OSGI-INF/osgitest/index";
+
+	private TestIndex() {
+		// constants only
+	}
+}
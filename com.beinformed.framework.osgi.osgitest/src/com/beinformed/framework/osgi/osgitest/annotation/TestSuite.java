@@ -20,8 +20,30 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
+/**
+ * Marks a service implementation as test suite. <br />
+ * The annotation processor discovers annotated test suites that are registered under their own class
+ * name and listed in the {@link TestIndex test index} of their bundle, or that are registered with the
+ * {@link #SERVICE_PROPERTY} service property set to {@code true}.
+ */
 @Target(ElementType.TYPE)
 @Retention(RetentionPolicy.RUNTIME)
 public @interface TestSuite {
+
+	/**
+	 * Service property that marks a service as annotated test suite, regardless of the names it is
+	 * registered under.
+	 *
+	 * @since 1.1
+	 */
+	String SERVICE_PROPERTY = "osgitest.testSuite";
+
 	String label();
+
+	/**
+	 * Tags of the test suite, which apply to all its test cases.
+	 *
+	 * @since 1.1
+	 */
+	String[] tags() default {};
 }
@@ -0,0 +1,76 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.annotation.indexer;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.TreeSet;
+
+import aQute.bnd.osgi.Analyzer;
+import aQute.bnd.osgi.Clazz;
+import aQute.bnd.osgi.EmbeddedResource;
+import aQute.bnd.service.AnalyzerPlugin;
+
+import com.beinformed.framework.osgi.osgitest.annotation.TestIndex;
+
+/**
+ * bnd plugin that writes the {@link TestIndex test index} of a bundle. <br />
+ * All classes in the bundle that are annotated with {@code TestSuite} are listed in the index, and
+ * the {@link TestIndex#HEADER} manifest header is set to its location. Bundles without test suites
+ * get neither. To use it, add the indexer bundle to the plugin path of a project:
+ *
+ * <pre>
+ * -pluginpath: ${ext.repositories.-pluginpath},\
+ * 	${workspace}/com.beinformed.framework.osgi.osgitest/generated/com.beinformed.framework.osgi.osgitest.indexer.jar
+ * -plugin: ${ext.repositories.-plugin},\
+ * 	com.beinformed.framework.osgi.osgitest.annotation.indexer.TestIndexPlugin
+ * </pre>
+ *
+ * The location of the index can be changed by setting the {@link TestIndex#HEADER} header. <br />
+ * The annotation classes are not on the plugin path. The plugin only needs {@link TestIndex} to
+ * compile: its constants are compile time constants, which the compiler copies into this class.
+ * TestIndex must therefore only hold such constants.
+ */
+public class TestIndexPlugin implements AnalyzerPlugin {
+
+	// a literal, referring to the annotation class would need it on the plugin path
+	private static final String TEST_SUITE_ANNOTATION = "com.beinformed.framework.osgi.osgitest.annotation.TestSuite";
+
+	private static final String ENCODING = "UTF-8";
+
+	@Override
+	public boolean analyzeJar(Analyzer analyzer) throws Exception {
+		Collection<Clazz> annotated = analyzer.getClasses("classes", Clazz.QUERY.ANNOTATED.name(), TEST_SUITE_ANNOTATION);
+		if (annotated.isEmpty()) {
+			return false;
+		}
+		Set<String> testSuites = new TreeSet<String>();
+		for (Clazz clazz : annotated) {
+			testSuites.add(clazz.getFQN());
+		}
+
+		StringBuilder index = new StringBuilder();
+		index.append("# Test suites of ").append(analyzer.getBsn()).append('\n');
+		for (String testSuite : testSuites) {
+			index.append(testSuite).append('\n');
+		}
+
+		String location = analyzer.getProperty(TestIndex.HEADER, TestIndex.DEFAULT_LOCATION);
+		analyzer.getJar().putResource(location, new EmbeddedResource(index.toString().getBytes(ENCODING), analyzer.lastModified()));
+		analyzer.setProperty(TestIndex.HEADER, location);
+		return false;
+	}
+}
@@ -19,13 +19,14 @@ import org.apache.felix.dm.DependencyActivatorBase;
 import org.apache.felix.dm.DependencyManager;
 import org.osgi.framework.BundleContext;
 
+import com.beinformed.framework.osgi.frameworkstate.FrameworkStateService;
+
 public class Activator extends DependencyActivatorBase {
 
 	@Override
 	public void init(BundleContext context, DependencyManager manager) throws Exception {
-		manager.add(createComponent().setImplementation(TestAnnotationProcessor.class).setCallbacks(null, null, null, null)
-				.add(createServiceDependency()
-				.setService("(objectClass=*)").setCallbacks("add", "remove")));
+		manager.add(createComponent().setImplementation(TestAnnotationProcessor.class).setCallbacks(null, "start", "stop", null)
+				.add(createServiceDependency().setService(FrameworkStateService.class).setRequired(false)));
 	}
 
 	@Override
@@ -15,44 +15,152 @@
  */
 package com.beinformed.framework.osgi.osgitest.annotation.processor;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Method;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.felix.dm.Component;
 import org.apache.felix.dm.DependencyManager;
 import org.apache.felix.dm.ServiceDependency;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.ServiceReference;
+import org.osgi.util.tracker.ServiceTracker;
 
+import com.beinformed.framework.osgi.frameworkstate.FrameworkStateService;
+import com.beinformed.framework.osgi.frameworkstate.Token;
 import com.beinformed.framework.osgi.osgitest.annotation.Dependency;
-import com.beinformed.framework.osgi.osgitest.annotation.TestCase;
 import com.beinformed.framework.osgi.osgitest.annotation.TestSuite;
 
 /**
- * A {@code TestAnnotationProcessor} instance listens white-board style to all registered services
+ * A {@code TestAnnotationProcessor} instance listens white-board style to the services that may be test suites
  * and creates a {@code TestSuite} for every service that is annotated with the {@code TestSuite} annotation.
  * Furthermore, for every method in the service instance that is annotated with the {@code TestCase} annotation
  * a {@code TestCase} is created.
+ * Only services registered under a class name listed in the
+ * {@link com.beinformed.framework.osgi.osgitest.annotation.TestIndex test index} of a bundle, or with the
+ * {@link TestSuite#SERVICE_PROPERTY} service property, are tracked. Other services are never dereferenced.
+ * The annotations are read once per class, see {@link TestSuiteMetaData}.
+ * <p>
+ * Services may be added and removed from any thread. The test suites of services that are added in the same
+ * burst, for instance while a bundle starts, are collected and registered together by a single thread once
+ * the burst is over, after {@code osgitest.registrationBatchDelay} milliseconds. While test suites are waiting
+ * to be registered, a unit of work is held on the {@link FrameworkStateService}, so the framework does not
+ * become available before they are. Test suites are unregistered right away.
  */
 public class TestAnnotationProcessor {
 
+	private static final long DEFAULT_REGISTRATION_BATCH_DELAY = 50;
+
 	private volatile DependencyManager manager;
 
+	private volatile FrameworkStateService frameworkStateService;
+
 	private final Map<ServiceReference, Component> services;
 
+	private final Object registrationLock = new Object();
+
+	/**
+	 * Test suite components that are waiting to be registered, guarded by the registration lock.
+	 */
+	private final Map<ServiceReference, Component> pending = new LinkedHashMap<ServiceReference, Component>();
+
+	/**
+	 * The unit of work held while test suites are pending, guarded by the registration lock.
+	 */
+	private Token pendingWork;
+
+	private boolean registrationScheduled;
+
+	private volatile long registrationBatchDelay = DEFAULT_REGISTRATION_BATCH_DELAY;
+
+	private volatile ScheduledExecutorService registrationExecutor;
+
+	private volatile TestIndexTracker testIndexTracker;
+
+	private volatile ServiceTracker markedServiceTracker;
+
 	/**
 	 * Default {@code TestAnnotationProcessor} constructor.
 	 */
 	public TestAnnotationProcessor() {
-		this.services = new HashMap<ServiceReference, Component>();
+		this.services = new ConcurrentHashMap<ServiceReference, Component>();
+	}
+
+	/**
+	 * Call back method that is called when the component is started.
+	 * Starts tracking the test indexes of bundles and the services marked as test suite.
+	 * 
+	 * @throws	Exception
+	 * 			when the filter for the marked services is invalid.
+	 */
+	public void start() throws Exception {
+		String registrationBatchDelayString = System.getProperty("osgitest.registrationBatchDelay");
+		if (registrationBatchDelayString != null) {
+			setRegistrationBatchDelay(Long.parseLong(registrationBatchDelayString));
+		}
+		registrationExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "osgitest-suite-registration");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		BundleContext context = manager.getBundleContext();
+		testIndexTracker = new TestIndexTracker(context, this);
+		testIndexTracker.open();
+		markedServiceTracker = new ServiceTracker(context, context.createFilter("(" + TestSuite.SERVICE_PROPERTY + "=true)"),
+				new TestSuiteServiceCustomizer(context, this));
+		markedServiceTracker.open();
+	}
+
+	/**
+	 * Call back method that is called when the component is stopped.
+	 */
+	public void stop() {
+		markedServiceTracker.close();
+		testIndexTracker.close();
+		registrationExecutor.shutdownNow();
+		synchronized (registrationLock) {
+			pending.clear();
+			registrationScheduled = false;
+			endPendingWork();
+		}
+	}
+
+	/**
+	 * @return	the time in milliseconds test suites are collected before they are registered together.
+	 */
+	public long getRegistrationBatchDelay() {
+		return registrationBatchDelay;
+	}
+
+	/**
+	 * @param	registrationBatchDelay
+	 * 			the time in milliseconds test suites are collected before they are registered together.
+	 * 			0 registers them as soon as the registration thread gets to them.
+	 */
+	public void setRegistrationBatchDelay(long registrationBatchDelay) {
+		if (registrationBatchDelay < 0) {
+			throw new IllegalArgumentException("The registration batch delay may not be negative: " + registrationBatchDelay);
+		}
+		this.registrationBatchDelay = registrationBatchDelay;
 	}
 
 	/**
 	 * Call back method that is called when a service is added.
 	 * When the service is annotated with {@code TestSuite} annotation
-	 * a {@code TestSuite} is created.
+	 * a {@code TestSuite} is created, and registered with the next batch.
 	 * 
 	 * @param	ref
 	 * 			a reference to the service that is being added.
@@ -60,17 +168,89 @@ public class TestAnnotationProcessor {
 	 * 			the new service that is added.
 	 */
 	public void add(ServiceReference ref, Object service) {
-		if (service.getClass().getAnnotation(TestSuite.class) != null) {
-			Component s = manager.createComponent().setInterface(com.beinformed.framework.osgi.osgitest.TestSuite.class.getName(), null)
-					.setImplementation(createTestSuite(service));
-			handleDependencies(s, service);
-			services.put(ref, s);
-			manager.add(s);
+		TestSuiteMetaData metaData = TestSuiteMetaData.of(service.getClass());
+		if (metaData == null) {
+			return;
+		}
+		synchronized (registrationLock) {
+			if (services.containsKey(ref) || pending.containsKey(ref)) {
+				// both listed in a test index and marked as test suite
+				return;
+			}
+			Component s = manager.createComponent()
+					.setInterface(com.beinformed.framework.osgi.osgitest.TestSuite.class.getName(), createProperties(service, metaData))
+					.setImplementation(createTestSuite(service, metaData));
+			handleDependencies(s, service, metaData.getDependency());
+			pending.put(ref, s);
+			if (!registrationScheduled) {
+				registrationScheduled = true;
+				if (pendingWork == null) {
+					pendingWork = frameworkStateService.startWork(this);
+				}
+				registrationExecutor.schedule(new Runnable() {
+					@Override
+					public void run() {
+						registerPending();
+					}
+				}, registrationBatchDelay, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	/**
+	 * Registers all pending test suites. Each one is moved from pending to registered under the registration lock,
+	 * so a concurrent removal either cancels it before it is registered or unregisters it afterwards.
+	 */
+	private void registerPending() {
+		List<ServiceReference> batch;
+		synchronized (registrationLock) {
+			registrationScheduled = false;
+			batch = new ArrayList<ServiceReference>(pending.keySet());
+		}
+		for (ServiceReference ref : batch) {
+			synchronized (registrationLock) {
+				Component s = pending.remove(ref);
+				if (s != null) {
+					services.put(ref, s);
+					manager.add(s);
+				}
+			}
+		}
+		synchronized (registrationLock) {
+			if (!registrationScheduled) {
+				endPendingWork();
+			}
+		}
+	}
+
+	private void endPendingWork() {
+		if (pendingWork != null) {
+			frameworkStateService.endWork(pendingWork);
+			pendingWork = null;
 		}
 	}
 	
-	private void handleDependencies(Component component, Object service){
-		Dependency annotation = service.getClass().getAnnotation(Dependency.class);
+	/**
+	 * Creates the service properties of the {@code TestSuite} for the given service, which tell test runners
+	 * which bundle contains the test suite, which service it depends on and how it is tagged.
+	 */
+	private Properties createProperties(Object service, TestSuiteMetaData metaData) {
+		Properties properties = new Properties();
+		Bundle bundle = FrameworkUtil.getBundle(service.getClass());
+		if (bundle != null) {
+			properties.put(com.beinformed.framework.osgi.osgitest.TestSuite.BUNDLE_PROPERTY, bundle.getBundleId());
+		}
+		Dependency dependency = metaData.getDependency();
+		if (dependency != null) {
+			properties.put(com.beinformed.framework.osgi.osgitest.TestSuite.DEPENDENCIES_PROPERTY, new String[] { dependency.serviceName().getName() });
+		}
+		if (!metaData.getTags().isEmpty()) {
+			properties.put(com.beinformed.framework.osgi.osgitest.TestSuite.TAGS_PROPERTY, metaData.getTags().toArray(new String[0]));
+		}
+		return properties;
+	}
+
+	private void handleDependencies(Component component, Object service, Dependency annotation){
 		if (annotation != null){
 			ServiceDependency serviceDependency = manager.createServiceDependency();
 			String filter = annotation.filter();
@@ -92,7 +272,7 @@ public class TestAnnotationProcessor {
 
 	/**
 	 * Call back method that is called when a service is removed.
-	 * When a service is annotated with a {@code TestSuite} annotation
+	 * When a {@code TestSuite} was created for the service
 	 * the created {@code TestSuite} is also removed.
 	 * 
 	 * @param	ref
@@ -101,9 +281,14 @@ public class TestAnnotationProcessor {
 	 * 			the service that is removed.
 	 */
 	public void remove(ServiceReference ref, Object service) {
-		if (service.getClass().getAnnotation(TestSuite.class) != null) {
+		synchronized (registrationLock) {
+			if (pending.remove(ref) != null) {
+				return;
+			}
 			Component s = services.remove(ref);
-			manager.remove(s);
+			if (s != null) {
+				manager.remove(s);
+			}
 		}
 	}
 
@@ -111,31 +296,24 @@ public class TestAnnotationProcessor {
 	 * Creates a {@code TestSuiteImpl} instance for the given service parameter.
 	 * @param	service
 	 * 			the service to create a {@code TestSuite} for.
+	 * @param	metaData
+	 * 			the test suite meta data of the class of the service.
 	 * @return	an initialized {@code TestSuiteImpl} instance.
 	 */
-	private TestSuiteImpl createTestSuite(Object service) {
+	private TestSuiteImpl createTestSuite(Object service, TestSuiteMetaData metaData) {
 		TestSuiteImpl testSuite = new TestSuiteImpl();
-		Class<?> c = service.getClass();
-		String label = c.getAnnotation(TestSuite.class).label();
-		testSuite.setLabel(label);
-		Method[] declaredMethods = c.getDeclaredMethods();
-		for (Method m : declaredMethods) {
-			Annotation[] methodAnnotations = m.getAnnotations();
-			for (Annotation a : methodAnnotations) {
-				if (a instanceof TestCase) {
-					TestCase testAnnotation = (TestCase) a;
-					TestCaseImpl testCase = new TestCaseImpl();
-					boolean valid = true;
-					testCase.setIdentifier(testAnnotation.identifier());
-					testCase.setLabel(testAnnotation.label());
-					testCase.setInstance(service);
-					testCase.setMethod(m);
-					if (valid) {
-						testSuite.addTestCase(testCase);
-					}
-				}
-			}
+		testSuite.setLabel(metaData.getLabel());
+		List<TestCaseImpl> testCases = new ArrayList<TestCaseImpl>();
+		for (TestSuiteMetaData.TestMethod m : metaData.getTestMethods()) {
+			TestCaseImpl testCase = new TestCaseImpl();
+			testCase.setIdentifier(m.getIdentifier());
+			testCase.setLabel(m.getLabel());
+			testCase.setTags(m.getTags());
+			testCase.setMethod(m.getMethod());
+			testCase.setInstance(service);
+			testCases.add(testCase);
 		}
+		testSuite.addTestCases(testCases);
 		return testSuite;
 	}
 
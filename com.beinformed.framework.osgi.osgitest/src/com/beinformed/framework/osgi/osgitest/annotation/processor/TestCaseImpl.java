@@ -15,25 +15,42 @@
  */
 package com.beinformed.framework.osgi.osgitest.annotation.processor;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Set;
 
+import com.beinformed.framework.osgi.osgitest.Tagged;
 import com.beinformed.framework.osgi.osgitest.TestCase;
 import com.beinformed.framework.osgi.osgitest.TestMonitor;
 
 
 /**
  * A {@code TestCase} implementation.
+ * The test method is bound to its instance as a method handle once both are known, so invoking
+ * the test case does not use {@link Method#invoke}. The handle is not a constant, so the JIT does
+ * not inline the test method into the caller.
  */
-public class TestCaseImpl implements TestCase {
+public class TestCaseImpl implements TestCase, Tagged {
+
+	private static final MethodType TEST_METHOD_TYPE = MethodType.methodType(void.class, TestMonitor.class);
 
 	private String m_identifier;
 
 	private String m_label;
 
+	private Set<String> m_tags = Collections.emptySet();
+
 	private Object m_object;
 
 	private Method m_method;
 
+	private MethodHandle m_handle;
+
+	private Exception m_bindException;
+
 	@Override
 	public String getIdentifier() {
 		return m_identifier;
@@ -44,6 +61,11 @@ public class TestCaseImpl implements TestCase {
 		return m_label;
 	}
 
+	@Override
+	public Set<String> getTags() {
+		return m_tags;
+	}
+
 	/**
 	 * @param	identifier
 	 * 			the new identifier of this {@code TestCase}. 
@@ -60,12 +82,21 @@ public class TestCaseImpl implements TestCase {
 		m_label = label;
 	}
 
+	/**
+	 * @param	tags
+	 * 			the new tags of this {@code TestCase}.
+	 */
+	protected void setTags(Set<String> tags) {
+		m_tags = tags;
+	}
+
 	/**
 	 * @param	object
 	 * 			the service to invoke the method on. 
 	 */
 	protected void setInstance(Object object) {
 		m_object = object;
+		bind();
 	}
 
 	/**
@@ -74,17 +105,42 @@ public class TestCaseImpl implements TestCase {
 	 */
 	protected void setMethod(Method method) {
 		m_method = method;
+		bind();
+	}
+
+	private void bind() {
+		m_handle = null;
+		m_bindException = null;
+		if (m_object != null && m_method != null) {
+			try {
+				// test methods do not have to be public
+				m_method.setAccessible(true);
+				m_handle = MethodHandles.lookup().unreflect(m_method).bindTo(m_object).asType(TEST_METHOD_TYPE);
+			} catch (Exception exception) {
+				m_bindException = exception;
+			}
+		}
 	}
 
 	/**
-	 * Invokes the specified test method on the instance object and passes the monitor along.
+	 * Invokes the specified test method on the instance object and passes the monitor along. Exceptions thrown
+	 * by the test method, including assertion errors, are reported to the monitor. Only virtual machine errors and
+	 * {@link ThreadDeath} are rethrown.
 	 * @param	monitor
 	 * 			the monitor to pass onto the invoked test method.
 	 */
 	protected void invoke(TestMonitor monitor) {
+		if (m_handle == null) {
+			monitor.error("Test failed.", m_bindException);
+			return;
+		}
 		try {
-			m_method.invoke(m_object, monitor);
-		} catch (Exception exception) {
+			m_handle.invokeExact(monitor);
+		} catch (VirtualMachineError error) {
+			throw error;
+		} catch (ThreadDeath death) {
+			throw death;
+		} catch (Throwable exception) {
 			monitor.error("Test failed.", exception);
 		}
 	}
@@ -0,0 +1,143 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.annotation.processor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.Constants;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.util.tracker.BundleTracker;
+import org.osgi.util.tracker.ServiceTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.beinformed.framework.osgi.osgitest.annotation.TestIndex;
+import com.beinformed.framework.osgi.osgitest.annotation.TestSuite;
+
+/**
+ * Tracks the bundles that declare a {@link TestIndex test index}. For every such bundle the services
+ * registered under the name of one of the test suite classes listed in its index are tracked and
+ * handed to the {@link TestAnnotationProcessor}. Bundles without the {@link TestIndex#HEADER} manifest
+ * header, and services under any other name, are not tracked. A warning is logged for bundles that import the
+ * annotations without declaring a test index, as their annotated test suites are probably not found.
+ */
+class TestIndexTracker extends BundleTracker<ServiceTracker> {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(TestIndexTracker.class);
+
+	private static final String ANNOTATION_PACKAGE = TestIndex.class.getName().substring(0, TestIndex.class.getName().lastIndexOf('.'));
+
+	private static final Pattern ANNOTATION_IMPORT = Pattern.compile("(^|,)\\s*" + Pattern.quote(ANNOTATION_PACKAGE) + "\\s*(;|,|$)");
+
+	private final TestAnnotationProcessor processor;
+
+	/**
+	 * The bundles that were warned about a missing test index, so they are warned only once.
+	 */
+	private final Set<Long> unindexedBundles = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+
+	/**
+	 * @param	context
+	 * 			the context of the annotation processor bundle.
+	 * @param	processor
+	 * 			the processor to hand the test suite services to.
+	 */
+	TestIndexTracker(BundleContext context, TestAnnotationProcessor processor) {
+		super(context, Bundle.STARTING | Bundle.ACTIVE | Bundle.STOPPING, null);
+		this.processor = processor;
+	}
+
+	@Override
+	public ServiceTracker addingBundle(Bundle bundle, BundleEvent event) {
+		String location = bundle.getHeaders("").get(TestIndex.HEADER);
+		if (location == null) {
+			if (importsAnnotations(bundle) && unindexedBundles.add(bundle.getBundleId())) {
+				LOGGER.warn("Bundle {} imports the test annotations, but does not declare a test index. Only its test suites registered "
+						+ "with the {} service property are found. Build it with the test index plugin.", bundle.getSymbolicName(),
+						TestSuite.SERVICE_PROPERTY);
+			}
+			return null;
+		}
+		URL entry = bundle.getEntry(location.trim());
+		if (entry == null) {
+			LOGGER.warn("Bundle {} declares test index {}, but does not contain it.", bundle.getSymbolicName(), location);
+			return null;
+		}
+		try {
+			Set<String> testSuites = read(entry);
+			if (testSuites.isEmpty()) {
+				return null;
+			}
+			ServiceTracker tracker = new ServiceTracker(context, context.createFilter(filter(testSuites)), new TestSuiteServiceCustomizer(context, processor));
+			tracker.open();
+			return tracker;
+		} catch (IOException e) {
+			LOGGER.error("Could not read test index " + location + " of bundle " + bundle.getSymbolicName(), e);
+		} catch (InvalidSyntaxException e) {
+			LOGGER.error("Test index " + location + " of bundle " + bundle.getSymbolicName() + " contains an invalid class name.", e);
+		}
+		return null;
+	}
+
+	@Override
+	public void removedBundle(Bundle bundle, BundleEvent event, ServiceTracker tracker) {
+		tracker.close();
+	}
+
+	private boolean importsAnnotations(Bundle bundle) {
+		if (bundle.getBundleId() == context.getBundle().getBundleId()) {
+			return false;
+		}
+		String imports = bundle.getHeaders("").get(Constants.IMPORT_PACKAGE);
+		return imports != null && ANNOTATION_IMPORT.matcher(imports).find();
+	}
+
+	private Set<String> read(URL entry) throws IOException {
+		Set<String> testSuites = new TreeSet<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(entry.openStream(), "UTF-8"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.length() > 0 && !line.startsWith("#")) {
+					testSuites.add(line);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return testSuites;
+	}
+
+	private static String filter(Set<String> testSuites) {
+		StringBuilder filter = new StringBuilder("(|");
+		for (String testSuite : testSuites) {
+			filter.append('(').append(Constants.OBJECTCLASS).append('=').append(testSuite).append(')');
+		}
+		return filter.append(')').toString();
+	}
+}
@@ -16,7 +16,11 @@
 package com.beinformed.framework.osgi.osgitest.annotation.processor;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.beinformed.framework.osgi.osgitest.TestCase;
 import com.beinformed.framework.osgi.osgitest.TestMonitor;
@@ -24,19 +28,22 @@ import com.beinformed.framework.osgi.osgitest.TestSuite;
 
 
 /**
- * A {@code TestSuite} implementation.
+ * A {@code TestSuite} implementation.<br />
+ * The test cases are kept in an immutable snapshot, indexed on identifier, that is
+ * replaced as a whole when test cases are added, so test cases can be looked up and
+ * listed without taking a lock.
  */
 public class TestSuiteImpl implements TestSuite {
 
 	private String label;
 
-	private final List<TestCase> testCases;
+	private volatile Snapshot testCases;
 
 	/**
 	 * Default {@code TestSuiteImpl} constructor.
 	 */
 	public TestSuiteImpl() {
-		this.testCases = new ArrayList<TestCase>();
+		this.testCases = new Snapshot(Collections.<TestCaseImpl>emptyList());
 	}
 
 	@Override
@@ -46,16 +53,18 @@ public class TestSuiteImpl implements TestSuite {
 
 	@Override
 	public List<TestCase> getTestCases() {
-		return testCases;
+		return testCases.list;
 	}
 
+	/**
+	 * Invokes the test case with the given identifier. When more than one test case
+	 * has that identifier, the first one that was added is invoked.
+	 */
 	@Override
 	public void test(String testCaseId, TestMonitor monitor) {
-		for (TestCase tc : testCases) {
-			if (tc.getIdentifier().equals(testCaseId)) {
-				TestCaseImpl impl = (TestCaseImpl) tc;
-				impl.invoke(monitor);
-			}
+		TestCaseImpl impl = testCases.index.get(testCaseId);
+		if (impl != null) {
+			impl.invoke(monitor);
 		}
 	}
 
@@ -74,7 +83,39 @@ public class TestSuiteImpl implements TestSuite {
 	 * 			the {@code TestCaseImpl} to add to this {@code TestSuite}.
 	 */
 	protected void addTestCase(TestCaseImpl testCase) {
-		testCases.add(testCase);
+		addTestCases(Collections.singletonList(testCase));
+	}
+
+	/**
+	 * Adds a number of {@code TestCaseImpl}s to this {@code TestSuite} at once.
+	 * @param	testCases
+	 * 			the {@code TestCaseImpl}s to add to this {@code TestSuite}.
+	 */
+	protected synchronized void addTestCases(Collection<TestCaseImpl> testCases) {
+		List<TestCaseImpl> all = new ArrayList<TestCaseImpl>(this.testCases.cases);
+		all.addAll(testCases);
+		this.testCases = new Snapshot(all);
+	}
+
+	/**
+	 * Immutable snapshot of the test cases of a suite, in the order in which they
+	 * were added and indexed on identifier.
+	 */
+	private static final class Snapshot {
+		private final List<TestCaseImpl> cases;
+		private final List<TestCase> list;
+		private final Map<String, TestCaseImpl> index;
+
+		Snapshot(List<TestCaseImpl> cases) {
+			this.cases = cases;
+			this.list = Collections.<TestCase>unmodifiableList(cases);
+			this.index = new HashMap<String, TestCaseImpl>();
+			for (TestCaseImpl testCase : cases) {
+				if (!index.containsKey(testCase.getIdentifier())) {
+					index.put(testCase.getIdentifier(), testCase);
+				}
+			}
+		}
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,165 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.annotation.processor;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.beinformed.framework.osgi.osgitest.annotation.Dependency;
+import com.beinformed.framework.osgi.osgitest.annotation.TestCase;
+import com.beinformed.framework.osgi.osgitest.annotation.TestSuite;
+
+/**
+ * The test annotations of a class, parsed once per class.<br />
+ * The parsed meta data is cached in a {@link ClassValue}, which is attached to the class itself,
+ * so the cache does not keep the class, nor the class loader of its bundle, from being collected.
+ * Classes that are not annotated with {@code TestSuite} are cached as well, so services that are
+ * not a test suite only pay for the reflection once per class.
+ */
+final class TestSuiteMetaData {
+
+	private static final TestSuiteMetaData NOT_A_TEST_SUITE = new TestSuiteMetaData(null, Collections.<String>emptySet(), Collections.<TestMethod>emptyList(), null);
+
+	private static final ClassValue<TestSuiteMetaData> CACHE = new ClassValue<TestSuiteMetaData>() {
+		@Override
+		protected TestSuiteMetaData computeValue(Class<?> type) {
+			return parse(type);
+		}
+	};
+
+	private final String label;
+
+	private final Set<String> tags;
+
+	private final List<TestMethod> testMethods;
+
+	private final Dependency dependency;
+
+	private TestSuiteMetaData(String label, Set<String> tags, List<TestMethod> testMethods, Dependency dependency) {
+		this.label = label;
+		this.tags = tags;
+		this.testMethods = testMethods;
+		this.dependency = dependency;
+	}
+
+	/**
+	 * Returns the test suite meta data of the given class.
+	 * @param	type
+	 * 			the class to return the meta data for.
+	 * @return	the meta data, or {@code null} when the class is not annotated with {@code TestSuite}.
+	 */
+	static TestSuiteMetaData of(Class<?> type) {
+		TestSuiteMetaData metaData = CACHE.get(type);
+		return metaData != NOT_A_TEST_SUITE ? metaData : null;
+	}
+
+	private static TestSuiteMetaData parse(Class<?> type) {
+		TestSuite suite = type.getAnnotation(TestSuite.class);
+		if (suite == null) {
+			return NOT_A_TEST_SUITE;
+		}
+		List<TestMethod> testMethods = new ArrayList<TestMethod>();
+		for (Method method : type.getDeclaredMethods()) {
+			TestCase testCase = method.getAnnotation(TestCase.class);
+			if (testCase != null) {
+				testMethods.add(new TestMethod(testCase.identifier(), testCase.label(), toSet(testCase.tags()), method));
+			}
+		}
+		return new TestSuiteMetaData(suite.label(), toSet(suite.tags()), Collections.unmodifiableList(testMethods), type.getAnnotation(Dependency.class));
+	}
+
+	private static Set<String> toSet(String[] tags) {
+		if (tags.length == 0) {
+			return Collections.emptySet();
+		}
+		Set<String> set = new LinkedHashSet<String>();
+		for (String tag : tags) {
+			if (tag.trim().length() > 0) {
+				set.add(tag.trim());
+			}
+		}
+		return Collections.unmodifiableSet(set);
+	}
+
+	/**
+	 * @return	the label of the test suite.
+	 */
+	String getLabel() {
+		return label;
+	}
+
+	/**
+	 * @return	the tags of the test suite.
+	 */
+	Set<String> getTags() {
+		return tags;
+	}
+
+	/**
+	 * @return	the methods annotated with {@code TestCase}.
+	 */
+	List<TestMethod> getTestMethods() {
+		return testMethods;
+	}
+
+	/**
+	 * @return	the {@code Dependency} annotation of the test suite, or {@code null} if it has none.
+	 */
+	Dependency getDependency() {
+		return dependency;
+	}
+
+	/**
+	 * A method annotated with {@code TestCase}.
+	 */
+	static final class TestMethod {
+
+		private final String identifier;
+
+		private final String label;
+
+		private final Set<String> tags;
+
+		private final Method method;
+
+		TestMethod(String identifier, String label, Set<String> tags, Method method) {
+			this.identifier = identifier;
+			this.label = label;
+			this.tags = tags;
+			this.method = method;
+		}
+
+		String getIdentifier() {
+			return identifier;
+		}
+
+		String getLabel() {
+			return label;
+		}
+
+		Set<String> getTags() {
+			return tags;
+		}
+
+		Method getMethod() {
+			return method;
+		}
+	}
+}
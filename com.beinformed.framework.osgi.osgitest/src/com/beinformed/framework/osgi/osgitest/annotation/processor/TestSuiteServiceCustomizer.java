@@ -0,0 +1,57 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.annotation.processor;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.osgi.util.tracker.ServiceTrackerCustomizer;
+
+/**
+ * Hands the services that were discovered as possible annotated test suites to the
+ * {@link TestAnnotationProcessor}. Only services matched by the filter of the tracker are ever
+ * dereferenced.
+ */
+class TestSuiteServiceCustomizer implements ServiceTrackerCustomizer {
+
+	private final BundleContext context;
+
+	private final TestAnnotationProcessor processor;
+
+	TestSuiteServiceCustomizer(BundleContext context, TestAnnotationProcessor processor) {
+		this.context = context;
+		this.processor = processor;
+	}
+
+	@Override
+	public Object addingService(ServiceReference reference) {
+		Object service = context.getService(reference);
+		if (service != null) {
+			processor.add(reference, service);
+		}
+		return service;
+	}
+
+	@Override
+	public void modifiedService(ServiceReference reference, Object service) {
+		// the test suite does not depend on the service properties
+	}
+
+	@Override
+	public void removedService(ServiceReference reference, Object service) {
+		processor.remove(reference, service);
+		context.ungetService(reference);
+	}
+}
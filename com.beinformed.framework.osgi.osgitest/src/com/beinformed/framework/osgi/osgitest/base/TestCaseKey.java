@@ -0,0 +1,61 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.base;
+
+import com.beinformed.framework.osgi.osgitest.ScopedTestMonitor;
+import com.beinformed.framework.osgi.osgitest.TestCase;
+import com.beinformed.framework.osgi.osgitest.TestSuite;
+
+/**
+ * Identifies a test case within a test suite by the instances that are reported, for {@link ScopedTestMonitor}s
+ * that keep state per test case while test cases run concurrently. Two keys are equal when they hold the same test
+ * suite and test case instances, whatever their equals methods say.
+ * 
+ * @since 1.1
+ */
+public final class TestCaseKey {
+
+	private final TestSuite suite;
+
+	private final TestCase testCase;
+
+	public TestCaseKey(TestSuite suite, TestCase testCase) {
+		this.suite = suite;
+		this.testCase = testCase;
+	}
+
+	public TestSuite getSuite() {
+		return suite;
+	}
+
+	public TestCase getTestCase() {
+		return testCase;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * System.identityHashCode(suite) + System.identityHashCode(testCase);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof TestCaseKey)) {
+			return false;
+		}
+		TestCaseKey other = (TestCaseKey) obj;
+		return suite == other.suite && testCase == other.testCase;
+	}
+}
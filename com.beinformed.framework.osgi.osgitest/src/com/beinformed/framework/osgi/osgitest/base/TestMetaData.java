@@ -15,6 +15,11 @@
  */
 package com.beinformed.framework.osgi.osgitest.base;
 
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import com.beinformed.framework.osgi.osgitest.Tagged;
 import com.beinformed.framework.osgi.osgitest.TestCase;
 
 /**
@@ -22,10 +27,11 @@ import com.beinformed.framework.osgi.osgitest.TestCase;
  * Two TestMetaData instances are considered equal if their identifiers are
  * equal.
  */
-public final class TestMetaData implements TestCase {
+public final class TestMetaData implements TestCase, Tagged {
 
 	private final String identifier;
 	private final String label;
+	private final Set<String> tags;
 
 	/**
 	 * Creates a TestMetaData instance with the given identifier as identifier
@@ -52,11 +58,44 @@ public final class TestMetaData implements TestCase {
 	 *             when one of the required arguments is null
 	 */
 	public TestMetaData(final String identifier, final String label) {
+		this(identifier, label, new String[0]);
+	}
+
+	/**
+	 * Creates a TestMetaData instance with the given identifier, label and
+	 * tags. <br />
+	 * 
+	 * @param identifier
+	 *            The identifier of this TestCase. May not be {@code null}.
+	 * @param label
+	 *            The label of this TestCase. May be {@code null}. When the
+	 *            label is null, the identifier will be used as a label.
+	 * @param tags
+	 *            The tags of this TestCase.
+	 * @throws NullPointerException
+	 *             when one of the required arguments is null
+	 * @since 1.1
+	 */
+	public TestMetaData(final String identifier, final String label, final String... tags) {
 		if (identifier == null) {
 			throw new NullPointerException("The 'identifier' argument may not be null when constructing a TestMetaData instance.");
 		}
 		this.identifier = identifier;
 		this.label = label != null ? label : identifier;
+		this.tags = toSet(tags);
+	}
+
+	static Set<String> toSet(final String... tags) {
+		if (tags == null || tags.length == 0) {
+			return Collections.emptySet();
+		}
+		final Set<String> set = new LinkedHashSet<String>();
+		for (String tag : tags) {
+			if (tag != null && tag.trim().length() > 0) {
+				set.add(tag.trim());
+			}
+		}
+		return Collections.unmodifiableSet(set);
 	}
 
 	@Override
@@ -69,6 +108,11 @@ public final class TestMetaData implements TestCase {
 		return label;
 	}
 
+	@Override
+	public Set<String> getTags() {
+		return tags;
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
@@ -15,16 +15,23 @@
  */
 package com.beinformed.framework.osgi.osgitest.base;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.beinformed.framework.osgi.osgitest.Tagged;
 import com.beinformed.framework.osgi.osgitest.TestCase;
 import com.beinformed.framework.osgi.osgitest.TestMonitor;
 import com.beinformed.framework.osgi.osgitest.TestSuite;
@@ -32,13 +39,25 @@ import com.beinformed.framework.osgi.osgitest.TestSuite;
 /**
  * Abstract base implementation for TestSuites reflection based. <br />
  * Subclasses can call addTest() methods with as argument the method accepting
- * the TestCaseMonitor as only argument.
+ * the TestCaseMonitor as only argument. The test methods are looked up once, when
+ * they are added, and bound to this instance as method handles. Invoking a handle skips
+ * the argument array, access checks and exception wrapping of reflection. The handles are
+ * not constants, so the JIT does not inline the test method into the caller.<br />
+ * The test cases are kept in an immutable snapshot, indexed on identifier, that
+ * is replaced as a whole when tests are added or removed. Looking up and listing
+ * test cases therefore takes no lock. Tests added with one call of addTests() are
+ * added to a single new snapshot.<br />
+ * Subclasses can tag the suite with addTags() and tag test cases when they add them.
  * 
  * @since 4.0
  */
-public abstract class TestSuiteBase implements TestSuite {
+public abstract class TestSuiteBase implements TestSuite, Tagged {
 
-	private final transient Map<TestCase, Method> testCases = new HashMap<TestCase, Method>();
+	private static final MethodType TEST_METHOD_TYPE = MethodType.methodType(void.class, TestMonitor.class);
+
+	private final Object registryLock = new Object();
+	private transient volatile Registry registry = Registry.EMPTY;
+	private volatile Set<String> tags = Collections.emptySet();
 	private static final Logger LOGGER = LoggerFactory.getLogger(TestSuiteBase.class);
 
 	private final String label;
@@ -54,12 +73,14 @@ public abstract class TestSuiteBase implements TestSuite {
 
 	protected void initialize() {
 		// Adds all methods that have a name that starts with 'test' and have only one argument of type TestMonitor
+		final List<String> testMethods = new ArrayList<String>();
 		for (Method method : this.getClass().getMethods()) {
 			Class<?>[] parameterTypes = method.getParameterTypes();
 			if (parameterTypes.length == 1 && parameterTypes[0] == TestMonitor.class && method.getName().startsWith("test")) {
-				addTest(method.getName());
+				testMethods.add(method.getName());
 			}
 		}
+		addTests(testMethods.toArray(new String[testMethods.size()]));
 	}
 
 	/**
@@ -73,10 +94,46 @@ public abstract class TestSuiteBase implements TestSuite {
 		addTest(testMethod, testMethod);
 	}
 
+	/**
+	 * Adds test meta data for each of the given identifiers, with the identifier
+	 * as identifier and label. Use it to add many tests at once.
+	 * 
+	 * @param testMethods
+	 *            The names of the test methods. These methods must accept one
+	 *            argument of type {@link TestMonitor}.
+	 * @since 1.1
+	 */
+	protected final void addTests(final String... testMethods) {
+		final List<TestCase> testCases = new ArrayList<TestCase>(testMethods.length);
+		for (String testMethod : testMethods) {
+			testCases.add(new TestMetaData(testMethod, testMethod));
+		}
+		addTests(testCases);
+	}
+
 	public String getLabel() {
 		return label;
 	}
 
+	@Override
+	public Set<String> getTags() {
+		return tags;
+	}
+
+	/**
+	 * Adds tags to this TestSuite, which apply to all its test cases.
+	 * 
+	 * @param tags
+	 *            The tags to add.
+	 */
+	protected final void addTags(final String... tags) {
+		synchronized (registryLock) {
+			final Set<String> copy = new LinkedHashSet<String>(this.tags);
+			copy.addAll(TestMetaData.toSet(tags));
+			this.tags = Collections.unmodifiableSet(copy);
+		}
+	}
+
 	/**
 	 * Adds test meta data with the given identifier and label.
 	 * 
@@ -88,21 +145,58 @@ public abstract class TestSuiteBase implements TestSuite {
 	 *            identifier will be used as a label.
 	 */
 	protected final void addTest(final String testMethod, final String label) {
-		synchronized (testCases) {
-			final TestCase testCase = new TestMetaData(testMethod, label);
-			if (testCases.containsKey(testCase)) {
-				LOGGER.warn("Test method '{}' already exists in this TestSuite. The existing test case will be overridden.", testMethod);
+		addTest(testMethod, label, new String[0]);
+	}
+
+	/**
+	 * Adds test meta data with the given identifier, label and tags.
+	 * 
+	 * @param testMethod
+	 *            The name of the test method. This method must accept one
+	 *            argument of type {@link TestMonitor}.
+	 * @param label
+	 *            The label of the test case. If the label is {@code null}, the
+	 *            identifier will be used as a label.
+	 * @param tags
+	 *            The tags of the test case.
+	 */
+	protected final void addTest(final String testMethod, final String label, final String... tags) {
+		addTests(Collections.<TestCase> singletonList(new TestMetaData(testMethod, label, tags)));
+	}
+
+	/**
+	 * Adds the given test cases, of which the identifiers are the names of their
+	 * test methods, to a single new snapshot.
+	 */
+	private void addTests(final List<TestCase> testCases) {
+		synchronized (registryLock) {
+			final LinkedHashMap<String, Entry> added = new LinkedHashMap<String, Entry>();
+			for (TestCase testCase : testCases) {
+				final String testMethod = testCase.getIdentifier();
+				if (registry.get(testMethod) != null || added.containsKey(testMethod)) {
+					LOGGER.warn("Test method '{}' already exists in this TestSuite. The existing test case will be overridden.", testMethod);
+				}
+				try {
+					added.put(testMethod, new Entry(testCase, bind(this.getClass().getMethod(testMethod, TestMonitor.class))));
+				} catch (Exception e) {
+					LOGGER.error("Could not add test method " + testMethod, e);
+				}
 			}
-			Method method;
-			try {
-				method = this.getClass().getMethod(testMethod, TestMonitor.class);
-				testCases.put(testCase, method);
-			} catch (Exception e) {
-				LOGGER.error("Could not add test method " + testMethod, e);
+			if (!added.isEmpty()) {
+				registry = registry.with(added);
 			}
 		}
 	}
 
+	/**
+	 * Binds the given test method to this instance, so it can be invoked without {@link Method#invoke}.
+	 */
+	private MethodHandle bind(Method method) throws IllegalAccessException {
+		// test suites may be declared in classes that are not public
+		method.setAccessible(true);
+		return MethodHandles.lookup().unreflect(method).bindTo(this).asType(TEST_METHOD_TYPE);
+	}
+
 	/**
 	 * Removes the given test case.
 	 * 
@@ -120,47 +214,97 @@ public abstract class TestSuiteBase implements TestSuite {
 	 *            the identifier of the test case to remove from this TestSuite.
 	 */
 	protected final void removeTest(final String identifier) {
-		Method removedTestMethod = null;
-		synchronized (testCases) {
-			removedTestMethod = testCases.remove(new TestMetaData(identifier));
+		Entry removedTestCase = null;
+		synchronized (registryLock) {
+			removedTestCase = registry.get(identifier);
+			if (removedTestCase != null) {
+				registry = registry.without(identifier);
+			}
 		}
-		if (removedTestMethod == null) {
+		if (removedTestCase == null) {
 			LOGGER.warn("Test case with identifier '{}' does not exist in this TestSuite. Test case could not be removed.", identifier);
 		}
 	}
 
 	@Override
 	public final List<TestCase> getTestCases() {
-		synchronized (testCases) {
-			return new ArrayList<TestCase>(testCases.keySet());
-		}
+		return registry.testCases;
 	}
 
 	@Override
 	public final void test(final String testCaseId, final TestMonitor monitor) {
-		Method testMethod = null;
-		final TestCase testCase = new TestMetaData(testCaseId);
-		synchronized (testCases) {
-			testMethod = testCases.get(testCase);
-		}
-		if (testMethod == null) {
+		final Entry entry = registry.get(testCaseId);
+		if (entry == null) {
 			final String message = "Could not execute test with testCaseId '" + testCaseId + "' because there is no such test case present in this testSuite.";
 			monitor.error(message, null);
 			return;
 		}
 
-		test(testMethod, testCase, monitor);
+		test(entry.testMethod, entry.testCase, monitor);
 	}
 
-	private void test(final Method testMethod, final TestCase testCase, final TestMonitor monitor) {
+	private void test(final MethodHandle testMethod, final TestCase testCase, final TestMonitor monitor) {
 		try {
-			LOGGER.debug("Starting test: " + testCase.getIdentifier());
-			testMethod.invoke(this, monitor);
-			LOGGER.debug("Finished test: " + testCase.getIdentifier());
-		} catch (Exception e) {
+			LOGGER.debug("Starting test: {}", testCase.getIdentifier());
+			testMethod.invokeExact(monitor);
+			LOGGER.debug("Finished test: {}", testCase.getIdentifier());
+		} catch (VirtualMachineError e) {
+			throw e;
+		} catch (ThreadDeath e) {
+			throw e;
+		} catch (Throwable e) {
 			final String message = "Could not execute test case " + testCase;
 			monitor.error(message, e);
 		}
 	}
 
+	/**
+	 * A test case together with the method handle that executes it.
+	 */
+	private static final class Entry {
+		private final TestCase testCase;
+		private final MethodHandle testMethod;
+
+		Entry(TestCase testCase, MethodHandle testMethod) {
+			this.testCase = testCase;
+			this.testMethod = testMethod;
+		}
+	}
+
+	/**
+	 * Immutable snapshot of the test cases of a suite, indexed on identifier and
+	 * in the order in which they were added.
+	 */
+	private static final class Registry {
+		static final Registry EMPTY = new Registry(new LinkedHashMap<String, Entry>());
+
+		private final Map<String, Entry> entries;
+		private final List<TestCase> testCases;
+
+		private Registry(LinkedHashMap<String, Entry> entries) {
+			this.entries = entries;
+			final List<TestCase> list = new ArrayList<TestCase>(entries.size());
+			for (Entry entry : entries.values()) {
+				list.add(entry.testCase);
+			}
+			this.testCases = Collections.unmodifiableList(list);
+		}
+
+		Entry get(String identifier) {
+			return entries.get(identifier);
+		}
+
+		Registry with(Map<String, Entry> added) {
+			final LinkedHashMap<String, Entry> copy = new LinkedHashMap<String, Entry>(entries);
+			copy.putAll(added);
+			return new Registry(copy);
+		}
+
+		Registry without(String identifier) {
+			final LinkedHashMap<String, Entry> copy = new LinkedHashMap<String, Entry>(entries);
+			copy.remove(identifier);
+			return new Registry(copy);
+		}
+	}
+
 }
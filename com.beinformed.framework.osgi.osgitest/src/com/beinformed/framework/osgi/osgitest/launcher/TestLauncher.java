@@ -54,19 +54,33 @@ public class TestLauncher implements FrameworkStateListener {
 		
 	}
 
+	/**
+	 * Starts the test run on a thread of its own, so framework state notifications, which the test runner relies on
+	 * while wiring lifecycle test suites, are still delivered during the test run.
+	 */
 	@Override
-	public void onAvailable() {
+	public synchronized void onAvailable() {
 		if (!hasRun) {
-			LOGGER.info("Executing tests");
-			testRunner.executeTests();
 			hasRun = true;
-			if (shutdownOnFinish) {
-				try {
-					LOGGER.info("Shutting down the framework");
-					manager.getBundleContext().getBundle(0).stop();
-				} catch (BundleException e) {
-					e.printStackTrace();
+			Thread launcherThread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					executeTests();
 				}
+			}, "osgitest-launcher");
+			launcherThread.start();
+		}
+	}
+
+	private void executeTests() {
+		LOGGER.info("Executing tests");
+		testRunner.executeTests();
+		if (shutdownOnFinish) {
+			try {
+				LOGGER.info("Shutting down the framework");
+				manager.getBundleContext().getBundle(0).stop();
+			} catch (BundleException e) {
+				e.printStackTrace();
 			}
 		}
 	}
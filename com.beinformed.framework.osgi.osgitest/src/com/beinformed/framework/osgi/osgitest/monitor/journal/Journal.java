@@ -0,0 +1,169 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.monitor.journal;
+
+/**
+ * Layout of the journal files. <br />
+ * A journal is a directory of segment files, {@code journal-00000000.seg} and on, that are read in order. Each
+ * segment starts with a header of {@value #SEGMENT_HEADER_SIZE} bytes: the magic number, the format version, the
+ * session and the index of the segment. The session is the time in milliseconds the journal was opened; segments
+ * of later sessions are appended to the same directory. The header is followed by records, up to the first record
+ * with a length of 0. <br />
+ * Every record starts with a fixed header of {@value #RECORD_HEADER_SIZE} bytes: its length, its kind, flags, the
+ * nanoseconds since the session was opened, and the interned ids of the test suite and test case it belongs to, 0
+ * if none. Test suites and test cases are defined once per session by a {@link #DEFINE_SUITE} or
+ * {@link #DEFINE_CASE} record before they are used. The header is followed by the payload of the kind: strings as
+ * their length in bytes and their UTF-8 bytes, and numbers as 8 byte longs. Records are padded to 8 bytes. All
+ * numbers are big endian. <br />
+ * The length of a record is written last, so a record is either complete or ends the segment, also when the
+ * process dies while it is written.
+ */
+final class Journal {
+
+	static final int MAGIC = 0x4F544A31; // OTJ1
+
+	static final int VERSION = 1;
+
+	static final int SEGMENT_HEADER_SIZE = 32;
+
+	static final int RECORD_HEADER_SIZE = 24;
+
+	static final int MAX_STRING_BYTES = 16 * 1024;
+
+	static final int MIN_SEGMENT_SIZE = 256 * 1024;
+
+	// offsets in the segment header
+
+	static final int MAGIC_OFFSET = 0;
+
+	static final int VERSION_OFFSET = 4;
+
+	static final int SESSION_OFFSET = 8;
+
+	static final int INDEX_OFFSET = 16;
+
+	// offsets in the record header
+
+	static final int LENGTH_OFFSET = 0;
+
+	static final int KIND_OFFSET = 4;
+
+	static final int FLAGS_OFFSET = 5;
+
+	static final int TIME_OFFSET = 8;
+
+	static final int SUITE_OFFSET = 16;
+
+	static final int CASE_OFFSET = 20;
+
+	// record kinds
+
+	/** Defines the suite id of the header; payload: label. */
+	static final byte DEFINE_SUITE = 1;
+
+	/** Defines the case id of the header, within the suite id of the header; payload: identifier, label. */
+	static final byte DEFINE_CASE = 2;
+
+	static final byte BEGIN_TEST_RUN = 3;
+
+	static final byte BEGIN_TEST_SUITE = 4;
+
+	static final byte BEGIN_TEST = 5;
+
+	static final byte ASSERTION_PASSED = 6;
+
+	/** Payload: message. */
+	static final byte ASSERTION_FAILED = 7;
+
+	/** Payload: message, stack trace. Flags: {@link #HAS_EXCEPTION}. */
+	static final byte ERROR = 8;
+
+	static final byte END_TEST = 9;
+
+	/** Payload: the {@value #MEASUREMENT_VALUES} values listed by the MEASUREMENT_ constants. Flags: {@link #LOAD}. */
+	static final byte MEASUREMENT = 10;
+
+	static final byte END_TEST_SUITE = 11;
+
+	static final byte END_TEST_RUN = 12;
+
+	// flags
+
+	/** The error has an exception. */
+	static final byte HAS_EXCEPTION = 1;
+
+	/** The measurement is the result of a load run. */
+	static final byte LOAD = 2;
+
+	// indexes of the measurement values, the doubles are stored as their long bits
+
+	static final int MEASUREMENT_COUNT = 0;
+
+	static final int MEASUREMENT_MIN = 1;
+
+	static final int MEASUREMENT_MEAN = 2;
+
+	static final int MEASUREMENT_P50 = 3;
+
+	static final int MEASUREMENT_P90 = 4;
+
+	static final int MEASUREMENT_P99 = 5;
+
+	static final int MEASUREMENT_P999 = 6;
+
+	static final int MEASUREMENT_MAX = 7;
+
+	static final int MEASUREMENT_OPERATIONS = 8;
+
+	static final int MEASUREMENT_ERRORS = 9;
+
+	static final int MEASUREMENT_ERROR_RATE = 10;
+
+	static final int MEASUREMENT_DURATION = 11;
+
+	static final int MEASUREMENT_THROUGHPUT = 12;
+
+	static final int MEASUREMENT_TARGET_RATE = 13;
+
+	static final int MEASUREMENT_ACHIEVED_RATE = 14;
+
+	static final int MEASUREMENT_VALUES = 15;
+
+	static final String SEGMENT_PREFIX = "journal-";
+
+	static final String SEGMENT_SUFFIX = ".seg";
+
+	private Journal() {
+	}
+
+	static String segmentName(int index) {
+		return String.format("%s%08d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX);
+	}
+
+	/**
+	 * @return the index of the segment with the given file name, or -1 if it is not a segment.
+	 */
+	static int segmentIndex(String name) {
+		if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+			return -1;
+		}
+		try {
+			return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,449 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.monitor.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.beinformed.framework.osgi.osgitest.LatencyStatistics;
+import com.beinformed.framework.osgi.osgitest.LoadResult;
+import com.beinformed.framework.osgi.osgitest.MeasurementMonitor;
+import com.beinformed.framework.osgi.osgitest.ScopedTestMonitor;
+import com.beinformed.framework.osgi.osgitest.TestCase;
+import com.beinformed.framework.osgi.osgitest.TestMonitor;
+import com.beinformed.framework.osgi.osgitest.TestSuite;
+
+/**
+ * Reads a journal written by the {@link JournalTestMonitor} and replays its events into a test monitor. <br />
+ * The test suites and test cases are replayed as stand-ins that have the label and identifiers that were recorded,
+ * but cannot be executed. Events of a test case are passed to a {@link ScopedTestMonitor} through the scoped call
+ * backs and to any other monitor through the unqualified ones. Errors are replayed with an exception that prints
+ * the recorded stack trace, measurements with the recorded statistics. <br />
+ * Segments are read up to the first record that was not completed, for instance because the process died while it
+ * was written.
+ */
+public class JournalReader {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(JournalReader.class);
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final File directory;
+
+	private long records;
+
+	private int segments;
+
+	/**
+	 * @param directory the directory of the journal.
+	 */
+	public JournalReader(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Replays all sessions in the journal into the given monitor.
+	 * @throws IOException if the journal could not be read.
+	 */
+	public void replay(TestMonitor target) throws IOException {
+		records = 0;
+		segments = 0;
+		Map<Integer, File> files = new TreeMap<Integer, File>();
+		File[] candidates = directory.listFiles();
+		if (candidates == null) {
+			throw new IOException("Not a journal directory: " + directory);
+		}
+		for (File file : candidates) {
+			int index = Journal.segmentIndex(file.getName());
+			if (index >= 0) {
+				files.put(index, file);
+			}
+		}
+		Session session = null;
+		for (File file : files.values()) {
+			MappedByteBuffer segment = map(file);
+			if (segment.capacity() < Journal.SEGMENT_HEADER_SIZE || segment.getInt(Journal.MAGIC_OFFSET) != Journal.MAGIC) {
+				LOGGER.warn("Skipping {}, it is not a journal segment", file);
+				continue;
+			}
+			if (segment.getInt(Journal.VERSION_OFFSET) != Journal.VERSION) {
+				throw new IOException("Unsupported journal version " + segment.getInt(Journal.VERSION_OFFSET) + " in " + file);
+			}
+			long id = segment.getLong(Journal.SESSION_OFFSET);
+			if (session == null || session.id != id) {
+				session = new Session(id, target);
+			}
+			segments++;
+			records += session.replay(segment);
+		}
+	}
+
+	private static MappedByteBuffer map(File file) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			return in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @return the number of records replayed by the last replay.
+	 */
+	public long getRecords() {
+		return records;
+	}
+
+	/**
+	 * @return the number of segments read by the last replay.
+	 */
+	public int getSegments() {
+		return segments;
+	}
+
+	/**
+	 * The test suites and test cases defined in one session of the journal.
+	 */
+	private static final class Session {
+
+		private final long id;
+
+		private final TestMonitor target;
+
+		private final Map<Integer, ReplayedTestSuite> suites = new HashMap<Integer, ReplayedTestSuite>();
+
+		private final Map<Integer, ReplayedTestCase> testCases = new HashMap<Integer, ReplayedTestCase>();
+
+		private int position;
+
+		Session(long id, TestMonitor target) {
+			this.id = id;
+			this.target = target;
+		}
+
+		/**
+		 * @return the number of records replayed from the segment.
+		 */
+		long replay(MappedByteBuffer segment) {
+			long count = 0;
+			int offset = Journal.SEGMENT_HEADER_SIZE;
+			while (offset <= segment.capacity() - Journal.RECORD_HEADER_SIZE) {
+				int length = segment.getInt(offset + Journal.LENGTH_OFFSET);
+				if (length < Journal.RECORD_HEADER_SIZE || length > segment.capacity() - offset) {
+					break;
+				}
+				position = offset + Journal.RECORD_HEADER_SIZE;
+				replay(segment, offset);
+				offset += length;
+				count++;
+			}
+			return count;
+		}
+
+		private void replay(MappedByteBuffer segment, int offset) {
+			byte kind = segment.get(offset + Journal.KIND_OFFSET);
+			byte flags = segment.get(offset + Journal.FLAGS_OFFSET);
+			int suiteId = segment.getInt(offset + Journal.SUITE_OFFSET);
+			int caseId = segment.getInt(offset + Journal.CASE_OFFSET);
+			ReplayedTestSuite suite = suites.get(suiteId);
+			ReplayedTestCase testCase = testCases.get(caseId);
+			ScopedTestMonitor scoped = suite != null && testCase != null && target instanceof ScopedTestMonitor ? (ScopedTestMonitor) target
+					: null;
+			switch (kind) {
+			case Journal.DEFINE_SUITE:
+				suites.put(suiteId, new ReplayedTestSuite(string(segment)));
+				break;
+			case Journal.DEFINE_CASE:
+				testCase = new ReplayedTestCase(string(segment), string(segment));
+				testCases.put(caseId, testCase);
+				if (suite != null) {
+					suite.testCases.add(testCase);
+				}
+				break;
+			case Journal.BEGIN_TEST_RUN:
+				target.beginTestRun();
+				break;
+			case Journal.BEGIN_TEST_SUITE:
+				target.beginTestSuite(suite);
+				break;
+			case Journal.BEGIN_TEST:
+				if (scoped != null) {
+					scoped.beginTest(suite, testCase);
+				} else {
+					target.beginTest(testCase);
+				}
+				break;
+			case Journal.ASSERTION_PASSED:
+				assertion(scoped, suite, testCase, true, null);
+				break;
+			case Journal.ASSERTION_FAILED:
+				assertion(scoped, suite, testCase, false, string(segment));
+				break;
+			case Journal.ERROR:
+				String message = string(segment);
+				String stackTrace = string(segment);
+				RecordedException exception = (flags & Journal.HAS_EXCEPTION) != 0 ? new RecordedException(stackTrace) : null;
+				if (scoped != null) {
+					scoped.error(suite, testCase, message, exception);
+				} else {
+					target.error(message, exception);
+				}
+				break;
+			case Journal.END_TEST:
+				if (scoped != null) {
+					scoped.endTest(suite, testCase);
+				} else {
+					target.endTest(testCase);
+				}
+				break;
+			case Journal.MEASUREMENT:
+				if (target instanceof MeasurementMonitor) {
+					long[] values = new long[Journal.MEASUREMENT_VALUES];
+					position = (position + 7) & ~7;
+					for (int i = 0; i < values.length; i++) {
+						values[i] = segment.getLong(position);
+						position += 8;
+					}
+					((MeasurementMonitor) target).measurement(suite, testCase, (flags & Journal.LOAD) != 0 ? new RecordedLoadResult(values)
+							: new RecordedStatistics(values));
+				}
+				break;
+			case Journal.END_TEST_SUITE:
+				target.endTestSuite(suite);
+				break;
+			case Journal.END_TEST_RUN:
+				target.endTestRun();
+				break;
+			default:
+				LOGGER.debug("Skipping journal record of unknown kind {}", kind);
+			}
+		}
+
+		private void assertion(ScopedTestMonitor scoped, TestSuite suite, TestCase testCase, boolean condition, String messageOnFailure) {
+			if (scoped != null) {
+				scoped.assertion(suite, testCase, condition, messageOnFailure);
+			} else {
+				target.assertion(condition, messageOnFailure);
+			}
+		}
+
+		private String string(MappedByteBuffer segment) {
+			int length = segment.getInt(position);
+			position += 4;
+			length = Math.max(0, Math.min(length, segment.capacity() - position));
+			byte[] bytes = new byte[length];
+			for (int i = 0; i < length; i++) {
+				bytes[i] = segment.get(position++);
+			}
+			return new String(bytes, UTF_8);
+		}
+	}
+
+	/**
+	 * A recorded test suite. It cannot be executed.
+	 */
+	private static final class ReplayedTestSuite implements TestSuite {
+
+		private final String label;
+
+		private final List<TestCase> testCases = new ArrayList<TestCase>();
+
+		ReplayedTestSuite(String label) {
+			this.label = label;
+		}
+
+		@Override
+		public List<TestCase> getTestCases() {
+			return Collections.unmodifiableList(testCases);
+		}
+
+		@Override
+		public void test(String testCaseId, TestMonitor monitor) {
+			throw new UnsupportedOperationException("Test suite " + label + " is replayed from a journal and cannot be executed");
+		}
+
+		@Override
+		public String getLabel() {
+			return label;
+		}
+	}
+
+	/**
+	 * A recorded test case.
+	 */
+	private static final class ReplayedTestCase implements TestCase {
+
+		private final String identifier;
+
+		private final String label;
+
+		ReplayedTestCase(String identifier, String label) {
+			this.identifier = identifier;
+			this.label = label;
+		}
+
+		@Override
+		public String getIdentifier() {
+			return identifier;
+		}
+
+		@Override
+		public String getLabel() {
+			return label;
+		}
+	}
+
+	/**
+	 * Latency statistics as recorded. Percentiles are rounded up to the nearest recorded one.
+	 */
+	private static class RecordedStatistics implements LatencyStatistics {
+
+		protected final long[] values;
+
+		RecordedStatistics(long[] values) {
+			this.values = values;
+		}
+
+		@Override
+		public long getCount() {
+			return values[Journal.MEASUREMENT_COUNT];
+		}
+
+		@Override
+		public long getMin() {
+			return values[Journal.MEASUREMENT_MIN];
+		}
+
+		@Override
+		public double getMean() {
+			return Double.longBitsToDouble(values[Journal.MEASUREMENT_MEAN]);
+		}
+
+		@Override
+		public long getPercentile(double percentile) {
+			if (percentile <= 50) {
+				return values[Journal.MEASUREMENT_P50];
+			} else if (percentile <= 90) {
+				return values[Journal.MEASUREMENT_P90];
+			} else if (percentile <= 99) {
+				return values[Journal.MEASUREMENT_P99];
+			} else if (percentile <= 99.9) {
+				return values[Journal.MEASUREMENT_P999];
+			}
+			return getMax();
+		}
+
+		@Override
+		public long getMax() {
+			return values[Journal.MEASUREMENT_MAX];
+		}
+	}
+
+	/**
+	 * The result of a load run as recorded.
+	 */
+	private static final class RecordedLoadResult extends RecordedStatistics implements LoadResult {
+
+		RecordedLoadResult(long[] values) {
+			super(values);
+		}
+
+		@Override
+		public long getOperations() {
+			return values[Journal.MEASUREMENT_OPERATIONS];
+		}
+
+		@Override
+		public long getErrors() {
+			return values[Journal.MEASUREMENT_ERRORS];
+		}
+
+		@Override
+		public double getErrorRate() {
+			return Double.longBitsToDouble(values[Journal.MEASUREMENT_ERROR_RATE]);
+		}
+
+		@Override
+		public long getDuration() {
+			return values[Journal.MEASUREMENT_DURATION];
+		}
+
+		@Override
+		public double getThroughput() {
+			return Double.longBitsToDouble(values[Journal.MEASUREMENT_THROUGHPUT]);
+		}
+
+		@Override
+		public double getTargetRate() {
+			return Double.longBitsToDouble(values[Journal.MEASUREMENT_TARGET_RATE]);
+		}
+
+		@Override
+		public double getAchievedRate() {
+			return Double.longBitsToDouble(values[Journal.MEASUREMENT_ACHIEVED_RATE]);
+		}
+	}
+
+	/**
+	 * An exception that prints the stack trace that was recorded.
+	 */
+	private static final class RecordedException extends Exception {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String stackTrace;
+
+		RecordedException(String stackTrace) {
+			super(firstLine(stackTrace), null, false, false);
+			this.stackTrace = stackTrace;
+		}
+
+		private static String firstLine(String text) {
+			int end = text.indexOf('\n');
+			return (end < 0 ? text : text.substring(0, end)).trim();
+		}
+
+		@Override
+		public String toString() {
+			return getMessage();
+		}
+
+		@Override
+		public void printStackTrace(PrintStream s) {
+			s.print(stackTrace);
+		}
+
+		@Override
+		public void printStackTrace(PrintWriter s) {
+			s.print(stackTrace);
+		}
+	}
+}
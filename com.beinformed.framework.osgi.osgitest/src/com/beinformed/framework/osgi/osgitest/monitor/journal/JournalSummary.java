@@ -0,0 +1,174 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.monitor.journal;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import com.beinformed.framework.osgi.osgitest.LatencyStatistics;
+import com.beinformed.framework.osgi.osgitest.MeasurementMonitor;
+import com.beinformed.framework.osgi.osgitest.ScopedTestMonitor;
+import com.beinformed.framework.osgi.osgitest.TestCase;
+import com.beinformed.framework.osgi.osgitest.TestSuite;
+
+/**
+ * TestMonitor that counts the events replayed from a journal and keeps the first {@value #MAX_FAILURES} failures.
+ * Not thread safe, the {@link JournalReader} replays on a single thread.
+ */
+class JournalSummary implements ScopedTestMonitor, MeasurementMonitor {
+
+	static final int MAX_FAILURES = 20;
+
+	private final Set<Object> failed = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+
+	private final List<String> failures = new ArrayList<String>();
+
+	private TestSuite currentSuite;
+
+	private TestCase currentTestCase;
+
+	private long testRuns;
+
+	private long testSuites;
+
+	private long failedTestSuites;
+
+	private long testCases;
+
+	private long failedTestCases;
+
+	private long assertions;
+
+	private long failedAssertions;
+
+	private long errors;
+
+	private long measurements;
+
+	@Override
+	public void beginTestRun() {
+		testRuns++;
+	}
+
+	@Override
+	public void beginTestSuite(TestSuite suite) {
+		currentSuite = suite;
+		testSuites++;
+	}
+
+	@Override
+	public void beginTest(TestCase testCase) {
+		currentTestCase = testCase;
+		testCases++;
+	}
+
+	@Override
+	public void beginTest(TestSuite suite, TestCase testCase) {
+		testCases++;
+	}
+
+	@Override
+	public void assertion(boolean condition, String messageOnFailure) {
+		assertion(currentSuite, currentTestCase, condition, messageOnFailure);
+	}
+
+	@Override
+	public void assertion(TestSuite suite, TestCase testCase, boolean condition, String messageOnFailure) {
+		assertions++;
+		if (!condition) {
+			failedAssertions++;
+			failed(suite, testCase, messageOnFailure);
+		}
+	}
+
+	@Override
+	public void error(String message, Throwable exception) {
+		error(currentSuite, currentTestCase, message, exception);
+	}
+
+	@Override
+	public void error(TestSuite suite, TestCase testCase, String message, Throwable exception) {
+		errors++;
+		failed(suite, testCase, exception != null ? message + " (" + exception + ")" : message);
+	}
+
+	private void failed(TestSuite suite, TestCase testCase, String message) {
+		if (suite != null) {
+			failed.add(suite);
+		}
+		if (testCase != null) {
+			failed.add(testCase);
+		}
+		if (failures.size() < MAX_FAILURES) {
+			failures.add((suite != null ? suite.getLabel() : "-") + " / " + (testCase != null ? testCase.getIdentifier() : "-") + ": " + message);
+		}
+	}
+
+	@Override
+	public void endTest(TestCase testCase) {
+		endTest(currentSuite, testCase);
+		currentTestCase = null;
+	}
+
+	@Override
+	public void endTest(TestSuite suite, TestCase testCase) {
+		if (testCase != null && failed.remove(testCase)) {
+			failedTestCases++;
+		}
+	}
+
+	@Override
+	public void measurement(TestSuite suite, TestCase testCase, LatencyStatistics statistics) {
+		measurements++;
+	}
+
+	@Override
+	public void endTestSuite(TestSuite suite) {
+		if (suite != null && failed.remove(suite)) {
+			failedTestSuites++;
+		}
+		if (currentSuite == suite) {
+			currentSuite = null;
+		}
+	}
+
+	@Override
+	public void endTestRun() {
+		// counted over all test runs
+	}
+
+	/**
+	 * Prints the summary.
+	 */
+	void print(PrintStream out) {
+		out.println("Test runs:    " + testRuns);
+		out.println("Test suites:  " + testSuites + " (" + failedTestSuites + " failed)");
+		out.println("Test cases:   " + testCases + " (" + failedTestCases + " failed)");
+		out.println("Assertions:   " + assertions + " (" + failedAssertions + " failed)");
+		out.println("Errors:       " + errors);
+		out.println("Measurements: " + measurements);
+		if (!failures.isEmpty()) {
+			out.println("First failures:");
+			for (String failure : failures) {
+				out.println("\t" + failure);
+			}
+		}
+	}
+}
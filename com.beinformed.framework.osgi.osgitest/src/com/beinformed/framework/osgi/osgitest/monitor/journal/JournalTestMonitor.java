@@ -0,0 +1,455 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.monitor.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.beinformed.framework.osgi.osgitest.LatencyStatistics;
+import com.beinformed.framework.osgi.osgitest.LoadResult;
+import com.beinformed.framework.osgi.osgitest.MeasurementMonitor;
+import com.beinformed.framework.osgi.osgitest.ScopedTestMonitor;
+import com.beinformed.framework.osgi.osgitest.TestCase;
+import com.beinformed.framework.osgi.osgitest.TestSuite;
+import com.beinformed.framework.osgi.osgitest.base.TestCaseKey;
+
+/**
+ * TestMonitor implementation that records every event in a binary journal, to be replayed into other test monitors
+ * or summarized later by the {@link JournalTool}. <br />
+ * Each event is a fixed layout record that is written straight into a memory-mapped segment, see
+ * {@link JournalWriter}. Test suites and test cases are interned: they are defined by a record of their own the
+ * first time they are seen, and events refer to them by id. The ids are dropped when the test suite ends, so the
+ * monitor does not hold on to test suites that are gone; a test suite that runs again is defined again. Each thread
+ * remembers the ids of the test case it reported on last, so the events of a test case are recorded without any
+ * lookups. <br />
+ * The journal is written to the directory set by the {@code osgitest.journalDirectory} system property (default
+ * {@value #DEFAULT_DIRECTORY}), in segments of {@code osgitest.journalSegmentSize} bytes (default 64 MiB). Every
+ * time the monitor starts, a new session is appended to the journal. <br />
+ * Events that are reported through the unqualified call backs are recorded with the ids of the test suite and test
+ * case last begun through them on the same thread, so they replay as belonging to that test case.
+ */
+public class JournalTestMonitor implements ScopedTestMonitor, MeasurementMonitor {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(JournalTestMonitor.class);
+
+	static final String DEFAULT_DIRECTORY = "osgitest-journal";
+
+	static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private volatile File directory = new File(DEFAULT_DIRECTORY);
+
+	private volatile int segmentSize = DEFAULT_SEGMENT_SIZE;
+
+	private volatile Session session;
+
+	/**
+	 * Call back method that is called when the component is started.
+	 * Reads the journal settings from the system properties and opens a new session in the journal.
+	 */
+	public void start() {
+		String directoryString = System.getProperty("osgitest.journalDirectory");
+		if (directoryString != null) {
+			setDirectory(new File(directoryString));
+		}
+		String segmentSizeString = System.getProperty("osgitest.journalSegmentSize");
+		if (segmentSizeString != null) {
+			setSegmentSize(Integer.parseInt(segmentSizeString));
+		}
+		try {
+			session = new Session(new JournalWriter(directory, segmentSize));
+		} catch (IOException e) {
+			LOGGER.error("Could not open journal in " + directory + ", no events will be recorded", e);
+		}
+	}
+
+	/**
+	 * Call back method that is called when the component is stopped.
+	 * Closes the session.
+	 */
+	public void stop() {
+		Session closing = session;
+		session = null;
+		if (closing != null) {
+			closing.writer.close();
+		}
+	}
+
+	/**
+	 * @return the directory of the journal.
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @param directory the directory of the journal, used from the next time the monitor starts.
+	 */
+	public void setDirectory(File directory) {
+		if (directory == null) {
+			throw new IllegalArgumentException("No journal directory given");
+		}
+		this.directory = directory;
+	}
+
+	/**
+	 * @return the size in bytes of the segments of the journal.
+	 */
+	public int getSegmentSize() {
+		return segmentSize;
+	}
+
+	/**
+	 * @param segmentSize the size in bytes of the segments of the journal, used from the next time the monitor starts.
+	 */
+	public void setSegmentSize(int segmentSize) {
+		if (segmentSize < Journal.MIN_SEGMENT_SIZE) {
+			throw new IllegalArgumentException("The journal segment size must be at least " + Journal.MIN_SEGMENT_SIZE + " bytes: " + segmentSize);
+		}
+		this.segmentSize = segmentSize;
+	}
+
+	@Override
+	public void beginTestRun() {
+		Session current = session;
+		if (current != null) {
+			current.append(Journal.BEGIN_TEST_RUN, 0, 0);
+		}
+	}
+
+	@Override
+	public void beginTestSuite(TestSuite suite) {
+		Session current = session;
+		if (current != null) {
+			Scope scope = current.scope.get();
+			scope.suite = suite;
+			scope.suiteId = current.suiteId(suite);
+			scope.caseId = 0;
+			current.append(Journal.BEGIN_TEST_SUITE, scope.suiteId, 0);
+		}
+	}
+
+	@Override
+	public void beginTest(TestCase testCase) {
+		Session current = session;
+		if (current != null) {
+			Scope scope = current.scope.get();
+			scope.caseId = current.caseId(scope.suite, scope.suiteId, testCase);
+			current.append(Journal.BEGIN_TEST, scope.suiteId, scope.caseId);
+		}
+	}
+
+	@Override
+	public void beginTest(TestSuite suite, TestCase testCase) {
+		Session current = session;
+		if (current != null) {
+			Scope scope = current.scope(suite, testCase);
+			current.append(Journal.BEGIN_TEST, scope.lastSuiteId, scope.lastCaseId);
+		}
+	}
+
+	@Override
+	public void assertion(boolean condition, String messageOnFailure) {
+		Session current = session;
+		if (current != null) {
+			Scope scope = current.scope.get();
+			current.assertion(scope.suiteId, scope.caseId, condition, messageOnFailure);
+		}
+	}
+
+	@Override
+	public void assertion(TestSuite suite, TestCase testCase, boolean condition, String messageOnFailure) {
+		Session current = session;
+		if (current != null) {
+			Scope scope = current.scope(suite, testCase);
+			current.assertion(scope.lastSuiteId, scope.lastCaseId, condition, messageOnFailure);
+		}
+	}
+
+	@Override
+	public void error(String message, Throwable exception) {
+		Session current = session;
+		if (current != null) {
+			Scope scope = current.scope.get();
+			current.error(scope.suiteId, scope.caseId, message, exception);
+		}
+	}
+
+	@Override
+	public void error(TestSuite suite, TestCase testCase, String message, Throwable exception) {
+		Session current = session;
+		if (current != null) {
+			Scope scope = current.scope(suite, testCase);
+			current.error(scope.lastSuiteId, scope.lastCaseId, message, exception);
+		}
+	}
+
+	@Override
+	public void endTest(TestCase testCase) {
+		Session current = session;
+		if (current != null) {
+			Scope scope = current.scope.get();
+			current.append(Journal.END_TEST, scope.suiteId, scope.caseId);
+			scope.caseId = 0;
+		}
+	}
+
+	@Override
+	public void endTest(TestSuite suite, TestCase testCase) {
+		Session current = session;
+		if (current != null) {
+			Scope scope = current.scope(suite, testCase);
+			current.append(Journal.END_TEST, scope.lastSuiteId, scope.lastCaseId);
+		}
+	}
+
+	@Override
+	public void measurement(TestSuite suite, TestCase testCase, LatencyStatistics statistics) {
+		Session current = session;
+		if (current == null) {
+			return;
+		}
+		long[] values = new long[Journal.MEASUREMENT_VALUES];
+		values[Journal.MEASUREMENT_COUNT] = statistics.getCount();
+		values[Journal.MEASUREMENT_MIN] = statistics.getMin();
+		values[Journal.MEASUREMENT_MEAN] = Double.doubleToLongBits(statistics.getMean());
+		values[Journal.MEASUREMENT_P50] = statistics.getPercentile(50);
+		values[Journal.MEASUREMENT_P90] = statistics.getPercentile(90);
+		values[Journal.MEASUREMENT_P99] = statistics.getPercentile(99);
+		values[Journal.MEASUREMENT_P999] = statistics.getPercentile(99.9);
+		values[Journal.MEASUREMENT_MAX] = statistics.getMax();
+		byte flags = 0;
+		if (statistics instanceof LoadResult) {
+			LoadResult load = (LoadResult) statistics;
+			flags |= Journal.LOAD;
+			values[Journal.MEASUREMENT_OPERATIONS] = load.getOperations();
+			values[Journal.MEASUREMENT_ERRORS] = load.getErrors();
+			values[Journal.MEASUREMENT_ERROR_RATE] = Double.doubleToLongBits(load.getErrorRate());
+			values[Journal.MEASUREMENT_DURATION] = load.getDuration();
+			values[Journal.MEASUREMENT_THROUGHPUT] = Double.doubleToLongBits(load.getThroughput());
+			values[Journal.MEASUREMENT_TARGET_RATE] = Double.doubleToLongBits(load.getTargetRate());
+			values[Journal.MEASUREMENT_ACHIEVED_RATE] = Double.doubleToLongBits(load.getAchievedRate());
+		}
+		Scope scope = current.scope(suite, testCase);
+		current.append(Journal.MEASUREMENT, flags, scope.lastSuiteId, scope.lastCaseId, null, null, values);
+	}
+
+	@Override
+	public void endTestSuite(TestSuite suite) {
+		Session current = session;
+		if (current != null) {
+			Scope scope = current.scope.get();
+			if (scope.suite == suite) {
+				scope.suite = null;
+				scope.suiteId = 0;
+				scope.caseId = 0;
+			}
+			current.append(Journal.END_TEST_SUITE, current.suiteId(suite), 0);
+			current.drop(suite);
+		}
+	}
+
+	@Override
+	public void endTestRun() {
+		Session current = session;
+		if (current != null) {
+			current.append(Journal.END_TEST_RUN, 0, 0);
+			current.writer.force();
+		}
+	}
+
+	/**
+	 * A session of the journal, with the ids given to the test suites and test cases in it.
+	 */
+	private static final class Session {
+
+		private final JournalWriter writer;
+
+		private final ConcurrentMap<TestSuite, Integer> suiteIds = new ConcurrentHashMap<TestSuite, Integer>();
+
+		private final ConcurrentMap<TestCaseKey, Integer> caseIds = new ConcurrentHashMap<TestCaseKey, Integer>();
+
+		/**
+		 * The last id given to a test suite or test case, guarded by the session's lock.
+		 */
+		private int lastId;
+
+		/**
+		 * Changes whenever ids are dropped, so threads look up the ids of the test case they reported on last again.
+		 */
+		private volatile int generation;
+
+		private final ThreadLocal<Scope> scope = new ThreadLocal<Scope>() {
+			@Override
+			protected Scope initialValue() {
+				return new Scope();
+			}
+		};
+
+		Session(JournalWriter writer) {
+			this.writer = writer;
+		}
+
+		void append(byte kind, int suiteId, int caseId) {
+			writer.append(kind, (byte) 0, suiteId, caseId, null, null, null);
+		}
+
+		void append(byte kind, byte flags, int suiteId, int caseId, String first, String second, long[] values) {
+			writer.append(kind, flags, suiteId, caseId, bytes(first), bytes(second), values);
+		}
+
+		void assertion(int suiteId, int caseId, boolean condition, String messageOnFailure) {
+			if (condition) {
+				append(Journal.ASSERTION_PASSED, suiteId, caseId);
+			} else {
+				append(Journal.ASSERTION_FAILED, (byte) 0, suiteId, caseId, String.valueOf(messageOnFailure), null, null);
+			}
+		}
+
+		void error(int suiteId, int caseId, String message, Throwable exception) {
+			byte flags = 0;
+			String stackTrace = "";
+			if (exception != null) {
+				flags |= Journal.HAS_EXCEPTION;
+				StringWriter writer = new StringWriter();
+				exception.printStackTrace(new PrintWriter(writer));
+				stackTrace = writer.toString();
+			}
+			append(Journal.ERROR, flags, suiteId, caseId, String.valueOf(message), stackTrace, null);
+		}
+
+		private static byte[] bytes(String text) {
+			if (text == null) {
+				return null;
+			}
+			byte[] bytes = text.getBytes(UTF_8);
+			return bytes.length <= Journal.MAX_STRING_BYTES ? bytes : Arrays.copyOf(bytes, Journal.MAX_STRING_BYTES);
+		}
+
+		/**
+		 * @return the scope of the current thread, with the ids of the given test suite and test case as the last ones.
+		 */
+		Scope scope(TestSuite suite, TestCase testCase) {
+			Scope current = scope.get();
+			int currentGeneration = generation;
+			if (current.lastSuite != suite || current.lastTestCase != testCase || current.lastSuiteId == 0
+					|| current.generation != currentGeneration) {
+				current.lastSuiteId = suiteId(suite);
+				current.lastCaseId = caseId(suite, current.lastSuiteId, testCase);
+				current.lastSuite = suite;
+				current.lastTestCase = testCase;
+				current.generation = currentGeneration;
+			}
+			return current;
+		}
+
+		/**
+		 * @return the id of the given test suite, which is defined in the journal the first time it is seen.
+		 */
+		int suiteId(TestSuite suite) {
+			if (suite == null) {
+				return 0;
+			}
+			Integer id = suiteIds.get(suite);
+			if (id != null) {
+				return id;
+			}
+			synchronized (this) {
+				id = suiteIds.get(suite);
+				if (id == null) {
+					id = ++lastId;
+					append(Journal.DEFINE_SUITE, (byte) 0, id, 0, String.valueOf(suite.getLabel()), null, null);
+					suiteIds.put(suite, id);
+				}
+				return id;
+			}
+		}
+
+		/**
+		 * @return the id of the given test case, which is defined in the journal the first time it is seen.
+		 */
+		int caseId(TestSuite suite, int suiteId, TestCase testCase) {
+			if (testCase == null) {
+				return 0;
+			}
+			TestCaseKey key = new TestCaseKey(suite, testCase);
+			Integer id = caseIds.get(key);
+			if (id != null) {
+				return id;
+			}
+			synchronized (this) {
+				id = caseIds.get(key);
+				if (id == null) {
+					id = ++lastId;
+					append(Journal.DEFINE_CASE, (byte) 0, suiteId, id, String.valueOf(testCase.getIdentifier()), String.valueOf(testCase.getLabel()),
+							null);
+					caseIds.put(key, id);
+				}
+				return id;
+			}
+		}
+
+		/**
+		 * Drops the ids of the given test suite and its test cases. Events that still arrive for them define them
+		 * again.
+		 */
+		synchronized void drop(TestSuite suite) {
+			if (suiteIds.remove(suite) == null) {
+				return;
+			}
+			for (Iterator<TestCaseKey> keys = caseIds.keySet().iterator(); keys.hasNext();) {
+				if (keys.next().getSuite() == suite) {
+					keys.remove();
+				}
+			}
+			generation++;
+		}
+	}
+
+	/**
+	 * The test suite and test case the unqualified call backs on a thread belong to, and the ids of the test case
+	 * the thread reported on last through the scoped call backs.
+	 */
+	private static final class Scope {
+
+		private TestSuite suite;
+
+		private int suiteId;
+
+		private int caseId;
+
+		private TestSuite lastSuite;
+
+		private TestCase lastTestCase;
+
+		private int lastSuiteId;
+
+		private int lastCaseId;
+
+		private int generation;
+	}
+}
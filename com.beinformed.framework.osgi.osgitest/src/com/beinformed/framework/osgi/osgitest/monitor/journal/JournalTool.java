@@ -0,0 +1,110 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.monitor.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import com.beinformed.framework.osgi.osgitest.TestMonitor;
+
+/**
+ * Command line tool that summarizes a journal, or replays it into a test monitor:
+ * 
+ * <pre>
+ * java -cp &lt;bundles&gt; com.beinformed.framework.osgi.osgitest.monitor.journal.JournalTool summary &lt;journal directory&gt;
+ * java -cp &lt;bundles&gt; com.beinformed.framework.osgi.osgitest.monitor.journal.JournalTool replay &lt;journal directory&gt; &lt;test monitor class&gt;
+ * </pre>
+ * 
+ * The class path needs the api bundle, slf4j and, to replay, the bundle of the test monitor. The test monitor is
+ * created through its public constructor without arguments. Its public {@code start} and {@code stop} methods, the
+ * component call backs of the test monitors of this framework, are called before and after the replay if it has
+ * them.
+ */
+public final class JournalTool {
+
+	private JournalTool() {
+	}
+
+	public static void main(String[] args) {
+		if (args.length == 2 && "summary".equals(args[0])) {
+			JournalSummary summary = new JournalSummary();
+			JournalReader reader = replay(args[1], summary);
+			System.out.println("Segments:     " + reader.getSegments());
+			System.out.println("Records:      " + reader.getRecords());
+			summary.print(System.out);
+		} else if (args.length == 3 && "replay".equals(args[0])) {
+			TestMonitor monitor = create(args[2]);
+			callBack(monitor, "start");
+			JournalReader reader = replay(args[1], monitor);
+			callBack(monitor, "stop");
+			System.out.println("Replayed " + reader.getRecords() + " records from " + reader.getSegments() + " segments");
+		} else {
+			System.err.println("Usage: JournalTool summary <journal directory>");
+			System.err.println("       JournalTool replay <journal directory> <test monitor class>");
+			System.exit(2);
+		}
+	}
+
+	private static TestMonitor create(String className) {
+		String problem;
+		try {
+			Class<?> type = Class.forName(className);
+			if (TestMonitor.class.isAssignableFrom(type)) {
+				return (TestMonitor) type.getDeclaredConstructor().newInstance();
+			}
+			problem = "it is not a " + TestMonitor.class.getName();
+		} catch (ClassNotFoundException e) {
+			problem = "the class is not on the class path";
+		} catch (NoSuchMethodException e) {
+			problem = "it has no constructor without arguments";
+		} catch (InvocationTargetException e) {
+			problem = "its constructor threw " + e.getCause();
+		} catch (ReflectiveOperationException e) {
+			problem = e.toString();
+		}
+		System.err.println("Could not create test monitor " + className + ": " + problem);
+		System.exit(1);
+		return null;
+	}
+
+	private static void callBack(TestMonitor monitor, String name) {
+		Method method;
+		try {
+			method = monitor.getClass().getMethod(name);
+		} catch (NoSuchMethodException e) {
+			return;
+		}
+		try {
+			method.invoke(monitor);
+		} catch (Exception e) {
+			System.err.println("Could not call " + name + " of test monitor " + monitor.getClass().getName() + ": " + e);
+			System.exit(1);
+		}
+	}
+
+	private static JournalReader replay(String directory, TestMonitor monitor) {
+		JournalReader reader = new JournalReader(new File(directory));
+		try {
+			reader.replay(monitor);
+		} catch (IOException e) {
+			System.err.println("Could not read journal " + directory + ": " + e.getMessage());
+			System.exit(1);
+		}
+		return reader;
+	}
+}
@@ -0,0 +1,212 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.monitor.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Appends records to a journal, see {@link Journal} for the layout. <br />
+ * Segments are memory-mapped files of a fixed size. A record claims its space in the current segment with a single
+ * atomic add and is written straight into the mapping, so threads append concurrently without locking and the
+ * records are in the page cache, which outlives the process, as soon as they are written. Only moving on to the
+ * next segment is locked. Records that do not fit in the remainder of a segment go to the next one.
+ */
+final class JournalWriter {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(JournalWriter.class);
+
+	private final File directory;
+
+	private final int segmentSize;
+
+	private final long session;
+
+	private final long sessionNanos;
+
+	private volatile Segment current;
+
+	private volatile boolean closed;
+
+	/**
+	 * Opens a new session in the journal in the given directory. Its segments are numbered after those already in it.
+	 * @param segmentSize the size of each segment in bytes.
+	 * @throws IOException if the first segment could not be created.
+	 */
+	JournalWriter(File directory, int segmentSize) throws IOException {
+		if (segmentSize < Journal.MIN_SEGMENT_SIZE) {
+			throw new IllegalArgumentException("The journal segment size must be at least " + Journal.MIN_SEGMENT_SIZE + " bytes: " + segmentSize);
+		}
+		this.directory = directory;
+		this.segmentSize = segmentSize & ~7;
+		this.session = System.currentTimeMillis();
+		this.sessionNanos = System.nanoTime();
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create journal directory " + directory);
+		}
+		int index = 0;
+		String[] names = directory.list();
+		if (names != null) {
+			for (String name : names) {
+				index = Math.max(index, Journal.segmentIndex(name) + 1);
+			}
+		}
+		current = openSegment(index);
+	}
+
+	private Segment openSegment(int index) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(new File(directory, Journal.segmentName(index)), "rw");
+		try {
+			MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+			buffer.putInt(Journal.VERSION_OFFSET, Journal.VERSION);
+			buffer.putLong(Journal.SESSION_OFFSET, session);
+			buffer.putInt(Journal.INDEX_OFFSET, index);
+			buffer.putInt(Journal.MAGIC_OFFSET, Journal.MAGIC);
+			return new Segment(index, buffer);
+		} finally {
+			// the mapping stays valid after the file is closed
+			file.close();
+		}
+	}
+
+	/**
+	 * Appends a record.
+	 * @param first the first string of the payload, or null if the kind has no strings.
+	 * @param second the second string of the payload, or null if the kind has one string at most.
+	 * @param values the numbers of the payload, or null if the kind has none.
+	 * @return false if the journal is closed or could not be written.
+	 */
+	boolean append(byte kind, byte flags, int suiteId, int caseId, byte[] first, byte[] second, long[] values) {
+		int length = Journal.RECORD_HEADER_SIZE;
+		if (first != null) {
+			length += 4 + first.length;
+		}
+		if (second != null) {
+			length += 4 + second.length;
+		}
+		if (values != null) {
+			length = ((length + 7) & ~7) + values.length * 8;
+		}
+		length = (length + 7) & ~7;
+		while (!closed) {
+			Segment segment = current;
+			int offset = segment.claim(length);
+			if (offset < 0) {
+				if (!next(segment)) {
+					return false;
+				}
+				continue;
+			}
+			MappedByteBuffer buffer = segment.buffer;
+			buffer.put(offset + Journal.KIND_OFFSET, kind);
+			buffer.put(offset + Journal.FLAGS_OFFSET, flags);
+			buffer.putLong(offset + Journal.TIME_OFFSET, System.nanoTime() - sessionNanos);
+			buffer.putInt(offset + Journal.SUITE_OFFSET, suiteId);
+			buffer.putInt(offset + Journal.CASE_OFFSET, caseId);
+			int position = offset + Journal.RECORD_HEADER_SIZE;
+			position = putString(buffer, position, first);
+			position = putString(buffer, position, second);
+			if (values != null) {
+				position = (position + 7) & ~7;
+				for (long value : values) {
+					buffer.putLong(position, value);
+					position += 8;
+				}
+			}
+			buffer.putInt(offset + Journal.LENGTH_OFFSET, length);
+			return true;
+		}
+		return false;
+	}
+
+	private static int putString(MappedByteBuffer buffer, int position, byte[] bytes) {
+		if (bytes == null) {
+			return position;
+		}
+		buffer.putInt(position, bytes.length);
+		position += 4;
+		for (byte b : bytes) {
+			buffer.put(position++, b);
+		}
+		return position;
+	}
+
+	/**
+	 * Moves on to the segment after the given full one, unless another thread already did.
+	 * @return false if the journal is closed or the next segment could not be created.
+	 */
+	private synchronized boolean next(Segment full) {
+		if (closed) {
+			return false;
+		}
+		if (current == full) {
+			try {
+				current = openSegment(full.index + 1);
+			} catch (IOException e) {
+				closed = true;
+				LOGGER.error("Could not create journal segment " + (full.index + 1) + " in " + directory + ", the journal is closed", e);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the current segment to the storage device.
+	 */
+	void force() {
+		current.buffer.force();
+	}
+
+	/**
+	 * Writes the current segment to the storage device and stops appending.
+	 */
+	synchronized void close() {
+		if (!closed) {
+			closed = true;
+			force();
+		}
+	}
+
+	private static final class Segment {
+
+		private final int index;
+
+		private final MappedByteBuffer buffer;
+
+		private final AtomicInteger position = new AtomicInteger(Journal.SEGMENT_HEADER_SIZE);
+
+		Segment(int index, MappedByteBuffer buffer) {
+			this.index = index;
+			this.buffer = buffer;
+		}
+
+		/**
+		 * @return the offset of the claimed space, or -1 if the segment has no room left.
+		 */
+		int claim(int length) {
+			int offset = position.getAndAdd(length);
+			return offset >= 0 && offset <= buffer.capacity() - length ? offset : -1;
+		}
+	}
+}
@@ -29,7 +29,7 @@ public class Activator extends DependencyActivatorBase {
 	@SuppressWarnings("serial")
 	@Override
 	public void init(BundleContext context, DependencyManager manager) throws Exception {
-		manager.add(createComponent().setImplementation(LoggingTestMonitor.class).setCallbacks("init", null, null, null)
+		manager.add(createComponent().setImplementation(LoggingTestMonitor.class)
 				.setInterface(new String[] { TestMonitor.class.getName() }, new Properties() {
 					{
 						put(Constants.SERVICE_RANKING, Integer.MIN_VALUE);
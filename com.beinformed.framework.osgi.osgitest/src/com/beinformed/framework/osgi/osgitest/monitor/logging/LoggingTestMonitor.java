@@ -15,159 +15,325 @@
  */
 package com.beinformed.framework.osgi.osgitest.monitor.logging;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.beinformed.framework.osgi.osgitest.LatencyStatistics;
+import com.beinformed.framework.osgi.osgitest.LoadResult;
+import com.beinformed.framework.osgi.osgitest.MeasurementMonitor;
+import com.beinformed.framework.osgi.osgitest.ScopedTestMonitor;
 import com.beinformed.framework.osgi.osgitest.TestCase;
-import com.beinformed.framework.osgi.osgitest.TestMonitor;
 import com.beinformed.framework.osgi.osgitest.TestSuite;
+import com.beinformed.framework.osgi.osgitest.base.TestCaseKey;
 
 /**
- * TestSuiteMonitor implementation that outputs info as info log statements using the configured log framework.
+ * TestSuiteMonitor implementation that outputs info as info log statements using the configured log framework. <br />
+ * The results of each test case are kept apart and logged as one statement when the test case ends, so the output
+ * of test cases that run concurrently does not interleave. The counts of each test suite and of the whole test run
+ * are kept in striped counters, which test cases on any thread update without contention. <br />
+ * Results that are reported through the unqualified call backs belong to the test case or test suite that was last
+ * begun on the same thread.
  */
-public class LoggingTestMonitor implements TestMonitor {
+public class LoggingTestMonitor implements ScopedTestMonitor, MeasurementMonitor {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(LoggingTestMonitor.class);
 
-	private boolean testPassed = true;
+	private static final String NL = System.getProperty("line.separator");
+
+	private static final String LINE = "=============================================================================";
+
+	private static final String SUITE_START = "= START =====================================================================" + NL
+			+ "Testing: {}" + NL + LINE;
 
-	boolean allTestsPassed = true;
+	private static final String SUITE_END = LINE + NL + "{} for suite {}" + NL + "\t {} of {} testcases failed." + NL
+			+ "\t {} of {} assertions failed." + NL + "= END =======================================================================";
 
-	private int assertions = 0;
+	private static final String TEST_PASSED = "== Begin test {} '{}'" + NL + "\tAll {} assertions passed for testcase {} '{}'" + NL
+			+ "== End test {} '{}'";
 
-	private int totalAssertions = 0;
+	private static final String TEST_FAILED = "== Begin test {} '{}'" + NL + "{}\t{} of {} assertions failed for testcase {} '{}'" + NL
+			+ "== End test {} '{}'";
 
-	private int failCount = 0;
+	private final ConcurrentMap<TestSuite, Counts> suites = new ConcurrentHashMap<TestSuite, Counts>();
 
-	private int totalFailCount = 0;
+	private final ConcurrentMap<TestCaseKey, TestCaseResult> testCases = new ConcurrentHashMap<TestCaseKey, TestCaseResult>();
 
-	private int failedTestCases = 0;
+	private final ThreadLocal<TestSuite> currentSuite = new ThreadLocal<TestSuite>();
 
-	private int totalTestCases = 0;
+	private final ThreadLocal<TestCaseResult> currentTestCase = new ThreadLocal<TestCaseResult>();
+
+	private volatile Counts run = new Counts();
 
 	@Override
 	public void beginTest(TestCase testCase) {
-		LOGGER.info("== Begin test {} '{}'", testCase.getIdentifier(), testCase.getLabel());
-		testPassed = true;
-		assertions = 0;
-		failCount = 0;
-		totalTestCases++;
+		currentTestCase.set(new TestCaseResult(currentSuite.get(), testCase));
 	}
 
 	@Override
-	public void assertion(boolean condition, String messageOnFailure) {
-		registerAssertion(condition, messageOnFailure, null);
+	public void beginTest(TestSuite suite, TestCase testCase) {
+		testCases.put(new TestCaseKey(suite, testCase), new TestCaseResult(suite, testCase));
 	}
 
 	@Override
-	public void error(String message, Throwable exception) {
-		registerAssertion(false, message, exception);
+	public void assertion(boolean condition, String messageOnFailure) {
+		TestCaseResult result = currentTestCase.get();
+		if (result != null) {
+			result.register(condition, messageOnFailure, null);
+		} else {
+			registerOutsideTestCase(currentSuite.get(), condition, messageOnFailure, null);
+		}
 	}
 
 	@Override
-	public void endTest(TestCase testCase) {
-		if (!testPassed) {
-			failedTestCases++;
+	public void assertion(TestSuite suite, TestCase testCase, boolean condition, String messageOnFailure) {
+		TestCaseResult result = testCases.get(new TestCaseKey(suite, testCase));
+		if (result != null) {
+			result.register(condition, messageOnFailure, null);
+		} else {
+			registerOutsideTestCase(suite, condition, messageOnFailure, null);
 		}
-		totalAssertions += assertions;
-		totalFailCount += failCount;
+	}
 
-		if (testPassed()) {
-			LOGGER.info("\tAll {} assertions passed for testcase {} '{}'", new Object[] { getAssertionCount(), testCase.getIdentifier(), testCase.getLabel() });
+	@Override
+	public void error(String message, Throwable exception) {
+		TestCaseResult result = currentTestCase.get();
+		if (result != null) {
+			result.register(false, message, exception);
 		} else {
-			LOGGER.info("\t{} of {} assertions failed for testcase {} '{}'", new Object[] { getFailCount(), getAssertionCount(), testCase.getIdentifier(),
-					testCase.getLabel() });
+			registerOutsideTestCase(currentSuite.get(), false, message, exception);
 		}
+	}
 
-		LOGGER.info("== End test {} '{}'", testCase.getIdentifier(), testCase.getLabel());
+	@Override
+	public void error(TestSuite suite, TestCase testCase, String message, Throwable exception) {
+		TestCaseResult result = testCases.get(new TestCaseKey(suite, testCase));
+		if (result != null) {
+			result.register(false, message, exception);
+		} else {
+			registerOutsideTestCase(suite, false, message, exception);
+		}
 	}
 
-	private void registerAssertion(boolean passed, String messageOnFailure, Throwable exception) {
-		assertions++;
-		if (!passed) {
-			testPassed = false;
-			allTestsPassed = false;
-			failCount++;
-			if (exception == null) {
-				LOGGER.error("\t\t" + messageOnFailure);
-			} else {
-				LOGGER.error("\t\t" + messageOnFailure, exception);
-			}
+	@Override
+	public void endTest(TestCase testCase) {
+		TestCaseResult result = currentTestCase.get();
+		currentTestCase.remove();
+		if (result != null) {
+			result.end();
 		}
 	}
 
-	public boolean testPassed() {
-		return testPassed;
+	@Override
+	public void endTest(TestSuite suite, TestCase testCase) {
+		TestCaseResult result = testCases.remove(new TestCaseKey(suite, testCase));
+		if (result != null) {
+			result.end();
+		}
 	}
 
-	public int getFailCount() {
-		return failCount;
+	/**
+	 * Registers an assertion or error that is not reported by a test case, for instance a failed lifecycle wiring.
+	 */
+	private void registerOutsideTestCase(TestSuite suite, boolean passed, String message, Throwable exception) {
+		Counts suiteCounts = suite != null ? suites.get(suite) : null;
+		run.register(passed);
+		if (suiteCounts != null) {
+			suiteCounts.register(passed);
+		}
+		if (!passed) {
+			LOGGER.error("\t\t{}", message, exception);
+		}
 	}
 
-	public int getTotalFailCount() {
-		return totalFailCount;
+	/**
+	 * @return the number of test suites in the current or last test run.
+	 */
+	public long getTotalTestSuites() {
+		return run.testSuites.sum();
 	}
 
-	public int getAssertionCount() {
-		return assertions;
+	/**
+	 * @return the number of failed test suites in the current or last test run.
+	 */
+	public long getFailedTestSuites() {
+		return run.failedTestSuites.sum();
 	}
 
-	public int getTotalAssertions() {
-		return totalAssertions;
+	/**
+	 * @return the number of test cases in the current or last test run.
+	 */
+	public long getTotalTestCases() {
+		return run.testCases.sum();
 	}
 
-	public int getFailedTestCases() {
-		return failedTestCases;
+	/**
+	 * @return the number of failed test cases in the current or last test run.
+	 */
+	public long getFailedTestCases() {
+		return run.failedTestCases.sum();
 	}
 
-	public int getTotalTestCases() {
-		return totalTestCases;
+	/**
+	 * @return the number of assertions and errors in the current or last test run.
+	 */
+	public long getTotalAssertions() {
+		return run.assertions.sum();
 	}
 
-	private void init() {
-		testPassed = true;
-		allTestsPassed = true;
-		assertions = 0;
-		totalAssertions = 0;
-		failCount = 0;
-		totalFailCount = 0;
-		failedTestCases = 0;
-		totalTestCases = 0;
+	/**
+	 * @return the number of failed assertions and errors in the current or last test run.
+	 */
+	public long getTotalFailCount() {
+		return run.failedAssertions.sum();
 	}
 
 	@Override
 	public void beginTestSuite(TestSuite suite) {
-		init();
-
-		LOGGER.info("= START =====================================================================");
-		LOGGER.info("Testing: {}", suite.getLabel());
-		LOGGER.info("=============================================================================");
-
+		suites.put(suite, new Counts());
+		currentSuite.set(suite);
+		LOGGER.info(SUITE_START, suite.getLabel());
 	}
 
 	@Override
 	public void endTestSuite(TestSuite suite) {
-		LOGGER.info("=============================================================================");
-
-		if (allTestsPassed) {
-			LOGGER.info("ALL TESTS PASSED for suite {}", suite.getLabel());
-		} else {
-			LOGGER.info("TESTS FAILED for suite {}", suite.getLabel());
+		if (currentSuite.get() == suite) {
+			currentSuite.remove();
+		}
+		Counts counts = suites.remove(suite);
+		if (counts == null) {
+			counts = new Counts();
+		}
+		boolean passed = counts.failedAssertions.sum() == 0;
+		run.testSuites.increment();
+		if (!passed) {
+			run.failedTestSuites.increment();
 		}
-		LOGGER.info("\t {} of {} testcases failed.", new Object[] { getFailedTestCases(), getTotalTestCases(), });
-		LOGGER.info("\t {} of {} assertions failed.", new Object[] { getTotalFailCount(), getTotalAssertions(), });
+		LOGGER.info(SUITE_END, new Object[] { passed ? "ALL TESTS PASSED" : "TESTS FAILED", suite.getLabel(), counts.failedTestCases.sum(),
+				counts.testCases.sum(), counts.failedAssertions.sum(), counts.assertions.sum() });
+	}
 
-		LOGGER.info("= END =======================================================================");
+	@Override
+	public void measurement(TestSuite suite, TestCase testCase, LatencyStatistics statistics) {
+		LOGGER.info("Latency of testcase {} '{}' in suite {}: {}", new Object[] { testCase.getIdentifier(), testCase.getLabel(), suite.getLabel(),
+				String.format("n=%d, min=%.1f us, mean=%.1f us, p50=%.1f us, p99=%.1f us, max=%.1f us", statistics.getCount(),
+						statistics.getMin() / 1000d, statistics.getMean() / 1000d, statistics.getPercentile(50) / 1000d,
+						statistics.getPercentile(99) / 1000d, statistics.getMax() / 1000d) });
+		if (statistics instanceof LoadResult) {
+			LoadResult load = (LoadResult) statistics;
+			LOGGER.info("Load of testcase {} '{}' in suite {}: {}", new Object[] { testCase.getIdentifier(), testCase.getLabel(), suite.getLabel(),
+					String.format("%.1f ops/s, %d of %d operations failed", load.getThroughput(), load.getErrors(), load.getOperations()) });
+			if (load.getTargetRate() > 0) {
+				LOGGER.info("\tStarted {} operations per second of the target rate of {}", String.format("%.1f", load.getAchievedRate()),
+						String.format("%.1f", load.getTargetRate()));
+			}
+		}
 	}
 
 	@Override
 	public void beginTestRun() {
+		run = new Counts();
 		LOGGER.info("= BEGIN TESTRUN =============================================================");
 	}
 
 	@Override
 	public void endTestRun() {
-		LOGGER.info("= END TESTRUN ===============================================================");
+		Counts counts = run;
+		LOGGER.info("= END TESTRUN ===============================================================" + NL
+				+ "\t {} of {} testsuites failed." + NL + "\t {} of {} testcases failed." + NL + "\t {} of {} assertions failed.",
+				new Object[] { counts.failedTestSuites.sum(), counts.testSuites.sum(), counts.failedTestCases.sum(), counts.testCases.sum(),
+						counts.failedAssertions.sum(), counts.assertions.sum() });
+	}
+
+	/**
+	 * Counts of a test suite or of a test run.
+	 */
+	private static final class Counts {
+
+		final LongAdder testSuites = new LongAdder();
+
+		final LongAdder failedTestSuites = new LongAdder();
+
+		final LongAdder testCases = new LongAdder();
+
+		final LongAdder failedTestCases = new LongAdder();
+
+		final LongAdder assertions = new LongAdder();
+
+		final LongAdder failedAssertions = new LongAdder();
+
+		void register(boolean passed) {
+			assertions.increment();
+			if (!passed) {
+				failedAssertions.increment();
+			}
+		}
+
+		void add(int testCaseAssertions, int testCaseFailures) {
+			testCases.increment();
+			assertions.add(testCaseAssertions);
+			if (testCaseFailures > 0) {
+				failedTestCases.increment();
+				failedAssertions.add(testCaseFailures);
+			}
+		}
 	}
 
+	/**
+	 * The results of a test case that has begun. The failures are collected and logged together with the outcome of
+	 * the test case when it ends.
+	 */
+	private final class TestCaseResult {
+
+		private final TestSuite suite;
+
+		private final TestCase testCase;
+
+		private int assertions;
+
+		private int failures;
+
+		private StringBuilder output;
+
+		TestCaseResult(TestSuite suite, TestCase testCase) {
+			this.suite = suite;
+			this.testCase = testCase;
+		}
+
+		synchronized void register(boolean passed, String messageOnFailure, Throwable exception) {
+			assertions++;
+			if (!passed) {
+				failures++;
+				if (output == null) {
+					output = new StringBuilder();
+				}
+				output.append("\t\t").append(messageOnFailure).append(NL);
+				if (exception != null) {
+					StringWriter stackTrace = new StringWriter();
+					exception.printStackTrace(new PrintWriter(stackTrace));
+					output.append(stackTrace);
+				}
+			}
+		}
+
+		synchronized void end() {
+			run.add(assertions, failures);
+			Counts suiteCounts = suite != null ? suites.get(suite) : null;
+			if (suiteCounts != null) {
+				suiteCounts.add(assertions, failures);
+			}
+			String identifier = testCase.getIdentifier();
+			String label = testCase.getLabel();
+			if (failures == 0) {
+				LOGGER.info(TEST_PASSED, new Object[] { identifier, label, assertions, identifier, label, identifier, label });
+			} else {
+				LOGGER.error(TEST_FAILED, new Object[] { identifier, label, output, failures, assertions, identifier, label, identifier, label });
+			}
+		}
+	}
 }
\ No newline at end of file
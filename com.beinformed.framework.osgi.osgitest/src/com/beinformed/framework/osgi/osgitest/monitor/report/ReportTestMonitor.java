@@ -0,0 +1,290 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.monitor.report;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.beinformed.framework.osgi.osgitest.LatencyStatistics;
+import com.beinformed.framework.osgi.osgitest.MeasurementMonitor;
+import com.beinformed.framework.osgi.osgitest.SkipMonitor;
+import com.beinformed.framework.osgi.osgitest.TestCase;
+import com.beinformed.framework.osgi.osgitest.TestSuite;
+import com.beinformed.framework.osgi.osgitest.base.TestCaseKey;
+
+/**
+ * TestMonitor implementation that writes a JUnit XML file and a JSON lines file per test suite, for CI servers
+ * and other tools to pick up. <br />
+ * The results are written as they arrive and each test suite's files are complete once the test suite ends, see
+ * {@link SuiteReport}. The files are written to the directory set by the {@code osgitest.reportDirectory} system
+ * property (default {@value #DEFAULT_DIRECTORY}); {@code osgitest.reportFormats} lists the formats to write,
+ * {@code junit} and {@code jsonl} (default both). <br />
+ * Failures that are reported through the unqualified call backs are written for the test case last begun on the
+ * same thread or, outside a test case, for the {@code [suite]} test case of the test suite last begun on it.
+ */
+public class ReportTestMonitor implements SkipMonitor, MeasurementMonitor {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ReportTestMonitor.class);
+
+	static final String DEFAULT_DIRECTORY = "osgitest-reports";
+
+	private static final String JUNIT = "junit";
+
+	private static final String JSON_LINES = "jsonl";
+
+	private volatile File directory = new File(DEFAULT_DIRECTORY);
+
+	private volatile boolean junit = true;
+
+	private volatile boolean jsonLines = true;
+
+	private final ConcurrentMap<TestSuite, SuiteReport> suites = new ConcurrentHashMap<TestSuite, SuiteReport>();
+
+	private final ConcurrentMap<TestCaseKey, SuiteReport.TestCaseReport> testCases = new ConcurrentHashMap<TestCaseKey, SuiteReport.TestCaseReport>();
+
+	/**
+	 * The file names taken by test suites in the current test run.
+	 */
+	private final Set<String> fileNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	private final ThreadLocal<SuiteReport> currentSuite = new ThreadLocal<SuiteReport>();
+
+	private final ThreadLocal<TestCaseScope> currentTestCase = new ThreadLocal<TestCaseScope>();
+
+	/**
+	 * Call back method that is called when the component is started.
+	 * Reads the report settings from the system properties.
+	 */
+	public void start() {
+		String directoryString = System.getProperty("osgitest.reportDirectory");
+		if (directoryString != null) {
+			setDirectory(new File(directoryString));
+		}
+		String formatsString = System.getProperty("osgitest.reportFormats");
+		if (formatsString != null) {
+			setFormats(formatsString);
+		}
+	}
+
+	/**
+	 * Call back method that is called when the component is stopped.
+	 * Closes the reports of test suites that have not ended.
+	 */
+	public void stop() {
+		for (SuiteReport report : suites.values()) {
+			report.abort();
+		}
+		suites.clear();
+		testCases.clear();
+	}
+
+	/**
+	 * @return the directory the reports are written to.
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @param directory the directory the reports are written to. It is created when the first test suite begins.
+	 */
+	public void setDirectory(File directory) {
+		if (directory == null) {
+			throw new IllegalArgumentException("No report directory given");
+		}
+		this.directory = directory;
+	}
+
+	/**
+	 * @param formats the comma separated formats to write: {@code junit} and {@code jsonl}.
+	 */
+	public void setFormats(String formats) {
+		boolean junitFormat = false;
+		boolean jsonLinesFormat = false;
+		for (String format : formats.split(",")) {
+			format = format.trim();
+			if (JUNIT.equalsIgnoreCase(format)) {
+				junitFormat = true;
+			} else if (JSON_LINES.equalsIgnoreCase(format)) {
+				jsonLinesFormat = true;
+			} else if (format.length() > 0) {
+				throw new IllegalArgumentException("Unknown report format '" + format + "', expected " + JUNIT + " or " + JSON_LINES);
+			}
+		}
+		this.junit = junitFormat;
+		this.jsonLines = jsonLinesFormat;
+	}
+
+	@Override
+	public void beginTestRun() {
+		fileNames.clear();
+	}
+
+	@Override
+	public void beginTestSuite(TestSuite suite) {
+		File reportDirectory = directory;
+		if (!reportDirectory.isDirectory() && !reportDirectory.mkdirs()) {
+			LOGGER.error("Could not create report directory {}", reportDirectory);
+		}
+		SuiteReport report = new SuiteReport(reportDirectory, fileName(suite.getLabel()), suite.getLabel(), junit, jsonLines);
+		SuiteReport previous = suites.put(suite, report);
+		if (previous != null) {
+			previous.abort();
+		}
+		currentSuite.set(report);
+	}
+
+	/**
+	 * @return a file name for the test suite with the given label that no other test suite in this test run has.
+	 */
+	private String fileName(String label) {
+		StringBuilder name = new StringBuilder();
+		String text = label != null ? label : "testsuite";
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			name.append(c < 0x80 && (Character.isLetterOrDigit(c) || c == '.' || c == '-' || c == '_') ? c : '_');
+		}
+		String fileName = name.toString();
+		for (int i = 2; !fileNames.add(fileName); i++) {
+			fileName = name + "-" + i;
+		}
+		return fileName;
+	}
+
+	@Override
+	public void beginTest(TestCase testCase) {
+		SuiteReport report = currentSuite.get();
+		if (report != null) {
+			currentTestCase.set(new TestCaseScope(report, report.beginTest(testCase)));
+		}
+	}
+
+	@Override
+	public void beginTest(TestSuite suite, TestCase testCase) {
+		SuiteReport report = suites.get(suite);
+		if (report != null) {
+			testCases.put(new TestCaseKey(suite, testCase), report.beginTest(testCase));
+		}
+	}
+
+	@Override
+	public void assertion(boolean condition, String messageOnFailure) {
+		TestCaseScope scope = currentTestCase.get();
+		if (scope != null) {
+			scope.suite.assertion(scope.testCase, condition, messageOnFailure);
+		} else if (currentSuite.get() != null) {
+			currentSuite.get().assertion(null, condition, messageOnFailure);
+		}
+	}
+
+	@Override
+	public void assertion(TestSuite suite, TestCase testCase, boolean condition, String messageOnFailure) {
+		SuiteReport report = suites.get(suite);
+		if (report != null) {
+			report.assertion(testCases.get(new TestCaseKey(suite, testCase)), condition, messageOnFailure);
+		}
+	}
+
+	@Override
+	public void error(String message, Throwable exception) {
+		TestCaseScope scope = currentTestCase.get();
+		if (scope != null) {
+			scope.suite.error(scope.testCase, message, exception);
+		} else if (currentSuite.get() != null) {
+			currentSuite.get().error(null, message, exception);
+		}
+	}
+
+	@Override
+	public void error(TestSuite suite, TestCase testCase, String message, Throwable exception) {
+		SuiteReport report = suites.get(suite);
+		if (report != null) {
+			report.error(testCases.get(new TestCaseKey(suite, testCase)), message, exception);
+		}
+	}
+
+	@Override
+	public void skipped(TestSuite suite, TestCase testCase, String reason) {
+		SuiteReport report = suites.get(suite);
+		SuiteReport.TestCaseReport testCaseReport = testCases.get(new TestCaseKey(suite, testCase));
+		if (report != null && testCaseReport != null) {
+			report.skipped(testCaseReport, reason);
+		}
+	}
+
+	@Override
+	public void endTest(TestCase testCase) {
+		TestCaseScope scope = currentTestCase.get();
+		currentTestCase.remove();
+		if (scope != null) {
+			scope.suite.endTest(scope.testCase);
+		}
+	}
+
+	@Override
+	public void endTest(TestSuite suite, TestCase testCase) {
+		SuiteReport.TestCaseReport testCaseReport = testCases.remove(new TestCaseKey(suite, testCase));
+		SuiteReport report = suites.get(suite);
+		if (testCaseReport != null && report != null) {
+			report.endTest(testCaseReport);
+		}
+	}
+
+	@Override
+	public void measurement(TestSuite suite, TestCase testCase, LatencyStatistics statistics) {
+		SuiteReport report = suites.get(suite);
+		if (report != null) {
+			report.measurement(testCase, statistics);
+		}
+	}
+
+	@Override
+	public void endTestSuite(TestSuite suite) {
+		SuiteReport report = suites.remove(suite);
+		if (currentSuite.get() == report) {
+			currentSuite.remove();
+		}
+		if (report != null) {
+			report.finish();
+		}
+	}
+
+	@Override
+	public void endTestRun() {
+		// the reports of the test suites are complete when they end
+	}
+
+	/**
+	 * A test case begun through the unqualified call backs, together with the test suite it belongs to.
+	 */
+	private static final class TestCaseScope {
+
+		private final SuiteReport suite;
+
+		private final SuiteReport.TestCaseReport testCase;
+
+		TestCaseScope(SuiteReport suite, SuiteReport.TestCaseReport testCase) {
+			this.suite = suite;
+			this.testCase = testCase;
+		}
+	}
+}
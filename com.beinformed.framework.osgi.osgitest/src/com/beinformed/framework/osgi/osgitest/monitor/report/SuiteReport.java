@@ -0,0 +1,518 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.monitor.report;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.beinformed.framework.osgi.osgitest.LatencyStatistics;
+import com.beinformed.framework.osgi.osgitest.LoadResult;
+import com.beinformed.framework.osgi.osgitest.TestCase;
+
+/**
+ * The report files of one test suite, written while the test suite runs. <br />
+ * The JSON lines file gets a line for the start of the test suite, every failure and error, every test case that
+ * ends, every measurement and the end of the test suite, as they arrive. Test cases that were skipped get the
+ * status {@code skipped} and a {@code skipped} element in the JUnit XML file. The test cases of the JUnit XML file are
+ * written to a scratch file as they end, because the {@code testsuite} element that encloses them carries the
+ * totals. When the test suite ends, the totals are written to the JUnit XML file, followed by the scratch file,
+ * which is transferred channel to channel. <br />
+ * Only the test cases that are running are kept in memory, each with the details of at most
+ * {@link #MAX_FAILURE_DETAILS} failures. An I/O error ends the report of the test suite, it does not fail the
+ * test run.
+ */
+final class SuiteReport {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(SuiteReport.class);
+
+	static final int MAX_FAILURE_DETAILS = 100;
+
+	/**
+	 * The name of the JUnit test case that reports the failures outside the test cases of a test suite.
+	 */
+	private static final String SUITE_TEST_CASE = "[suite]";
+
+	private final File directory;
+
+	private final String fileName;
+
+	private final String label;
+
+	private final long startTime = System.currentTimeMillis();
+
+	private final long startNanos = System.nanoTime();
+
+	private final TestCaseReport suiteFailures = new TestCaseReport(null);
+
+	private ChannelWriter junitBody;
+
+	private ChannelWriter jsonLines;
+
+	private long tests;
+
+	private long failures;
+
+	private long errors;
+
+	private long skipped;
+
+	private long assertions;
+
+	private boolean closed;
+
+	/**
+	 * Creates the report files of a test suite in the given directory.
+	 * @param fileName the name of the report files, without extension.
+	 * @param label the label of the test suite.
+	 */
+	SuiteReport(File directory, String fileName, String label, boolean junit, boolean jsonLines) {
+		this.directory = directory;
+		this.fileName = fileName;
+		this.label = label;
+		try {
+			if (junit) {
+				this.junitBody = new ChannelWriter(FileChannel.open(path("TEST-" + fileName + ".xml.body"), StandardOpenOption.CREATE,
+						StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.DELETE_ON_CLOSE));
+			}
+			if (jsonLines) {
+				this.jsonLines = new ChannelWriter(FileChannel.open(path(fileName + ".jsonl"), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING));
+				StringBuilder line = beginLine("suiteStarted");
+				field(line, "time", startTime);
+				writeLine(line);
+			}
+		} catch (IOException e) {
+			failed(e);
+		}
+	}
+
+	private Path path(String name) {
+		return new File(directory, name).toPath();
+	}
+
+	/**
+	 * @return the report of the given test case, which has just begun.
+	 */
+	TestCaseReport beginTest(TestCase testCase) {
+		return new TestCaseReport(testCase);
+	}
+
+	/**
+	 * Registers an assertion of the given test case.
+	 * @param testCase the report of the test case, or null if the assertion was made outside a test case.
+	 */
+	void assertion(TestCaseReport testCase, boolean condition, String messageOnFailure) {
+		TestCaseReport report = testCase != null ? testCase : suiteFailures;
+		if (condition) {
+			report.passed();
+		} else {
+			report.failed(false, messageOnFailure, null);
+			writeFailure(report, "failure", messageOnFailure, null);
+		}
+	}
+
+	/**
+	 * Registers an error of the given test case.
+	 * @param testCase the report of the test case, or null if the error occurred outside a test case.
+	 */
+	void error(TestCaseReport testCase, String message, Throwable exception) {
+		TestCaseReport report = testCase != null ? testCase : suiteFailures;
+		String stackTrace = exception != null ? stackTrace(exception) : null;
+		report.failed(true, message, stackTrace);
+		writeFailure(report, "error", message, stackTrace);
+	}
+
+	private synchronized void writeFailure(TestCaseReport testCase, String event, String message, String stackTrace) {
+		if (jsonLines != null) {
+			StringBuilder line = beginLine(event);
+			if (testCase.testCase != null) {
+				field(line, "case", testCase.testCase.getIdentifier());
+			}
+			field(line, "message", message);
+			if (stackTrace != null) {
+				field(line, "stackTrace", stackTrace);
+			}
+			writeLine(line);
+		}
+	}
+
+	/**
+	 * Registers that the given test case is not executed.
+	 */
+	void skipped(TestCaseReport testCase, String reason) {
+		testCase.skipped(reason);
+	}
+
+	/**
+	 * Writes the outcome of the given test case, which has ended.
+	 */
+	synchronized void endTest(TestCaseReport testCase) {
+		long duration = System.nanoTime() - testCase.startNanos;
+		synchronized (testCase) {
+			tests++;
+			assertions += testCase.assertions;
+			if (testCase.errors > 0) {
+				errors++;
+			} else if (testCase.failures > 0) {
+				failures++;
+			} else if (testCase.skipReason != null) {
+				skipped++;
+			}
+			String identifier = testCase.testCase.getIdentifier();
+			if (jsonLines != null) {
+				StringBuilder line = beginLine("testCase");
+				field(line, "case", identifier);
+				field(line, "label", testCase.testCase.getLabel());
+				field(line, "status", testCase.isFailed() ? "failed" : testCase.skipReason != null ? "skipped" : "passed");
+				if (testCase.skipReason != null && !testCase.isFailed()) {
+					field(line, "reason", testCase.skipReason);
+				}
+				field(line, "assertions", testCase.assertions);
+				field(line, "failures", testCase.failures);
+				field(line, "errors", testCase.errors);
+				field(line, "durationMillis", duration / 1000000);
+				writeLine(line);
+			}
+			writeTestCase(identifier, duration, testCase);
+		}
+	}
+
+	/**
+	 * Writes the latency statistics of the given test case.
+	 */
+	synchronized void measurement(TestCase testCase, LatencyStatistics statistics) {
+		if (jsonLines != null) {
+			StringBuilder line = beginLine("measurement");
+			field(line, "case", testCase.getIdentifier());
+			field(line, "count", statistics.getCount());
+			field(line, "minNanos", statistics.getMin());
+			field(line, "meanNanos", (long) statistics.getMean());
+			field(line, "p50Nanos", statistics.getPercentile(50));
+			field(line, "p99Nanos", statistics.getPercentile(99));
+			field(line, "maxNanos", statistics.getMax());
+			if (statistics instanceof LoadResult) {
+				LoadResult load = (LoadResult) statistics;
+				field(line, "operations", load.getOperations());
+				field(line, "errors", load.getErrors());
+				field(line, "throughput", load.getThroughput());
+				field(line, "targetRate", load.getTargetRate());
+				field(line, "achievedRate", load.getAchievedRate());
+			}
+			writeLine(line);
+		}
+	}
+
+	/**
+	 * Writes the totals of the test suite and closes its report files. The JUnit XML file is put in place once it is
+	 * complete.
+	 */
+	synchronized void finish() {
+		if (closed) {
+			return;
+		}
+		long duration = System.nanoTime() - startNanos;
+		synchronized (suiteFailures) {
+			if (suiteFailures.isFailed()) {
+				tests++;
+				if (suiteFailures.errors > 0) {
+					errors++;
+				} else {
+					failures++;
+				}
+				writeTestCase(SUITE_TEST_CASE, 0, suiteFailures);
+			}
+			assertions += suiteFailures.assertions;
+		}
+		if (jsonLines != null) {
+			StringBuilder line = beginLine("suiteFinished");
+			field(line, "tests", tests);
+			field(line, "failures", failures);
+			field(line, "errors", errors);
+			field(line, "skipped", skipped);
+			field(line, "assertions", assertions);
+			field(line, "durationMillis", duration / 1000000);
+			writeLine(line);
+		}
+		try {
+			if (junitBody != null) {
+				Path part = path("TEST-" + fileName + ".xml.part");
+				ChannelWriter junit = new ChannelWriter(FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING));
+				try {
+					StringBuilder header = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<testsuite name=\"");
+					xml(header, label, true);
+					header.append("\" tests=\"").append(tests).append("\" failures=\"").append(failures).append("\" errors=\"").append(errors)
+							.append("\" skipped=\"").append(skipped).append("\" assertions=\"").append(assertions).append("\" time=\"").append(seconds(duration))
+							.append("\" timestamp=\"").append(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.ROOT).format(new Date(startTime)))
+							.append("\">\n");
+					junit.append(header);
+					junitBody.transferTo(junit);
+					junit.append("</testsuite>\n");
+				} finally {
+					junit.close();
+				}
+				Files.move(part, path("TEST-" + fileName + ".xml"), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			failed(e);
+		}
+		close();
+	}
+
+	/**
+	 * Closes the report files without completing them, for instance when the test monitor stops during a test run.
+	 */
+	synchronized void abort() {
+		close();
+	}
+
+	private void writeTestCase(String name, long duration, TestCaseReport testCase) {
+		if (junitBody == null) {
+			return;
+		}
+		StringBuilder element = new StringBuilder("\t<testcase name=\"");
+		xml(element, name, true);
+		element.append("\" classname=\"");
+		xml(element, label, true);
+		element.append("\" time=\"").append(seconds(duration)).append("\" assertions=\"").append(testCase.assertions).append('"');
+		if (testCase.isFailed()) {
+			String kind = testCase.errors > 0 ? "error" : "failure";
+			element.append(">\n\t\t<").append(kind).append(" message=\"");
+			xml(element, testCase.firstMessage, true);
+			element.append("\" type=\"").append(kind).append("\">");
+			for (String detail : testCase.details) {
+				xml(element, detail, false);
+				element.append('\n');
+			}
+			int omitted = testCase.failures + testCase.errors - testCase.details.size();
+			if (omitted > 0) {
+				element.append("... ").append(omitted).append(" more\n");
+			}
+			element.append("</").append(kind).append(">\n\t</testcase>\n");
+		} else if (testCase.skipReason != null) {
+			element.append(">\n\t\t<skipped message=\"");
+			xml(element, testCase.skipReason, true);
+			element.append("\"/>\n\t</testcase>\n");
+		} else {
+			element.append("/>\n");
+		}
+		try {
+			junitBody.append(element);
+		} catch (IOException e) {
+			failed(e);
+		}
+	}
+
+	private StringBuilder beginLine(String event) {
+		StringBuilder line = new StringBuilder(128).append("{\"event\":\"").append(event).append('"');
+		field(line, "suite", label);
+		return line;
+	}
+
+	private void writeLine(StringBuilder line) {
+		try {
+			jsonLines.append(line.append("}\n"));
+		} catch (IOException e) {
+			failed(e);
+		}
+	}
+
+	private void failed(IOException e) {
+		if (!closed) {
+			LOGGER.error("Could not write the report of test suite " + label + " to " + directory, e);
+			close();
+		}
+	}
+
+	private void close() {
+		closed = true;
+		junitBody = close(junitBody);
+		jsonLines = close(jsonLines);
+	}
+
+	private ChannelWriter close(ChannelWriter writer) {
+		if (writer != null) {
+			try {
+				writer.close();
+			} catch (IOException e) {
+				LOGGER.warn("Could not close the report of test suite " + label, e);
+			}
+		}
+		return null;
+	}
+
+	private static String seconds(long nanos) {
+		return String.format(Locale.ROOT, "%.3f", nanos / 1e9);
+	}
+
+	private static String stackTrace(Throwable exception) {
+		StringWriter stackTrace = new StringWriter();
+		exception.printStackTrace(new PrintWriter(stackTrace));
+		return stackTrace.toString();
+	}
+
+	private static void field(StringBuilder line, String name, long value) {
+		line.append(",\"").append(name).append("\":").append(value);
+	}
+
+	private static void field(StringBuilder line, String name, double value) {
+		line.append(",\"").append(name).append("\":").append(Double.isNaN(value) || Double.isInfinite(value) ? "null" : String.valueOf(value));
+	}
+
+	private static void field(StringBuilder line, String name, String value) {
+		line.append(",\"").append(name).append("\":");
+		if (value == null) {
+			line.append("null");
+			return;
+		}
+		line.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				line.append("\\\"");
+				break;
+			case '\\':
+				line.append("\\\\");
+				break;
+			case '\n':
+				line.append("\\n");
+				break;
+			case '\r':
+				line.append("\\r");
+				break;
+			case '\t':
+				line.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					line.append(String.format("\\u%04x", (int) c));
+				} else {
+					line.append(c);
+				}
+			}
+		}
+		line.append('"');
+	}
+
+	/**
+	 * Appends the given text escaped for XML. Characters that XML does not allow are left out.
+	 * @param attribute true to also escape the white space that attribute values normalize.
+	 */
+	private static void xml(StringBuilder element, String text, boolean attribute) {
+		if (text == null) {
+			return;
+		}
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '&':
+				element.append("&amp;");
+				break;
+			case '<':
+				element.append("&lt;");
+				break;
+			case '>':
+				element.append("&gt;");
+				break;
+			case '"':
+				element.append(attribute ? "&quot;" : "\"");
+				break;
+			case '\n':
+			case '\r':
+			case '\t':
+				if (attribute) {
+					element.append("&#").append((int) c).append(';');
+				} else {
+					element.append(c);
+				}
+				break;
+			default:
+				if (c >= 0x20 && c != 0xFFFE && c != 0xFFFF) {
+					element.append(c);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The results of a test case that is running, guarded by itself.
+	 */
+	static final class TestCaseReport {
+
+		private final TestCase testCase;
+
+		private final long startNanos = System.nanoTime();
+
+		private final List<String> details = new ArrayList<String>();
+
+		private int assertions;
+
+		private int failures;
+
+		private int errors;
+
+		private String firstMessage;
+
+		private String skipReason;
+
+		TestCaseReport(TestCase testCase) {
+			this.testCase = testCase;
+		}
+
+		synchronized void passed() {
+			assertions++;
+		}
+
+		synchronized void failed(boolean error, String message, String stackTrace) {
+			if (error) {
+				errors++;
+			} else {
+				assertions++;
+				failures++;
+			}
+			if (firstMessage == null) {
+				firstMessage = String.valueOf(message);
+			}
+			if (details.size() < MAX_FAILURE_DETAILS) {
+				details.add(stackTrace != null ? message + '\n' + stackTrace : String.valueOf(message));
+			}
+		}
+
+		synchronized void skipped(String reason) {
+			skipReason = String.valueOf(reason);
+		}
+
+		boolean isFailed() {
+			return failures > 0 || errors > 0;
+		}
+	}
+}
@@ -19,6 +19,9 @@ import org.apache.felix.dm.DependencyActivatorBase;
 import org.apache.felix.dm.DependencyManager;
 import org.osgi.framework.BundleContext;
 
+import com.beinformed.framework.osgi.frameworkstate.FrameworkStateListener;
+import com.beinformed.framework.osgi.osgitest.LoadTestRunner;
+import com.beinformed.framework.osgi.osgitest.SelectiveTestRunner;
 import com.beinformed.framework.osgi.osgitest.TestMonitor;
 import com.beinformed.framework.osgi.osgitest.TestRunner;
 import com.beinformed.framework.osgi.osgitest.TestSuite;
@@ -29,10 +32,11 @@ public class Activator extends DependencyActivatorBase {
 	public void init(BundleContext context, DependencyManager manager) throws Exception {
 
 		manager.add(createComponent()
-				.setInterface(TestRunner.class.getName(), null)
-				.setImplementation(DefaultTestRunner.class).setCallbacks(null, null, null, null)
+				.setInterface(new String[] { TestRunner.class.getName(), LoadTestRunner.class.getName(), SelectiveTestRunner.class.getName(),
+						FrameworkStateListener.class.getName() }, null)
+				.setImplementation(DefaultTestRunner.class).setCallbacks(null, "start", "stop", null)
 				.add(createServiceDependency().setService(TestSuite.class)
-						.setCallbacks("addTestSuite", null, "removeTestSuite", "swapTestSuite")
+						.setCallbacks("addTestSuite", "changeTestSuite", "removeTestSuite", "swapTestSuite")
 						.setRequired(false))
 				.add(createServiceDependency().setService(TestMonitor.class)
 						.setCallbacks("addTestMonitor", null, "removeTestMonitor", "swapTestMonitor")
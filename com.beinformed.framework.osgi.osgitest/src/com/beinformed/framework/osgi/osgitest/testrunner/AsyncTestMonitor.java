@@ -0,0 +1,397 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.testrunner;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.beinformed.framework.osgi.osgitest.LatencyStatistics;
+import com.beinformed.framework.osgi.osgitest.MeasurementMonitor;
+import com.beinformed.framework.osgi.osgitest.ScopedTestMonitor;
+import com.beinformed.framework.osgi.osgitest.SkipMonitor;
+import com.beinformed.framework.osgi.osgitest.TestCase;
+import com.beinformed.framework.osgi.osgitest.TestMonitor;
+import com.beinformed.framework.osgi.osgitest.TestSuite;
+
+/**
+ * TestMonitor that passes all events on to another monitor on a thread of its own, so a slow monitor does not
+ * hold up the test threads. <br />
+ * Events are put in a bounded ring buffer, in the order they are received, and dispatched one by one by a single
+ * consumer thread. When the buffer is full, the {@link MonitorOverflow} decides what happens. The end of a test run
+ * is only returned from once the monitor has handled all events before it. <br />
+ * Test case scoped events are passed on as such to a {@link ScopedTestMonitor} and through the unqualified call
+ * backs to any other monitor. Measurements are only passed on to a {@link MeasurementMonitor} and skipped test
+ * cases only to a {@link SkipMonitor}.
+ */
+class AsyncTestMonitor implements SkipMonitor, MeasurementMonitor {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(AsyncTestMonitor.class);
+
+	private static final long POLL_MILLIS = 100;
+
+	private final TestMonitor target;
+
+	private final BlockingQueue<Event> buffer;
+
+	private final MonitorOverflow overflow;
+
+	/**
+	 * Events that did not fit in the buffer, guarded by itself. While it is not empty, new events are added to it
+	 * as well, so events are dispatched in the order they were received.
+	 */
+	private final Queue<Event> spill = new ArrayDeque<Event>();
+
+	private final AtomicLong droppedPasses = new AtomicLong();
+
+	private final Thread consumer;
+
+	private volatile boolean closed;
+
+	/**
+	 * Starts the thread that dispatches the events to the given monitor.
+	 * @param capacity the number of events the buffer holds.
+	 */
+	AsyncTestMonitor(TestMonitor target, int capacity, MonitorOverflow overflow) {
+		this.target = target;
+		this.buffer = new ArrayBlockingQueue<Event>(capacity);
+		this.overflow = overflow;
+		this.consumer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				consume();
+			}
+		}, "osgitest-monitor-" + target.getClass().getSimpleName());
+		consumer.setDaemon(true);
+		consumer.start();
+	}
+
+	/**
+	 * Waits until all events received so far have been handled by the monitor.
+	 */
+	void flush() {
+		Event marker = new Event(Kind.FLUSH);
+		marker.flushed = new CountDownLatch(1);
+		enqueue(marker);
+		boolean interrupted = false;
+		try {
+			while (!marker.flushed.await(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+				if (!consumer.isAlive()) {
+					break;
+				}
+			}
+		} catch (InterruptedException e) {
+			interrupted = true;
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		long dropped = droppedPasses.getAndSet(0);
+		if (dropped > 0) {
+			LOGGER.warn("Dropped {} passed assertions because test monitor {} could not keep up", dropped, target.getClass().getName());
+		}
+	}
+
+	/**
+	 * Dispatches the remaining events and stops the consumer thread.
+	 */
+	void close() {
+		if (!closed) {
+			flush();
+			closed = true;
+		}
+	}
+
+	private void enqueue(Event event) {
+		if (closed) {
+			LOGGER.debug("Ignoring event for test monitor {} after it has been closed", target.getClass().getName());
+			return;
+		}
+		switch (overflow) {
+		case DROP_PASSES:
+			if (event.kind == Kind.ASSERTION && event.condition) {
+				if (!buffer.offer(event)) {
+					droppedPasses.incrementAndGet();
+				}
+				return;
+			}
+			break;
+		case SPILL:
+			synchronized (spill) {
+				if (spill.isEmpty() && buffer.offer(event)) {
+					return;
+				}
+				spill.add(event);
+			}
+			return;
+		default:
+			break;
+		}
+		put(event);
+	}
+
+	/**
+	 * Puts the event in the buffer, waiting for room if needed. Interrupts, for instance of a test case that timed
+	 * out, do not cause events to get lost.
+	 */
+	private void put(Event event) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					if (buffer.offer(event, POLL_MILLIS, TimeUnit.MILLISECONDS) || closed) {
+						return;
+					}
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void consume() {
+		while (true) {
+			Event event = buffer.poll();
+			if (event == null) {
+				if (unspill()) {
+					continue;
+				}
+				if (closed) {
+					return;
+				}
+				try {
+					event = buffer.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					// keep going until closed
+				}
+				if (event == null) {
+					continue;
+				}
+			}
+			try {
+				event.dispatch(target);
+			} catch (Throwable t) {
+				LOGGER.error("Test monitor " + target.getClass().getName() + " failed to handle " + event.kind, t);
+			}
+		}
+	}
+
+	/**
+	 * Moves spilled events to the buffer, oldest first.
+	 * @return true if any events were moved.
+	 */
+	private boolean unspill() {
+		synchronized (spill) {
+			boolean moved = false;
+			while (!spill.isEmpty() && buffer.offer(spill.peek())) {
+				spill.poll();
+				moved = true;
+			}
+			return moved;
+		}
+	}
+
+	@Override
+	public void beginTestRun() {
+		enqueue(new Event(Kind.BEGIN_TEST_RUN));
+	}
+
+	@Override
+	public void beginTestSuite(TestSuite suite) {
+		Event event = new Event(Kind.BEGIN_TEST_SUITE);
+		event.suite = suite;
+		enqueue(event);
+	}
+
+	@Override
+	public void beginTest(TestCase testCase) {
+		enqueue(new Event(Kind.BEGIN_TEST, null, testCase));
+	}
+
+	@Override
+	public void beginTest(TestSuite suite, TestCase testCase) {
+		enqueue(new Event(Kind.BEGIN_TEST, suite, testCase));
+	}
+
+	@Override
+	public void assertion(boolean condition, String messageOnFailure) {
+		assertion(null, null, condition, messageOnFailure);
+	}
+
+	@Override
+	public void assertion(TestSuite suite, TestCase testCase, boolean condition, String messageOnFailure) {
+		Event event = new Event(Kind.ASSERTION, suite, testCase);
+		event.condition = condition;
+		event.message = messageOnFailure;
+		enqueue(event);
+	}
+
+	@Override
+	public void error(String message, Throwable exception) {
+		error(null, null, message, exception);
+	}
+
+	@Override
+	public void error(TestSuite suite, TestCase testCase, String message, Throwable exception) {
+		Event event = new Event(Kind.ERROR, suite, testCase);
+		event.message = message;
+		event.exception = exception;
+		enqueue(event);
+	}
+
+	@Override
+	public void endTest(TestCase testCase) {
+		enqueue(new Event(Kind.END_TEST, null, testCase));
+	}
+
+	@Override
+	public void endTest(TestSuite suite, TestCase testCase) {
+		enqueue(new Event(Kind.END_TEST, suite, testCase));
+	}
+
+	@Override
+	public void skipped(TestSuite suite, TestCase testCase, String reason) {
+		if (target instanceof SkipMonitor) {
+			Event event = new Event(Kind.SKIPPED, suite, testCase);
+			event.message = reason;
+			enqueue(event);
+		}
+	}
+
+	@Override
+	public void measurement(TestSuite suite, TestCase testCase, LatencyStatistics statistics) {
+		if (target instanceof MeasurementMonitor) {
+			Event event = new Event(Kind.MEASUREMENT, suite, testCase);
+			event.statistics = statistics;
+			enqueue(event);
+		}
+	}
+
+	@Override
+	public void endTestSuite(TestSuite suite) {
+		Event event = new Event(Kind.END_TEST_SUITE);
+		event.suite = suite;
+		enqueue(event);
+	}
+
+	@Override
+	public void endTestRun() {
+		enqueue(new Event(Kind.END_TEST_RUN));
+		flush();
+	}
+
+	private enum Kind {
+		BEGIN_TEST_RUN, BEGIN_TEST_SUITE, BEGIN_TEST, ASSERTION, ERROR, SKIPPED, END_TEST, MEASUREMENT, END_TEST_SUITE, END_TEST_RUN, FLUSH
+	}
+
+	/**
+	 * A received event. Test case events without a test suite were received through the unqualified call backs.
+	 */
+	private static final class Event {
+
+		private final Kind kind;
+
+		private TestSuite suite;
+
+		private TestCase testCase;
+
+		private boolean condition;
+
+		private String message;
+
+		private Throwable exception;
+
+		private LatencyStatistics statistics;
+
+		private CountDownLatch flushed;
+
+		Event(Kind kind) {
+			this.kind = kind;
+		}
+
+		Event(Kind kind, TestSuite suite, TestCase testCase) {
+			this.kind = kind;
+			this.suite = suite;
+			this.testCase = testCase;
+		}
+
+		void dispatch(TestMonitor target) {
+			ScopedTestMonitor scoped = suite != null && target instanceof ScopedTestMonitor ? (ScopedTestMonitor) target : null;
+			switch (kind) {
+			case BEGIN_TEST_RUN:
+				target.beginTestRun();
+				break;
+			case BEGIN_TEST_SUITE:
+				target.beginTestSuite(suite);
+				break;
+			case BEGIN_TEST:
+				if (scoped != null) {
+					scoped.beginTest(suite, testCase);
+				} else {
+					target.beginTest(testCase);
+				}
+				break;
+			case ASSERTION:
+				if (scoped != null) {
+					scoped.assertion(suite, testCase, condition, message);
+				} else {
+					target.assertion(condition, message);
+				}
+				break;
+			case ERROR:
+				if (scoped != null) {
+					scoped.error(suite, testCase, message, exception);
+				} else {
+					target.error(message, exception);
+				}
+				break;
+			case SKIPPED:
+				((SkipMonitor) target).skipped(suite, testCase, message);
+				break;
+			case END_TEST:
+				if (scoped != null) {
+					scoped.endTest(suite, testCase);
+				} else {
+					target.endTest(testCase);
+				}
+				break;
+			case MEASUREMENT:
+				((MeasurementMonitor) target).measurement(suite, testCase, statistics);
+				break;
+			case END_TEST_SUITE:
+				target.endTestSuite(suite);
+				break;
+			case END_TEST_RUN:
+				target.endTestRun();
+				break;
+			case FLUSH:
+				flushed.countDown();
+				break;
+			}
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.testrunner;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ExecutorService that limits the number of concurrently running tasks of its delegate using a semaphore. The
+ * permit is acquired on the thread running the task, which is cheap when the delegate uses virtual threads.
+ * When that thread is interrupted while waiting for a permit, the task is not run; a task that is a
+ * {@link Future} is cancelled, so whoever waits for it learns that it will not run.
+ */
+class BoundedExecutorService extends AbstractExecutorService {
+
+	private final ExecutorService delegate;
+
+	private final Semaphore permits;
+
+	BoundedExecutorService(ExecutorService delegate, int maxConcurrentTasks) {
+		this.delegate = delegate;
+		this.permits = new Semaphore(Math.max(1, maxConcurrentTasks));
+	}
+
+	@Override
+	public void execute(final Runnable command) {
+		delegate.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					permits.acquire();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					if (command instanceof Future) {
+						((Future<?>) command).cancel(false);
+					}
+					return;
+				}
+				try {
+					command.run();
+				} finally {
+					permits.release();
+				}
+			}
+		});
+	}
+
+	@Override
+	public void shutdown() {
+		delegate.shutdown();
+	}
+
+	@Override
+	public List<Runnable> shutdownNow() {
+		return delegate.shutdownNow();
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return delegate.isShutdown();
+	}
+
+	@Override
+	public boolean isTerminated() {
+		return delegate.isTerminated();
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return delegate.awaitTermination(timeout, unit);
+	}
+}
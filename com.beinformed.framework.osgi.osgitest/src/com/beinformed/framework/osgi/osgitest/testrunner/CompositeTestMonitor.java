@@ -0,0 +1,162 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.testrunner;
+
+import java.util.Map;
+
+import org.osgi.framework.ServiceReference;
+
+import com.beinformed.framework.osgi.osgitest.LatencyStatistics;
+import com.beinformed.framework.osgi.osgitest.MeasurementMonitor;
+import com.beinformed.framework.osgi.osgitest.ScopedTestMonitor;
+import com.beinformed.framework.osgi.osgitest.SkipMonitor;
+import com.beinformed.framework.osgi.osgitest.TestCase;
+import com.beinformed.framework.osgi.osgitest.TestMonitor;
+import com.beinformed.framework.osgi.osgitest.TestSuite;
+
+/**
+ * TestMonitor that dispatches all events to the currently registered test monitors.<br />
+ * Test case scoped events are passed on as such to {@link ScopedTestMonitor}s and through the
+ * unqualified call backs to all other monitors. Measurements are only passed on to {@link MeasurementMonitor}s and
+ * skipped test cases only to {@link SkipMonitor}s.
+ */
+class CompositeTestMonitor implements SkipMonitor, MeasurementMonitor {
+
+	private final Map<ServiceReference, TestMonitor> testMonitors;
+
+	CompositeTestMonitor(Map<ServiceReference, TestMonitor> testMonitors) {
+		this.testMonitors = testMonitors;
+	}
+
+	@Override
+	public void beginTestRun() {
+		for (TestMonitor monitor : testMonitors.values()) {
+			monitor.beginTestRun();
+		}
+	}
+
+	@Override
+	public void beginTestSuite(TestSuite suite) {
+		for (TestMonitor monitor : testMonitors.values()) {
+			monitor.beginTestSuite(suite);
+		}
+	}
+
+	@Override
+	public void beginTest(TestCase testCase) {
+		for (TestMonitor monitor : testMonitors.values()) {
+			monitor.beginTest(testCase);
+		}
+	}
+
+	@Override
+	public void beginTest(TestSuite suite, TestCase testCase) {
+		for (TestMonitor monitor : testMonitors.values()) {
+			if (monitor instanceof ScopedTestMonitor) {
+				((ScopedTestMonitor) monitor).beginTest(suite, testCase);
+			} else {
+				monitor.beginTest(testCase);
+			}
+		}
+	}
+
+	@Override
+	public void assertion(boolean condition, String messageOnFailure) {
+		for (TestMonitor monitor : testMonitors.values()) {
+			monitor.assertion(condition, messageOnFailure);
+		}
+	}
+
+	@Override
+	public void assertion(TestSuite suite, TestCase testCase, boolean condition, String messageOnFailure) {
+		for (TestMonitor monitor : testMonitors.values()) {
+			if (monitor instanceof ScopedTestMonitor) {
+				((ScopedTestMonitor) monitor).assertion(suite, testCase, condition, messageOnFailure);
+			} else {
+				monitor.assertion(condition, messageOnFailure);
+			}
+		}
+	}
+
+	@Override
+	public void error(String message, Throwable exception) {
+		for (TestMonitor monitor : testMonitors.values()) {
+			monitor.error(message, exception);
+		}
+	}
+
+	@Override
+	public void error(TestSuite suite, TestCase testCase, String message, Throwable exception) {
+		for (TestMonitor monitor : testMonitors.values()) {
+			if (monitor instanceof ScopedTestMonitor) {
+				((ScopedTestMonitor) monitor).error(suite, testCase, message, exception);
+			} else {
+				monitor.error(message, exception);
+			}
+		}
+	}
+
+	@Override
+	public void endTest(TestCase testCase) {
+		for (TestMonitor monitor : testMonitors.values()) {
+			monitor.endTest(testCase);
+		}
+	}
+
+	@Override
+	public void endTest(TestSuite suite, TestCase testCase) {
+		for (TestMonitor monitor : testMonitors.values()) {
+			if (monitor instanceof ScopedTestMonitor) {
+				((ScopedTestMonitor) monitor).endTest(suite, testCase);
+			} else {
+				monitor.endTest(testCase);
+			}
+		}
+	}
+
+	@Override
+	public void skipped(TestSuite suite, TestCase testCase, String reason) {
+		for (TestMonitor monitor : testMonitors.values()) {
+			if (monitor instanceof SkipMonitor) {
+				((SkipMonitor) monitor).skipped(suite, testCase, reason);
+			}
+		}
+	}
+
+	@Override
+	public void measurement(TestSuite suite, TestCase testCase, LatencyStatistics statistics) {
+		for (TestMonitor monitor : testMonitors.values()) {
+			if (monitor instanceof MeasurementMonitor) {
+				((MeasurementMonitor) monitor).measurement(suite, testCase, statistics);
+			}
+		}
+	}
+
+	@Override
+	public void endTestSuite(TestSuite suite) {
+		for (TestMonitor monitor : testMonitors.values()) {
+			monitor.endTestSuite(suite);
+		}
+	}
+
+	@Override
+	public void endTestRun() {
+		for (TestMonitor monitor : testMonitors.values()) {
+			monitor.endTestRun();
+		}
+	}
+
+}
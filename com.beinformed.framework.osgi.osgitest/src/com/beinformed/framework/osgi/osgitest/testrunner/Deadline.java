@@ -0,0 +1,78 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.testrunner;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable point in time after which a test suite or test run must stop, based on {@link System#nanoTime()}.
+ */
+final class Deadline {
+
+	/**
+	 * Deadline that never expires.
+	 */
+	static final Deadline NONE = new Deadline(Long.MAX_VALUE, null);
+
+	private final long nanoTime;
+
+	private final String description;
+
+	private Deadline(long nanoTime, String description) {
+		this.nanoTime = nanoTime;
+		this.description = description;
+	}
+
+	/**
+	 * Creates a deadline the given number of milliseconds from now.
+	 * @param timeoutMillis the timeout in milliseconds, {@link #NONE} is returned when it is 0 or less.
+	 * @param description describes what exceeded its time when the deadline expires.
+	 */
+	static Deadline after(long timeoutMillis, String description) {
+		if (timeoutMillis <= 0) {
+			return NONE;
+		}
+		return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis), description);
+	}
+
+	/**
+	 * @return the deadline that expires first, this one or the given one.
+	 */
+	Deadline earliest(Deadline other) {
+		if (this == NONE) {
+			return other;
+		} else if (other == NONE) {
+			return this;
+		}
+		return nanoTime - other.nanoTime <= 0 ? this : other;
+	}
+
+	boolean isSet() {
+		return this != NONE;
+	}
+
+	boolean isExpired() {
+		return isSet() && remainingNanos() <= 0;
+	}
+
+	long remainingNanos() {
+		return isSet() ? nanoTime - System.nanoTime() : Long.MAX_VALUE;
+	}
+
+	String getDescription() {
+		return description;
+	}
+}
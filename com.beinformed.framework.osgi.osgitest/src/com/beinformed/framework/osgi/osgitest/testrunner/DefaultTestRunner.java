@@ -15,32 +15,51 @@
  */
 package com.beinformed.framework.osgi.osgitest.testrunner;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang.StringUtils;
-import org.apache.felix.dm.Component;
 import org.apache.felix.dm.DependencyManager;
-import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
-import org.osgi.framework.ServiceRegistration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.beinformed.framework.osgi.frameworkstate.FrameworkStateListener;
+import com.beinformed.framework.osgi.osgitest.LoadResult;
+import com.beinformed.framework.osgi.osgitest.LoadTestRunner;
+import com.beinformed.framework.osgi.osgitest.SelectiveTestRunner;
+import com.beinformed.framework.osgi.osgitest.MeasurementMonitor;
+import com.beinformed.framework.osgi.osgitest.ScopedTestMonitor;
+import com.beinformed.framework.osgi.osgitest.SkipMonitor;
 import com.beinformed.framework.osgi.osgitest.TestCase;
 import com.beinformed.framework.osgi.osgitest.TestMonitor;
 import com.beinformed.framework.osgi.osgitest.TestRunner;
 import com.beinformed.framework.osgi.osgitest.TestSuite;
 import com.beinformed.framework.osgi.osgitest.TestSuiteLifecycle;
+import com.beinformed.framework.osgi.osgitest.base.LatencyHistogram;
 import com.beinformed.framework.osgi.osgitest.base.NullTestMonitor;
 
 /**
@@ -48,26 +67,75 @@ import com.beinformed.framework.osgi.osgitest.base.NullTestMonitor;
  * Test runner acts also as a Job. <br />
  * Manageable settings are: <br />
  */
-public class DefaultTestRunner implements TestRunner {
+public class DefaultTestRunner implements TestRunner, LoadTestRunner, SelectiveTestRunner, FrameworkStateListener {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(DefaultTestRunner.class);
 
-	private final Map<ServiceReference, TestSuite> testSuites = new ConcurrentHashMap<ServiceReference, TestSuite>();
+	private final TestSuiteIndex testSuiteIndex = new TestSuiteIndex();
+
+	private final Map<TestSuite, Long> wiringTimeouts = new ConcurrentHashMap<TestSuite, Long>();
+
+	/**
+	 * Lifecycle wirings whose dependencies are not available yet, with the number of transitions to the unavailable
+	 * framework state that had been seen when the wiring started.
+	 */
+	private final Map<LifecycleWiring, Long> pendingWirings = new ConcurrentHashMap<LifecycleWiring, Long>();
+
+	/**
+	 * The service dependencies declared by the last completed wiring of each lifecycle test suite, for the result cache.
+	 */
+	private final Map<TestSuite, List<String>> wiredDependencies = new ConcurrentHashMap<TestSuite, List<String>>();
+
+	private final AtomicLong unavailableTransitions = new AtomicLong();
 
 	private final Map<ServiceReference, TestMonitor> testMonitors = new ConcurrentHashMap<ServiceReference, TestMonitor>();
 
 	private boolean deploymentTestingEnabled = false;
 
-	private ExecutorService runTestsExecutorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+	private ExecutorStrategy executorStrategy = ExecutorStrategy.PLATFORM;
+
+	private int executorParallelism = 0;
+
+	private volatile ExecutorService runTestsExecutorService;
 
 	private String testSuitesConcurrent;
 
-	private final TestMonitor monitor = new CompositeTestMonitor();
+	private int maxConcurrentTestCases = 0;
+
+	private final CompositeTestMonitor monitor = new CompositeTestMonitor(testMonitors);
 
 	private int nrOfWarmUpRuns = 0;
 
 	private int nrOfTestRuns = 1;
 
+	private int suiteParallelism = 1;
+
+	private long testCaseTimeout = 0;
+
+	private long testSuiteTimeout = 0;
+
+	private long testRunTimeout = 0;
+
+	private volatile ScheduledExecutorService watchdog;
+
+	private boolean prewireLifecycleSuites = false;
+
+	private long wiringTimeout = 30000;
+
+	private boolean failFastWiring = false;
+
+	private boolean reuseLifecycleWiring = false;
+
+	private String resultCacheFile;
+
+	private boolean fullRun = false;
+
+	private boolean asyncMonitorDispatch = false;
+
+	private int monitorBufferSize = 8192;
+
+	private MonitorOverflow monitorOverflow = MonitorOverflow.BLOCK;
+
 	private AllTestSuitesAvailableAsserter allTestSuitesAvailableAsserter = new AllTestSuitesAvailableAsserter();
 	
 	private volatile DependencyManager dependencyManager;
@@ -78,20 +146,144 @@ public class DefaultTestRunner implements TestRunner {
 			deploymentTestingEnabled = Boolean.parseBoolean(deploymentTestingEnabledString);
 		}
 		LOGGER.debug("Deployment testing enabled: {}", deploymentTestingEnabled);
+		String suiteParallelismString = System.getProperty("osgitest.suiteParallelism");
+		if (suiteParallelismString != null) {
+			suiteParallelism = Integer.parseInt(suiteParallelismString);
+		}
+		LOGGER.debug("Test suite parallelism: {}", suiteParallelism);
+		String maxConcurrentTestCasesString = System.getProperty("osgitest.maxConcurrentTestCases");
+		if (maxConcurrentTestCasesString != null) {
+			maxConcurrentTestCases = Integer.parseInt(maxConcurrentTestCasesString);
+		}
+		String executorStrategyString = System.getProperty("osgitest.executor");
+		if (executorStrategyString != null) {
+			executorStrategy = ExecutorStrategy.parse(executorStrategyString);
+		}
+		String executorParallelismString = System.getProperty("osgitest.executorParallelism");
+		if (executorParallelismString != null) {
+			executorParallelism = Integer.parseInt(executorParallelismString);
+		}
+		LOGGER.debug("Test executor: {} (parallelism {})", executorStrategy, getEffectiveExecutorParallelism());
+		String testCaseTimeoutString = System.getProperty("osgitest.testCaseTimeout");
+		if (testCaseTimeoutString != null) {
+			testCaseTimeout = Long.parseLong(testCaseTimeoutString);
+		}
+		String testSuiteTimeoutString = System.getProperty("osgitest.testSuiteTimeout");
+		if (testSuiteTimeoutString != null) {
+			testSuiteTimeout = Long.parseLong(testSuiteTimeoutString);
+		}
+		String testRunTimeoutString = System.getProperty("osgitest.testRunTimeout");
+		if (testRunTimeoutString != null) {
+			testRunTimeout = Long.parseLong(testRunTimeoutString);
+		}
+		String prewireLifecycleSuitesString = System.getProperty("osgitest.prewireLifecycleSuites");
+		if (prewireLifecycleSuitesString != null) {
+			prewireLifecycleSuites = Boolean.parseBoolean(prewireLifecycleSuitesString);
+		}
+		String wiringTimeoutString = System.getProperty("osgitest.wiringTimeout");
+		if (wiringTimeoutString != null) {
+			wiringTimeout = Long.parseLong(wiringTimeoutString);
+		}
+		String failFastWiringString = System.getProperty("osgitest.failFastWiring");
+		if (failFastWiringString != null) {
+			failFastWiring = Boolean.parseBoolean(failFastWiringString);
+		}
+		LOGGER.debug("Lifecycle wiring timeout: {} ms (fail fast: {})", wiringTimeout, failFastWiring);
+		String nrOfWarmUpRunsString = System.getProperty("osgitest.nrOfWarmUpRuns");
+		if (nrOfWarmUpRunsString != null) {
+			nrOfWarmUpRuns = Integer.parseInt(nrOfWarmUpRunsString);
+		}
+		String nrOfTestRunsString = System.getProperty("osgitest.nrOfTestRuns");
+		if (nrOfTestRunsString != null) {
+			nrOfTestRuns = Integer.parseInt(nrOfTestRunsString);
+		}
+		String reuseLifecycleWiringString = System.getProperty("osgitest.reuseLifecycleWiring");
+		if (reuseLifecycleWiringString != null) {
+			reuseLifecycleWiring = Boolean.parseBoolean(reuseLifecycleWiringString);
+		}
+		resultCacheFile = System.getProperty("osgitest.resultCache");
+		String fullRunString = System.getProperty("osgitest.fullRun");
+		if (fullRunString != null) {
+			fullRun = Boolean.parseBoolean(fullRunString);
+		}
+		String asyncMonitorDispatchString = System.getProperty("osgitest.asyncMonitorDispatch");
+		if (asyncMonitorDispatchString != null) {
+			asyncMonitorDispatch = Boolean.parseBoolean(asyncMonitorDispatchString);
+		}
+		String monitorBufferSizeString = System.getProperty("osgitest.monitorBufferSize");
+		if (monitorBufferSizeString != null) {
+			monitorBufferSize = Integer.parseInt(monitorBufferSizeString);
+		}
+		String monitorOverflowString = System.getProperty("osgitest.monitorOverflow");
+		if (monitorOverflowString != null) {
+			monitorOverflow = MonitorOverflow.parse(monitorOverflowString);
+		}
+		LOGGER.debug("Asynchronous monitor dispatch: {} (buffer size {}, overflow {})", new Object[] { asyncMonitorDispatch, monitorBufferSize, monitorOverflow });
+	}
+
+	// DependencyManager lifecycle callback method
+	void start() {
+		runTestsExecutorService = executorStrategy.createExecutor(getEffectiveExecutorParallelism());
+		watchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "osgitest-watchdog");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	// DependencyManager lifecycle callback method
+	void stop() {
+		runTestsExecutorService.shutdownNow();
+		watchdog.shutdownNow();
+		// stop the dispatch threads, closing a monitor again when it is removed later does nothing
+		for (TestMonitor testMonitor : testMonitors.values()) {
+			if (testMonitor instanceof AsyncTestMonitor) {
+				((AsyncTestMonitor) testMonitor).close();
+			}
+		}
 	}
 	
 	public void addTestSuite(ServiceReference reference, TestSuite testSuite) {
 		LOGGER.debug("Add test suite {}", testSuite.getLabel());
-		testSuites.put(reference, testSuite);
+		indexTestSuite(reference, testSuite);
 
 		if (deploymentTestingEnabled) {
-			executeTest(testSuite);
+			executeTest(testSuite, testSuite.getTestCases(), monitor, Deadline.NONE, null, null, 0, null, false);
+		}
+	}
+
+	/**
+	 * Indexes the given test suite again when the properties of its service are modified. This is how a test suite
+	 * that changed its test cases after it was registered gets them selected.
+	 */
+	public void changeTestSuite(ServiceReference reference, TestSuite testSuite) {
+		LOGGER.debug("Change test suite {}", testSuite.getLabel());
+		indexTestSuite(reference, testSuite);
+	}
+
+	/**
+	 * Indexes the test cases and tags of the given test suite and reads its wiring timeout.
+	 */
+	private void indexTestSuite(ServiceReference reference, TestSuite testSuite) {
+		testSuiteIndex.add(reference, testSuite);
+		wiringTimeouts.remove(testSuite);
+		Object wiringTimeoutProperty = reference.getProperty(TestSuite.WIRING_TIMEOUT_PROPERTY);
+		if (wiringTimeoutProperty != null) {
+			try {
+				wiringTimeouts.put(testSuite, Long.valueOf(wiringTimeoutProperty.toString().trim()));
+			} catch (NumberFormatException e) {
+				LOGGER.warn("Ignoring invalid {} of test suite {}: {}", new Object[] { TestSuite.WIRING_TIMEOUT_PROPERTY, testSuite.getLabel(), wiringTimeoutProperty });
+			}
 		}
 	}
 
 	public void removeTestSuite(ServiceReference reference, TestSuite testSuite) {
 		LOGGER.debug("Remove test suite {}", testSuite.getLabel());
-		testSuites.remove(reference);
+		testSuiteIndex.remove(reference);
+		wiringTimeouts.remove(testSuite);
 	}
 
 	public void swapTestSuite(ServiceReference previousReference, TestSuite previousTestSuite, ServiceReference currentReference, TestSuite currentTestSuite) {
@@ -101,12 +293,20 @@ public class DefaultTestRunner implements TestRunner {
 
 	public void addTestMonitor(ServiceReference reference, TestMonitor testMonitor) {
 		LOGGER.debug("Add test monitor {}", testMonitor.getClass().getName());
-		testMonitors.put(reference, testMonitor);
+		boolean async = asyncMonitorDispatch;
+		Object asyncDispatchProperty = reference.getProperty(TestMonitor.ASYNC_DISPATCH_PROPERTY);
+		if (asyncDispatchProperty != null) {
+			async = Boolean.parseBoolean(asyncDispatchProperty.toString().trim());
+		}
+		testMonitors.put(reference, async ? new AsyncTestMonitor(testMonitor, monitorBufferSize, monitorOverflow) : testMonitor);
 	}
 
 	public void removeTestMonitor(ServiceReference reference, TestMonitor testMonitor) {
 		LOGGER.debug("Remove test monitor {}", testMonitor.getClass().getName());
-		testMonitors.remove(reference);
+		TestMonitor removed = testMonitors.remove(reference);
+		if (removed instanceof AsyncTestMonitor) {
+			((AsyncTestMonitor) removed).close();
+		}
 	}
 
 	public void swapTestMonitor(ServiceReference previousReference, TestMonitor previousTestMonitor, ServiceReference currentReference,
@@ -115,46 +315,360 @@ public class DefaultTestRunner implements TestRunner {
 		addTestMonitor(currentReference, currentTestMonitor);
 	}
 
+	@Override
+	public void onStarting() {
+
+	}
+
+	@Override
+	public void onStopping() {
+
+	}
+
+	@Override
+	public void onUnavailable() {
+		unavailableTransitions.incrementAndGet();
+	}
+
+	/**
+	 * The framework has become available, so no more services are expected to show up. Lifecycle wirings that were
+	 * started before the framework last became unavailable and are still missing dependencies will not complete,
+	 * so they are failed instead of waiting for their timeout.
+	 */
+	@Override
+	public void onAvailable() {
+		if (!failFastWiring) {
+			return;
+		}
+		long transitions = unavailableTransitions.get();
+		for (Map.Entry<LifecycleWiring, Long> entry : pendingWirings.entrySet()) {
+			LifecycleWiring wiring = entry.getKey();
+			if (entry.getValue() < transitions
+					&& wiring.fail("Test lifecycle wiring failed. The framework became available while dependencies were not satisfied.")) {
+				LOGGER.debug("Failed lifecycle wiring of test suite {}", wiring.getTestSuite().getLabel());
+			}
+		}
+	}
+
 	public void executeTests() {
-		List<TestSuite> testSuitesCopy = new ArrayList<TestSuite>(testSuites.values());
+		executeTestRun(testSuiteIndex.getTestSuites(), Collections.<TestSuite, List<TestCase>> emptyMap());
+	}
+
+	@Override
+	public int executeTests(String selection) {
+		TestSuiteIndex.Selection selected = testSuiteIndex.select(TestSelection.parse(selection));
+		if (selected.getTestCaseCount() == 0) {
+			LOGGER.info("No test cases match selection: {}", selection);
+			return 0;
+		}
+		LOGGER.info("Selection {} matches {} test cases in {} test suites",
+				new Object[] { selection, selected.getTestCaseCount(), selected.getTestSuites().size() });
+		executeTestRun(selected.getTestSuites(), selected.getPartialTestCases());
+		return selected.getTestCaseCount();
+	}
+
+	/**
+	 * Executes the given test suites as one test run.
+	 * @param partialTestCases the test cases to execute of the test suites of which not all test cases are executed.
+	 *            Test suites of which only some test cases are executed are not skipped or recorded by the result cache.
+	 */
+	private void executeTestRun(Map<ServiceReference, TestSuite> testSuitesSnapshot, Map<TestSuite, List<TestCase>> partialTestCases) {
+		List<TestSuite> testSuitesCopy = new ArrayList<TestSuite>(testSuitesSnapshot.values());
 		Collections.sort(testSuitesCopy, new TestSuiteComparator());
 
 		LOGGER.debug("Executing tests (number of testsuites= {})", testSuitesCopy.size());
 
 		LOGGER.debug("Current number of warmup runs {}", nrOfWarmUpRuns);
 		LOGGER.debug("Current number of test runs {}", nrOfTestRuns);
+		Deadline runDeadline = createRunDeadline();
+		ResultCache resultCache = createResultCache(testSuitesSnapshot);
 		monitor.beginTestRun();
 		allTestSuitesAvailableAsserter.assertAllTestSuitesAvailable(monitor);
+		TestSuiteScheduler scheduler = new TestSuiteScheduler(runDeadline, resultCache, partialTestCases);
 		try {
-			for (TestSuite testSuite : testSuitesCopy) {
-				handleWarmUp(nrOfWarmUpRuns, testSuite);
-
-				for (int i = 0; i < nrOfTestRuns; i++) {
-					LOGGER.debug("Executing testsuite {} ({})", new Object[] { testSuite.getLabel(), i + 1 });
-					executeTest(testSuite);
+			if (resultCache != null && !fullRun) {
+				testSuitesCopy = skipUnchangedTestSuites(testSuitesCopy, resultCache, partialTestCases);
+			}
+			if (prewireLifecycleSuites) {
+				executePrewiredTestSuites(testSuitesCopy, scheduler);
+			} else {
+				for (TestSuite testSuite : testSuitesCopy) {
+					scheduler.schedule(testSuite, null);
 				}
 			}
+			scheduler.awaitAll();
 		} catch (Throwable t) {
 			monitor.error("Exception while running test run", t);
 		} finally {
+			scheduler.shutdown();
+			if (resultCache != null) {
+				resultCache.store();
+			}
 			monitor.endTestRun();
 		}
 	}
 
-	private void handleWarmUp(int nrOfWarmUpRuns, TestSuite suite) {
-		if (nrOfWarmUpRuns > 0) {
-			TestMonitor nullMonitor = new NullTestMonitor();
-			for (TestCase testCase : suite.getTestCases()) {
-				suite.test(testCase.getIdentifier(), nullMonitor);
+	/**
+	 * @return the result cache with the fingerprints of the given test suites for this test run, or null when
+	 *         no result cache is configured.
+	 */
+	private ResultCache createResultCache(Map<ServiceReference, TestSuite> testSuitesToRun) {
+		if (StringUtils.isBlank(resultCacheFile)) {
+			return null;
+		}
+		ResultCache resultCache = new ResultCache(new File(resultCacheFile), dependencyManager.getBundleContext());
+		for (Map.Entry<ServiceReference, TestSuite> entry : testSuitesToRun.entrySet()) {
+			resultCache.fingerprint(entry.getKey(), entry.getValue());
+		}
+		return resultCache;
+	}
+
+	/**
+	 * Reports the test suites that passed the last time they were executed, and of which nothing changed since,
+	 * as passed without executing them. {@link SkipMonitor}s are told that their test cases were skipped.
+	 * @return the test suites that still have to be executed.
+	 */
+	private List<TestSuite> skipUnchangedTestSuites(List<TestSuite> testSuitesToRun, ResultCache resultCache,
+			Map<TestSuite, List<TestCase>> partialTestCases) {
+		List<TestSuite> changed = new ArrayList<TestSuite>();
+		for (TestSuite testSuite : testSuitesToRun) {
+			if (partialTestCases.containsKey(testSuite) || !resultCache.isUnchangedPass(testSuite)) {
+				changed.add(testSuite);
+				continue;
+			}
+			LOGGER.info("Test suite {} is unchanged since it last passed, reporting the cached result", testSuite.getLabel());
+			monitor.beginTestSuite(testSuite);
+			for (TestCase testCase : testSuite.getTestCases()) {
+				monitor.beginTest(testSuite, testCase);
+				monitor.skipped(testSuite, testCase, "Unchanged since the test suite last passed");
+				monitor.endTest(testSuite, testCase);
+			}
+			monitor.endTestSuite(testSuite);
+		}
+		return changed;
+	}
+
+	/**
+	 * Wires all lifecycle test suites at once, executes the other test suites and then executes each lifecycle
+	 * test suite as soon as its dependencies are available, in the order in which that happens.
+	 */
+	private void executePrewiredTestSuites(List<TestSuite> testSuitesToRun, TestSuiteScheduler scheduler) {
+		BlockingQueue<LifecycleWiring> wiredQueue = new LinkedBlockingQueue<LifecycleWiring>();
+		List<LifecycleWiring> pending = new ArrayList<LifecycleWiring>();
+		for (TestSuite testSuite : testSuitesToRun) {
+			if (testSuite instanceof TestSuiteLifecycle) {
+				pending.add(wire(testSuite, wiredQueue));
+			}
+		}
+		LOGGER.debug("Wiring {} lifecycle test suites", pending.size());
+
+		for (TestSuite testSuite : testSuitesToRun) {
+			if (!(testSuite instanceof TestSuiteLifecycle)) {
+				scheduler.schedule(testSuite, null);
+			}
+		}
+
+		try {
+			while (!pending.isEmpty()) {
+				Deadline firstDeadline = Deadline.NONE;
+				for (LifecycleWiring wiring : pending) {
+					firstDeadline = firstDeadline.earliest(wiring.getDeadline());
+				}
+				LifecycleWiring wired = wiredQueue.poll(firstDeadline.remainingNanos(), TimeUnit.NANOSECONDS);
+				if (wired != null) {
+					if (pending.remove(wired)) {
+						scheduler.schedule(wired.getTestSuite(), wired);
+					}
+				} else {
+					// the test suites of expired wirings report the wiring timeout themselves
+					for (Iterator<LifecycleWiring> iterator = pending.iterator(); iterator.hasNext();) {
+						LifecycleWiring wiring = iterator.next();
+						if (wiring.getDeadline().isExpired()) {
+							iterator.remove();
+							scheduler.schedule(wiring.getTestSuite(), wiring);
+						}
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			for (LifecycleWiring wiring : pending) {
+				scheduler.schedule(wiring.getTestSuite(), wiring);
+			}
+		}
+	}
+
+	/**
+	 * Executes test suites either on the current thread or, when the suite parallelism is larger than 1, on a
+	 * work-stealing pool. In the latter case the events of each test suite are recorded and passed on to the
+	 * monitors as one block once the test suite has finished, so the output of concurrently running test suites
+	 * is not interleaved.
+	 */
+	private class TestSuiteScheduler {
+
+		private final Deadline runDeadline;
+
+		private final ResultCache resultCache;
+
+		private final Map<TestSuite, List<TestCase>> partialTestCases;
+
+		private final ForkJoinPool pool;
+
+		private final List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+
+		TestSuiteScheduler(Deadline runDeadline, ResultCache resultCache, Map<TestSuite, List<TestCase>> partialTestCases) {
+			this.runDeadline = runDeadline;
+			this.resultCache = resultCache;
+			this.partialTestCases = partialTestCases;
+			this.pool = suiteParallelism > 1 ? new ForkJoinPool(suiteParallelism) : null;
+		}
+
+		/**
+		 * Executes the given test suite.
+		 * @param prewired the wiring of the test suite if it has been wired already, otherwise null.
+		 */
+		void schedule(final TestSuite testSuite, final LifecycleWiring prewired) {
+			if (pool == null) {
+				execute(testSuite, monitor, prewired);
+				return;
+			}
+			tasks.add(pool.submit(new Runnable() {
+				@Override
+				public void run() {
+					RecordingTestMonitor recorder = new RecordingTestMonitor();
+					try {
+						execute(testSuite, recorder, prewired);
+					} catch (Throwable t) {
+						recorder.error("Exception while running test suite", t);
+					} finally {
+						synchronized (monitor) {
+							recorder.replay(monitor);
+						}
+					}
+				}
+			}));
+		}
+
+		/**
+		 * Executes the runs of the selected test cases of the given test suite and, when a result cache is used and
+		 * all its test cases are selected, records whether it passed.
+		 */
+		private void execute(TestSuite testSuite, ScopedTestMonitor suiteMonitor, LifecycleWiring prewired) {
+			List<TestCase> testCases = partialTestCases.get(testSuite);
+			if (testCases != null || resultCache == null) {
+				executeTestSuiteRuns(testSuite, testCases != null ? testCases : testSuite.getTestCases(), suiteMonitor, runDeadline, prewired);
+				return;
+			}
+			OutcomeTestMonitor outcome = new OutcomeTestMonitor(suiteMonitor);
+			boolean completed = false;
+			wiredDependencies.remove(testSuite);
+			try {
+				executeTestSuiteRuns(testSuite, testSuite.getTestCases(), outcome, runDeadline, prewired);
+				completed = true;
+			} finally {
+				List<String> dependencies = wiredDependencies.remove(testSuite);
+				if (dependencies != null) {
+					resultCache.wired(testSuite, dependencies);
+				}
+				resultCache.record(testSuite, completed && !outcome.hasFailed());
+			}
+		}
+
+		void awaitAll() {
+			for (ForkJoinTask<?> task : tasks) {
+				task.join();
+			}
+		}
+
+		void shutdown() {
+			if (pool != null) {
+				pool.shutdown();
 			}
 		}
 	}
 
+	/**
+	 * Executes the warm-up and test runs of the given test cases of a test suite. When lifecycle wirings are reused, a lifecycle
+	 * test suite is wired and initialized once, before the warm-up runs, and cleaned up after the last test run.
+	 * In measurement mode the latencies of the test cases are reported at the end of the last test run, inside its
+	 * test suite block.
+	 */
+	private void executeTestSuiteRuns(TestSuite testSuite, List<TestCase> testCases, ScopedTestMonitor suiteMonitor, Deadline runDeadline,
+			LifecycleWiring prewired) {
+		LifecycleWiring keptWiring = null;
+		if (reuseLifecycleWiring && testSuite instanceof TestSuiteLifecycle) {
+			keptWiring = prewired != null ? prewired : wire(testSuite, null);
+			prewired = null;
+			if (!awaitWiring(keptWiring)) {
+				// report the failed wiring in a test suite block of its own
+				suiteMonitor.beginTestSuite(testSuite);
+				suiteMonitor.error(keptWiring.getFailureMessage(), null);
+				keptWiring.unwire();
+				suiteMonitor.endTestSuite(testSuite);
+				return;
+			}
+		}
+		Map<String, LatencyHistogram> latencies = isMeasuring() ? new HashMap<String, LatencyHistogram>() : null;
+		try {
+			if (keptWiring != null) {
+				((TestSuiteLifecycle) testSuite).initializeTestSuite();
+			}
+
+			for (int i = 0; i < nrOfTestRuns; i++) {
+				LOGGER.debug("Executing testsuite {} ({})", new Object[] { testSuite.getLabel(), i + 1 });
+				executeTest(testSuite, testCases, suiteMonitor, runDeadline, i == 0 ? prewired : null, keptWiring, i == 0 ? nrOfWarmUpRuns : 0,
+						latencies, i == nrOfTestRuns - 1);
+			}
+		} finally {
+			if (keptWiring != null) {
+				((TestSuiteLifecycle) testSuite).cleanupTestSuite();
+				keptWiring.unwire();
+			}
+		}
+	}
+
+	/**
+	 * Executes the given test cases of a test suite the given number of times without reporting the results. The
+	 * test cases are executed like the measured ones, so the test case timeout and the deadline apply; warming up
+	 * stops once the deadline has expired.
+	 */
+	private void handleWarmUp(int nrOfWarmUpRuns, TestSuite suite, List<TestCase> testCases, Deadline deadline) {
+		ScopedTestMonitor warmUpMonitor = new WarmUpTestMonitor();
+		for (int i = 0; i < nrOfWarmUpRuns; i++) {
+			for (TestCase testCase : testCases) {
+				if (deadline.isExpired() || Thread.currentThread().isInterrupted()) {
+					return;
+				}
+				executeTestCase(suite, testCase, warmUpMonitor, deadline, null);
+			}
+		}
+	}
+
+	/**
+	 * @return true when test cases are executed repeatedly and their latencies are measured.
+	 */
+	private boolean isMeasuring() {
+		return nrOfWarmUpRuns > 0 || nrOfTestRuns > 1;
+	}
+
+	private static LatencyHistogram getLatencyHistogram(Map<String, LatencyHistogram> latencies, TestCase testCase) {
+		if (latencies == null) {
+			return null;
+		}
+		LatencyHistogram histogram = latencies.get(testCase.getIdentifier());
+		if (histogram == null) {
+			histogram = new LatencyHistogram();
+			latencies.put(testCase.getIdentifier(), histogram);
+		}
+		return histogram;
+	}
+
 	public boolean executeTestSuite(String testSuiteLabel) {
 		TestSuite testSuite = findTestSuiteByLabel(testSuiteLabel);
 		if (testSuite != null) {
+			Deadline runDeadline = createRunDeadline();
 			monitor.beginTestRun();
-			executeTest(testSuite);
+			executeTest(testSuite, testSuite.getTestCases(), monitor, runDeadline, null, null, 0, null, false);
 			monitor.endTestRun();
 			return true;
 		} else {
@@ -163,44 +677,194 @@ public class DefaultTestRunner implements TestRunner {
 		}
 	}
 
-	private TestSuite findTestSuiteByLabel(String testSuiteLabel) {
-		List<TestSuite> testSuitesCopy = new ArrayList<TestSuite>(testSuites.values());
-		for (TestSuite testSuite : testSuitesCopy) {
-			String label = testSuite.getLabel();
-			if (label != null && label.equals(testSuiteLabel)) {
-				return testSuite;
+	@Override
+	public LoadResult executeClosedLoop(String testSuiteLabel, String testCaseIdentifier, final int workers, String executor, long durationMillis,
+			final long iterations) {
+		if (workers <= 0) {
+			throw new IllegalArgumentException("The number of workers must be positive: " + workers);
+		}
+		if (durationMillis <= 0 && iterations <= 0) {
+			throw new IllegalArgumentException("Either a duration or a number of iterations is required");
+		}
+		final ExecutorService workerExecutor = getLoadExecutorStrategy(executor).createExecutor(workers);
+		final Deadline deadline = Deadline.after(durationMillis, "Load duration elapsed");
+		try {
+			return executeLoad(testSuiteLabel, testCaseIdentifier, new LoadModel() {
+				@Override
+				public LoadResult drive(LoadGenerator generator) {
+					return generator.closedLoop(workerExecutor, workers, deadline, iterations);
+				}
+			});
+		} finally {
+			workerExecutor.shutdownNow();
+		}
+	}
+
+	@Override
+	public LoadResult executeOpenLoop(String testSuiteLabel, String testCaseIdentifier, final double ratePerSecond, String executor,
+			final int maxConcurrency, long durationMillis, final long iterations) {
+		if (ratePerSecond <= 0) {
+			throw new IllegalArgumentException("The rate must be positive: " + ratePerSecond);
+		}
+		if (durationMillis <= 0 && iterations <= 0) {
+			throw new IllegalArgumentException("Either a duration or a number of iterations is required");
+		}
+		ExecutorStrategy strategy = getLoadExecutorStrategy(executor);
+		final ExecutorService workerExecutor = strategy.createExecutor(maxConcurrency > 0 ? maxConcurrency : strategy.getDefaultParallelism());
+		final Deadline deadline = Deadline.after(durationMillis, "Load duration elapsed");
+		try {
+			return executeLoad(testSuiteLabel, testCaseIdentifier, new LoadModel() {
+				@Override
+				public LoadResult drive(LoadGenerator generator) {
+					return generator.openLoop(workerExecutor, ratePerSecond, maxConcurrency, deadline, iterations);
+				}
+			});
+		} finally {
+			workerExecutor.shutdownNow();
+		}
+	}
+
+	private ExecutorStrategy getLoadExecutorStrategy(String executor) {
+		return executor != null ? ExecutorStrategy.parse(executor) : executorStrategy;
+	}
+
+	/**
+	 * The way a load run drives its test case.
+	 */
+	private interface LoadModel {
+		LoadResult drive(LoadGenerator generator);
+	}
+
+	/**
+	 * Wires and initializes the test suite if needed, drives the test case with load and reports the result.
+	 */
+	private LoadResult executeLoad(String testSuiteLabel, String testCaseIdentifier, LoadModel model) {
+		TestSuite testSuite = findTestSuiteByLabel(testSuiteLabel);
+		TestCase testCase = testSuite != null ? findTestCase(testSuite, testCaseIdentifier) : null;
+		if (testCase == null) {
+			LOGGER.info("No Test case found with identifier {} in test suite {}", testCaseIdentifier, testSuiteLabel);
+			return null;
+		}
+		LifecycleWiring wiring = null;
+		LoadResult result = null;
+		monitor.beginTestRun();
+		monitor.beginTestSuite(testSuite);
+		try {
+			if (testSuite instanceof TestSuiteLifecycle) {
+				wiring = wire(testSuite, null);
+				if (!awaitWiring(wiring)) {
+					monitor.error(wiring.getFailureMessage(), null);
+					wiring.unwire();
+					wiring = null;
+					return null;
+				}
+				((TestSuiteLifecycle) testSuite).initializeTestSuite();
+			}
+			monitor.beginTest(testSuite, testCase);
+			LoadGenerator generator = new LoadGenerator(testSuite, testCase);
+			result = model.drive(generator);
+			LOGGER.info("Load of test case {} of test suite {}: {}", new Object[] { testCaseIdentifier, testSuiteLabel, result });
+			if (generator.getFirstFailure() != null) {
+				monitor.error(testSuite, testCase, result.getErrors() + " of " + result.getOperations() + " invocations failed, the first with: "
+						+ generator.getFirstFailure().getMessage(), generator.getFirstFailure().getException());
+			}
+			monitor.measurement(testSuite, testCase, result);
+			monitor.endTest(testSuite, testCase);
+		} catch (Throwable t) {
+			monitor.error("Exception while running load", t);
+		} finally {
+			if (wiring != null) {
+				((TestSuiteLifecycle) testSuite).cleanupTestSuite();
+				wiring.unwire();
+			}
+			monitor.endTestSuite(testSuite);
+			monitor.endTestRun();
+		}
+		return result;
+	}
+
+	private TestCase findTestCase(TestSuite testSuite, String testCaseIdentifier) {
+		for (TestCase testCase : testSuite.getTestCases()) {
+			if (testCase.getIdentifier().equals(testCaseIdentifier)) {
+				return testCase;
 			}
 		}
 		return null;
 	}
 
-	private void executeTest(TestSuite testSuite) {
+	private Deadline createRunDeadline() {
+		return Deadline.after(testRunTimeout, "Test run did not complete within " + testRunTimeout + " ms");
+	}
+
+	private TestSuite findTestSuiteByLabel(String testSuiteLabel) {
+		return testSuiteIndex.findByLabel(testSuiteLabel);
+	}
+
+	/**
+	 * Sets up and wires the given lifecycle test suite, using its own wiring timeout if it has one.
+	 * @param wiredQueue optional queue the wiring is added to once it has completed or failed.
+	 */
+	private LifecycleWiring wire(TestSuite testSuite, Queue<LifecycleWiring> wiredQueue) {
+		Long suiteWiringTimeout = wiringTimeouts.get(testSuite);
+		LifecycleWiring wiring = new LifecycleWiring(testSuite, dependencyManager,
+				suiteWiringTimeout != null ? suiteWiringTimeout.longValue() : wiringTimeout, wiredQueue);
+		pendingWirings.put(wiring, unavailableTransitions.get());
+		wiring.wire();
+		return wiring;
+	}
+
+	/**
+	 * Waits for the dependencies of the given wiring to become available, or for the wiring to fail.
+	 * @return true if the dependencies are available.
+	 */
+	private boolean awaitWiring(LifecycleWiring wiring) {
+		boolean wired = wiring.await();
+		pendingWirings.remove(wiring);
+		if (wired) {
+			wiredDependencies.put(wiring.getTestSuite(), wiring.getDependencyDeclarations());
+		}
+		return wired;
+	}
+
+	/**
+	 * Executes the given test cases of a test suite.
+	 * @param prewired the wiring of the test suite if it has been wired already, otherwise null.
+	 * @param keptWiring the wiring of a test suite that has already been wired and initialized and stays so after
+	 *            this run, otherwise null.
+	 * @param warmUpRuns the number of times the test cases are executed without reporting before this run.
+	 * @param latencies the latency histograms per test case identifier to record the test cases in, or null.
+	 * @param reportLatencies whether the latencies are reported to the monitor before the end of the test suite.
+	 */
+	private void executeTest(TestSuite testSuite, List<TestCase> testCases, ScopedTestMonitor monitor, Deadline runDeadline, LifecycleWiring prewired,
+			LifecycleWiring keptWiring, int warmUpRuns, Map<String, LatencyHistogram> latencies, boolean reportLatencies) {
 		// check for TestSuiteLifecycle
-		DependencyManager lifecycleDependencyManager = null;
-		Component lifecycleWiringComponent = null;
+		LifecycleWiring wiring = null;
 		boolean runInParallel = isTestSuiteConcurrent(testSuite.getLabel());
 
+		Deadline deadline = runDeadline.earliest(Deadline.after(testSuiteTimeout, "Test suite did not complete within " + testSuiteTimeout + " ms"));
+
 		monitor.beginTestSuite(testSuite);
-		if (testSuite instanceof TestSuiteLifecycle) {
-			TestSuiteLifecycle testSuiteLifecycle = (TestSuiteLifecycle) testSuite;
-			lifecycleDependencyManager = new DependencyManager(dependencyManager.getBundleContext());
-			TestSuiteWiringService wiringService = new TestSuiteWiringService(testSuiteLifecycle);
-			lifecycleWiringComponent = dependencyManager.createComponent()
-					.setImplementation(wiringService)
-					.setComposition("getComposition")
-					.setAutoConfig(Component.class, false)
-					.setAutoConfig(BundleContext.class, false)
-					.setAutoConfig(ServiceRegistration.class, false)
-					.setAutoConfig(DependencyManager.class, false)
-					.setCallbacks(wiringService, null, "start", null, null);
-			testSuiteLifecycle.setup(lifecycleDependencyManager);
-			
-			testSuiteLifecycle.declareDependencies(lifecycleWiringComponent, dependencyManager);
-			dependencyManager.add(lifecycleWiringComponent);
-			
-			if (!wiringService.await(30, TimeUnit.SECONDS)) {
-				monitor.error("Test lifecycle wiring timed out. Dependencies were not be satisfied.", null);
-				dependencyManager.remove(lifecycleWiringComponent);
+		if (deadline.isExpired()) {
+			monitor.error(deadline.getDescription() + ", test suite was not executed.", null);
+			if (reportLatencies) {
+				reportLatencies(testSuite, testCases, monitor, latencies);
+			}
+			monitor.endTestSuite(testSuite);
+			if (prewired != null) {
+				pendingWirings.remove(prewired);
+				prewired.unwire();
+			}
+			return;
+		}
+		if (testSuite instanceof TestSuiteLifecycle && keptWiring == null) {
+			wiring = prewired != null ? prewired : wire(testSuite, null);
+
+			if (!awaitWiring(wiring)) {
+				monitor.error(wiring.getFailureMessage(), null);
+				wiring.unwire();
+				if (reportLatencies) {
+					reportLatencies(testSuite, testCases, monitor, latencies);
+				}
 				monitor.endTestSuite(testSuite);
 				return;
 			}
@@ -209,74 +873,159 @@ public class DefaultTestRunner implements TestRunner {
 		}
 
 		try {
-			for (final TestCase testCase : testSuite.getTestCases()) {
-				executeTestCase(testSuite, runInParallel, testCase);
+			handleWarmUp(warmUpRuns, testSuite, testCases, deadline);
+			if (runInParallel) {
+				executeTestCasesConcurrently(testSuite, testCases, monitor, deadline, latencies);
+			} else {
+				for (final TestCase testCase : testCases) {
+					executeTestCase(testSuite, testCase, monitor, deadline, getLatencyHistogram(latencies, testCase));
+				}
 			}
 		} catch (Throwable t) {
 			monitor.error("Exception while running test suite", t);
 		} finally {
+			if (reportLatencies) {
+				reportLatencies(testSuite, testCases, monitor, latencies);
+			}
 			monitor.endTestSuite(testSuite);
-			if (testSuite instanceof TestSuiteLifecycle) {
-				TestSuiteLifecycle lifecycle = (TestSuiteLifecycle) testSuite;
-				lifecycle.cleanupTestSuite();
-				lifecycleDependencyManager.clear(); // teardown all configuration
-				dependencyManager.remove(lifecycleWiringComponent);
+			if (wiring != null) {
+				((TestSuiteLifecycle) testSuite).cleanupTestSuite();
+				wiring.unwire();
 			}
 		}
 	}
-	
-	static class TestSuiteWiringService {
-		
-		private TestSuiteLifecycle testSuiteLifecycle;
-		private CountDownLatch latch;
 
-		public TestSuiteWiringService(TestSuiteLifecycle testSuiteLifecycle) {
-			this.testSuiteLifecycle = testSuiteLifecycle;
-			this.latch = new CountDownLatch(1);
-		}
-		
-		Object[] getComposition() {
-			return new Object[] { testSuiteLifecycle };
+	/**
+	 * Reports the latencies recorded for the given test cases to the monitor, if it takes measurements.
+	 */
+	private static void reportLatencies(TestSuite testSuite, List<TestCase> testCases, ScopedTestMonitor monitor,
+			Map<String, LatencyHistogram> latencies) {
+		if (latencies == null || !(monitor instanceof MeasurementMonitor)) {
+			return;
 		}
-		
-		void start() {
-			latch.countDown();
+		for (TestCase testCase : testCases) {
+			LatencyHistogram histogram = latencies.get(testCase.getIdentifier());
+			if (histogram != null && histogram.getCount() > 0) {
+				((MeasurementMonitor) monitor).measurement(testSuite, testCase, histogram);
+			}
 		}
-		
-		boolean await(long timeout, TimeUnit unit) {
-			try {
-				return latch.await(timeout, unit);
-			} catch (InterruptedException e) {
-				return false;
+	}
+
+	/**
+	 * Executes the given test cases on the test executor and waits for all of them to complete. At most
+	 * maxConcurrentTestCases test cases are in flight at any time; submitting blocks until a running test
+	 * case has returned. A test case that is timed out keeps its permit until its thread returns. The events
+	 * of each test case are passed on to the monitor as one block once the test case has ended.
+	 */
+	private void executeTestCasesConcurrently(TestSuite testSuite, List<TestCase> testCases, ScopedTestMonitor monitor, Deadline deadline,
+			Map<String, LatencyHistogram> latencies) {
+		final Semaphore permits = new Semaphore(Math.max(1, maxConcurrentTestCases > 0 ? maxConcurrentTestCases : getEffectiveExecutorParallelism()));
+		Runnable releasePermit = new Runnable() {
+			@Override
+			public void run() {
+				permits.release();
+			}
+		};
+		List<TestCaseScope> scopes = new ArrayList<TestCaseScope>();
+		try {
+			for (TestCase testCase : testCases) {
+				TestCaseScope scope = new TestCaseScope(testSuite, testCase, monitor, true, getLatencyHistogram(latencies, testCase));
+				scopes.add(scope);
+				if (deadline.isExpired() || !permits.tryAcquire(deadline.remainingNanos(), TimeUnit.NANOSECONDS)) {
+					scope.timeOut(deadline.getDescription());
+				} else {
+					submitTestCase(scope, releasePermit);
+				}
+			}
+			for (TestCaseScope scope : scopes) {
+				awaitTestCase(scope, deadline);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			for (TestCaseScope scope : scopes) {
+				scope.timeOut("Interrupted while waiting for the test case to complete");
 			}
 		}
 	}
-	
-	private void executeTestCase(final TestSuite testSuite, boolean runInParallel, final TestCase testCase) {
-		monitor.beginTest(testCase);
+
+	/**
+	 * Executes the given test case. Without timeouts the test case is executed on the current thread, otherwise
+	 * it is executed on the test executor so the runner can move on when it does not complete in time.
+	 */
+	private void executeTestCase(TestSuite testSuite, TestCase testCase, ScopedTestMonitor monitor, Deadline deadline, LatencyHistogram latencies) {
+		TestCaseScope scope = new TestCaseScope(testSuite, testCase, monitor, false, latencies);
+		if (testCaseTimeout <= 0 && !deadline.isSet()) {
+			scope.run();
+		} else if (deadline.isExpired()) {
+			scope.timeOut(deadline.getDescription());
+		} else {
+			submitTestCase(scope, null);
+			awaitTestCase(scope, deadline);
+		}
+	}
+
+	/**
+	 * Executes the given test case on the test executor. The test case is submitted as a {@link FutureTask}, so an
+	 * executor that cancels it instead of running it, such as the {@link BoundedExecutorService} when its thread is
+	 * interrupted, still ends the test case.
+	 * @param afterRun optional call back that is run once the test case is no longer executing, also when it
+	 * could not be scheduled or was cancelled.
+	 */
+	private void submitTestCase(final TestCaseScope scope, final Runnable afterRun) {
+		final ScheduledFuture<?> timeout = testCaseTimeout > 0 ? watchdog.schedule(new Runnable() {
+			@Override
+			public void run() {
+				scope.timeOut("Test case did not complete within " + testCaseTimeout + " ms");
+			}
+		}, testCaseTimeout, TimeUnit.MILLISECONDS) : null;
 		try {
-			final String testCaseId = testCase.getIdentifier();
-			if (runInParallel) {
-				runTestsExecutorService.execute(new Runnable() {
-					@Override
-					public void run() {
-						testSuite.test(testCaseId, monitor);
+			runTestsExecutorService.execute(new FutureTask<Void>(new Runnable() {
+				@Override
+				public void run() {
+					scope.run();
+				}
+			}, null) {
+				@Override
+				protected void done() {
+					if (isCancelled()) {
+						scope.timeOut("Test case was cancelled before it could start");
 					}
-				});
-			} else {
-				testSuite.test(testCaseId, monitor);
+					if (timeout != null) {
+						timeout.cancel(false);
+					}
+					if (afterRun != null) {
+						afterRun.run();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			if (timeout != null) {
+				timeout.cancel(false);
 			}
-		} catch (Throwable t) {
-			monitor.error("Exception while running test case", t);
-		} finally {
-			monitor.endTest(testCase);
+			scope.timeOut("Test case could not be scheduled for execution");
+			if (afterRun != null) {
+				afterRun.run();
+			}
+		}
+	}
+
+	/**
+	 * Waits for the given test case to end. When the deadline expires first the test case is timed out.
+	 */
+	private void awaitTestCase(TestCaseScope scope, Deadline deadline) {
+		try {
+			if (!scope.awaitFinished(deadline.remainingNanos(), TimeUnit.NANOSECONDS)) {
+				scope.timeOut(deadline.getDescription());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			scope.timeOut("Interrupted while waiting for the test case to complete");
 		}
 	}
 
 	public final String getTestSuites() {
 		List<String> testSuiteLabels = new ArrayList<String>();
-		List<TestSuite> testSuitesCopy = new ArrayList<TestSuite>(testSuites.values());
-		for (TestSuite testSuite : testSuitesCopy) {
+		for (TestSuite testSuite : testSuiteIndex.getTestSuites().values()) {
 			testSuiteLabels.add(testSuite.getLabel());
 		}
 		return StringUtils.join(testSuiteLabels, ',');
@@ -315,6 +1064,138 @@ public class DefaultTestRunner implements TestRunner {
 		this.testSuitesConcurrent = testSuitesConcurrent;
 	}
 
+	/**
+	 * Maximum number of test cases of a concurrent test suite that are in flight at the same time. A value of 0
+	 * (the default) uses the parallelism of the test executor.
+	 */
+	public void setMaxConcurrentTestCases(int maxConcurrentTestCases) {
+		this.maxConcurrentTestCases = maxConcurrentTestCases;
+	}
+
+	public int getMaxConcurrentTestCases() {
+		return maxConcurrentTestCases;
+	}
+
+	/**
+	 * Strategy for running concurrent test cases: "platform" (a fixed pool of platform threads, the default),
+	 * "virtual" (a virtual thread per test case) or "bounded-virtual" (virtual threads, with at most
+	 * executorParallelism test cases running at once). Takes effect when the test runner is (re)started.
+	 */
+	public void setExecutorStrategy(String executorStrategy) {
+		this.executorStrategy = ExecutorStrategy.parse(executorStrategy);
+	}
+
+	public String getExecutorStrategy() {
+		return executorStrategy.name();
+	}
+
+	/**
+	 * Number of platform threads, or the bound on concurrently running virtual threads. A value of 0 (the default)
+	 * uses the default of the executor strategy. Takes effect when the test runner is (re)started.
+	 */
+	public void setExecutorParallelism(int executorParallelism) {
+		this.executorParallelism = executorParallelism;
+	}
+
+	public int getExecutorParallelism() {
+		return executorParallelism;
+	}
+
+	private int getEffectiveExecutorParallelism() {
+		return executorParallelism > 0 ? executorParallelism : executorStrategy.getDefaultParallelism();
+	}
+
+	/**
+	 * Maximum duration of a single test case in milliseconds. A test case that takes longer is reported with the
+	 * stack of its thread, cancelled and interrupted, after which the runner moves on. A value of 0 (the default)
+	 * disables the timeout.
+	 */
+	public void setTestCaseTimeout(long testCaseTimeout) {
+		this.testCaseTimeout = testCaseTimeout;
+	}
+
+	public long getTestCaseTimeout() {
+		return testCaseTimeout;
+	}
+
+	/**
+	 * Maximum duration of a test suite in milliseconds. Test cases that are still running when it expires are
+	 * timed out, remaining test cases are reported as not executed. A value of 0 (the default) disables the timeout.
+	 */
+	public void setTestSuiteTimeout(long testSuiteTimeout) {
+		this.testSuiteTimeout = testSuiteTimeout;
+	}
+
+	public long getTestSuiteTimeout() {
+		return testSuiteTimeout;
+	}
+
+	/**
+	 * Maximum duration of a test run in milliseconds. Test cases that are still running when it expires are
+	 * timed out, remaining test suites are reported as not executed. A value of 0 (the default) disables the timeout.
+	 */
+	public void setTestRunTimeout(long testRunTimeout) {
+		this.testRunTimeout = testRunTimeout;
+	}
+
+	public long getTestRunTimeout() {
+		return testRunTimeout;
+	}
+
+	/**
+	 * When true, all lifecycle test suites are set up and wired at once before the test suites are executed.
+	 * Each lifecycle test suite is executed as soon as its dependencies are available.
+	 */
+	public void setPrewireLifecycleSuites(boolean prewireLifecycleSuites) {
+		this.prewireLifecycleSuites = prewireLifecycleSuites;
+	}
+
+	public boolean isPrewireLifecycleSuites() {
+		return prewireLifecycleSuites;
+	}
+
+	/**
+	 * Time in milliseconds the dependencies of a lifecycle test suite are given to become available. A test suite
+	 * can override it with the {@value TestSuite#WIRING_TIMEOUT_PROPERTY} service property. Defaults to 30000.
+	 */
+	public void setWiringTimeout(long wiringTimeout) {
+		this.wiringTimeout = wiringTimeout;
+	}
+
+	public long getWiringTimeout() {
+		return wiringTimeout;
+	}
+
+	/**
+	 * When true, a lifecycle wiring fails as soon as the framework becomes available while its dependencies are
+	 * still missing, instead of waiting for the wiring timeout. Defaults to false.
+	 */
+	public void setFailFastWiring(boolean failFastWiring) {
+		this.failFastWiring = failFastWiring;
+	}
+
+	public boolean isFailFastWiring() {
+		return failFastWiring;
+	}
+
+	/**
+	 * When true, a lifecycle test suite is wired and initialized once and kept alive across all its warm-up and
+	 * test runs, and cleaned up once after the last test run. Otherwise (the default) every test run sets up,
+	 * wires, initializes and cleans up the test suite again.
+	 */
+	public void setReuseLifecycleWiring(boolean reuseLifecycleWiring) {
+		this.reuseLifecycleWiring = reuseLifecycleWiring;
+	}
+
+	public boolean isReuseLifecycleWiring() {
+		return reuseLifecycleWiring;
+	}
+
+	/**
+	 * Number of times the test cases of a test suite are executed before its first test run, without reporting
+	 * the results. Setting it, or setting more than one test run, enables measurement mode: the latency of every
+	 * test case invocation in the test runs is recorded and reported to {@link MeasurementMonitor}s.
+	 */
 	public void setNrOfWarmUpRuns(int nrOfWarmUpRuns) {
 		this.nrOfWarmUpRuns = nrOfWarmUpRuns;
 	}
@@ -331,64 +1212,77 @@ public class DefaultTestRunner implements TestRunner {
 		return nrOfWarmUpRuns;
 	}
 
-	private class CompositeTestMonitor implements TestMonitor {
+	/**
+	 * Maximum number of test suites that are executed concurrently. A value of 1 (the default)
+	 * executes the test suites one after another.
+	 */
+	public void setSuiteParallelism(int suiteParallelism) {
+		this.suiteParallelism = suiteParallelism;
+	}
 
-		@Override
-		public void beginTestRun() {
-			for (TestMonitor monitor : testMonitors.values()) {
-				monitor.beginTestRun();
-			}
-		}
+	public int getSuiteParallelism() {
+		return suiteParallelism;
+	}
 
-		@Override
-		public void beginTestSuite(TestSuite suite) {
-			for (TestMonitor monitor : testMonitors.values()) {
-				monitor.beginTestSuite(suite);
-			}
-		}
+	/**
+	 * File in which the results of test suites are kept, so test suites that passed, and of which nothing they
+	 * depend on changed since, are reported as passed without executing them in the next test run. Not set (the
+	 * default) executes all test suites and keeps no results.
+	 */
+	public void setResultCacheFile(String resultCacheFile) {
+		this.resultCacheFile = resultCacheFile;
+	}
 
-		@Override
-		public void beginTest(TestCase testCase) {
-			for (TestMonitor monitor : testMonitors.values()) {
-				monitor.beginTest(testCase);
-			}
-		}
+	public String getResultCacheFile() {
+		return resultCacheFile;
+	}
 
-		@Override
-		public void assertion(boolean condition, String messageOnFailure) {
-			for (TestMonitor monitor : testMonitors.values()) {
-				monitor.assertion(condition, messageOnFailure);
-			}
-		}
+	/**
+	 * When true, all test suites are executed even if a result cache is used. Their results are still recorded.
+	 */
+	public void setFullRun(boolean fullRun) {
+		this.fullRun = fullRun;
+	}
 
-		@Override
-		public void error(String message, Throwable exception) {
-			for (TestMonitor monitor : testMonitors.values()) {
-				monitor.error(message, exception);
-			}
-		}
+	public boolean isFullRun() {
+		return fullRun;
+	}
 
-		@Override
-		public void endTest(TestCase testCase) {
-			for (TestMonitor monitor : testMonitors.values()) {
-				monitor.endTest(testCase);
-			}
-		}
+	/**
+	 * When true, events are dispatched to each test monitor by a thread of its own, through a bounded buffer, so
+	 * test threads only pay for adding an event to the buffer. A test monitor can override this with the
+	 * {@value TestMonitor#ASYNC_DISPATCH_PROPERTY} service property. Takes effect for test monitors registered afterwards.
+	 */
+	public void setAsyncMonitorDispatch(boolean asyncMonitorDispatch) {
+		this.asyncMonitorDispatch = asyncMonitorDispatch;
+	}
 
-		@Override
-		public void endTestSuite(TestSuite suite) {
-			for (TestMonitor monitor : testMonitors.values()) {
-				monitor.endTestSuite(suite);
-			}
-		}
+	public boolean isAsyncMonitorDispatch() {
+		return asyncMonitorDispatch;
+	}
 
-		@Override
-		public void endTestRun() {
-			for (TestMonitor monitor : testMonitors.values()) {
-				monitor.endTestRun();
-			}
-		}
+	/**
+	 * Number of events the buffer of an asynchronously dispatched test monitor holds. Defaults to 8192.
+	 */
+	public void setMonitorBufferSize(int monitorBufferSize) {
+		this.monitorBufferSize = monitorBufferSize;
+	}
 
+	public int getMonitorBufferSize() {
+		return monitorBufferSize;
+	}
+
+	/**
+	 * What happens when the buffer of an asynchronously dispatched test monitor is full: "block" (the test thread
+	 * waits, the default), "drop-passes" (passed assertions are dropped) or "spill" (events overflow into an
+	 * unbounded queue).
+	 */
+	public void setMonitorOverflow(String monitorOverflow) {
+		this.monitorOverflow = MonitorOverflow.parse(monitorOverflow);
+	}
+
+	public String getMonitorOverflow() {
+		return monitorOverflow.name();
 	}
 
 	private class TestSuiteComparator implements Comparator<TestSuite> {
@@ -407,4 +1301,27 @@ public class DefaultTestRunner implements TestRunner {
 		}
 	}
 
+	/**
+	 * Discards the results of warm-up runs, errors are only logged.
+	 */
+	private static class WarmUpTestMonitor extends NullTestMonitor implements ScopedTestMonitor {
+
+		@Override
+		public void beginTest(TestSuite suite, TestCase testCase) {
+		}
+
+		@Override
+		public void assertion(TestSuite suite, TestCase testCase, boolean condition, String messageOnFailure) {
+		}
+
+		@Override
+		public void error(TestSuite suite, TestCase testCase, String message, Throwable exception) {
+			LOGGER.debug("{} while warming up test case {}", new Object[] { message, testCase.getIdentifier(), exception });
+		}
+
+		@Override
+		public void endTest(TestSuite suite, TestCase testCase) {
+		}
+	}
+
 }
@@ -0,0 +1,120 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.testrunner;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Strategies for creating the executor that runs concurrent test cases.
+ * <ul>
+ * <li>PLATFORM: a fixed pool of platform threads.</li>
+ * <li>VIRTUAL: a new virtual thread per test case.</li>
+ * <li>BOUNDED_VIRTUAL: a new virtual thread per test case, with at most a fixed number of test cases running at once.</li>
+ * </ul>
+ * Virtual threads require a Java 21 runtime. On older runtimes the virtual strategies fall back to a cached pool of
+ * platform threads.
+ */
+enum ExecutorStrategy {
+
+	PLATFORM {
+		@Override
+		ExecutorService createExecutor(int parallelism) {
+			return Executors.newFixedThreadPool(parallelism, new WorkerThreadFactory());
+		}
+
+		@Override
+		int getDefaultParallelism() {
+			return Runtime.getRuntime().availableProcessors();
+		}
+	},
+
+	VIRTUAL {
+		@Override
+		ExecutorService createExecutor(int parallelism) {
+			return newVirtualThreadPerTaskExecutor();
+		}
+
+		@Override
+		int getDefaultParallelism() {
+			return 10000;
+		}
+	},
+
+	BOUNDED_VIRTUAL {
+		@Override
+		ExecutorService createExecutor(int parallelism) {
+			return new BoundedExecutorService(newVirtualThreadPerTaskExecutor(), parallelism);
+		}
+
+		@Override
+		int getDefaultParallelism() {
+			return 256;
+		}
+	};
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ExecutorStrategy.class);
+
+	/**
+	 * Creates a new executor.
+	 * @param parallelism the number of platform threads or the maximum number of concurrently running tasks,
+	 * ignored by the unbounded VIRTUAL strategy.
+	 */
+	abstract ExecutorService createExecutor(int parallelism);
+
+	/**
+	 * @return the parallelism used when none is configured.
+	 */
+	abstract int getDefaultParallelism();
+
+	/**
+	 * Parses a strategy name, e.g. "platform", "virtual" or "bounded-virtual". Case and the use of '-' or '_' do not matter.
+	 * @throws IllegalArgumentException when the name does not denote a strategy.
+	 */
+	static ExecutorStrategy parse(String name) {
+		return valueOf(name.trim().toUpperCase().replace('-', '_'));
+	}
+
+	private static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (Exception e) {
+			LOGGER.warn("Virtual threads are not supported by this runtime, falling back to a cached platform thread pool.");
+			return Executors.newCachedThreadPool(new WorkerThreadFactory());
+		}
+	}
+
+	/**
+	 * Creates named daemon platform threads, so test workers are recognizable in thread dumps and never keep the
+	 * framework from shutting down.
+	 */
+	static class WorkerThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger counter = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "osgitest-worker-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
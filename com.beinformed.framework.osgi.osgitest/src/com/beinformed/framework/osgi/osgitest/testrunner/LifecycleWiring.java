@@ -0,0 +1,233 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.testrunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.felix.dm.Component;
+import org.apache.felix.dm.ComponentDependencyDeclaration;
+import org.apache.felix.dm.DependencyManager;
+import org.apache.felix.dm.context.ComponentContext;
+import org.apache.felix.dm.context.DependencyContext;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+
+import com.beinformed.framework.osgi.osgitest.TestSuite;
+import com.beinformed.framework.osgi.osgitest.TestSuiteLifecycle;
+
+/**
+ * Service initialization and wiring of a {@link TestSuiteLifecycle} test suite.<br />
+ * {@link #wire()} lets the test suite set up its configuration and services and registers a component holding
+ * the declared dependencies. The test suite can be executed once that component has been started, i.e. once
+ * all required dependencies are available. The wiring fails when this does not happen before the timeout, or
+ * when it is {@link #fail(String) failed} explicitly, e.g. because the framework is no longer expecting changes.
+ */
+class LifecycleWiring {
+
+	private final TestSuite testSuite;
+
+	private final TestSuiteLifecycle testSuiteLifecycle;
+
+	private final DependencyManager dependencyManager;
+
+	private final long timeoutMillis;
+
+	private final TestSuiteWiringService wiringService;
+
+	private DependencyManager lifecycleDependencyManager;
+
+	private Component lifecycleWiringComponent;
+
+	private volatile Deadline deadline = Deadline.NONE;
+
+	private volatile String failure;
+
+	/**
+	 * @param testSuite a test suite that implements {@link TestSuiteLifecycle}.
+	 * @param dependencyManager the dependency manager to register the wiring component with.
+	 * @param timeoutMillis the time the dependencies are given to become available.
+	 * @param wiredQueue optional queue this wiring is added to once the dependencies are available.
+	 */
+	LifecycleWiring(TestSuite testSuite, DependencyManager dependencyManager, long timeoutMillis, Queue<LifecycleWiring> wiredQueue) {
+		this.testSuite = testSuite;
+		this.testSuiteLifecycle = (TestSuiteLifecycle) testSuite;
+		this.dependencyManager = dependencyManager;
+		this.timeoutMillis = timeoutMillis;
+		this.wiringService = new TestSuiteWiringService(this, wiredQueue);
+	}
+
+	/**
+	 * Sets up the configuration and services of the test suite and registers the component holding its dependencies.
+	 */
+	void wire() {
+		deadline = Deadline.after(timeoutMillis, "Test lifecycle wiring timed out after " + timeoutMillis + " ms. Dependencies were not satisfied.");
+		lifecycleDependencyManager = new DependencyManager(dependencyManager.getBundleContext());
+		lifecycleWiringComponent = dependencyManager.createComponent()
+				.setImplementation(wiringService)
+				.setComposition("getComposition")
+				.setAutoConfig(Component.class, false)
+				.setAutoConfig(BundleContext.class, false)
+				.setAutoConfig(ServiceRegistration.class, false)
+				.setAutoConfig(DependencyManager.class, false)
+				.setCallbacks(wiringService, null, "start", null, null);
+		testSuiteLifecycle.setup(lifecycleDependencyManager);
+
+		testSuiteLifecycle.declareDependencies(lifecycleWiringComponent, dependencyManager);
+		dependencyManager.add(lifecycleWiringComponent);
+	}
+
+	/**
+	 * Waits until the dependencies are available, the wiring has failed or the wiring timeout has expired.
+	 * @return true if the dependencies are available.
+	 */
+	boolean await() {
+		return wiringService.await(deadline.remainingNanos(), TimeUnit.NANOSECONDS) && isWired();
+	}
+
+	/**
+	 * Fails the wiring if the dependencies are not available yet, which ends any wait for them.
+	 * @param reason why the wiring failed.
+	 * @return true if the wiring failed, false if the dependencies were already available.
+	 */
+	boolean fail(String reason) {
+		if (isWired()) {
+			return false;
+		}
+		failure = reason;
+		wiringService.release();
+		return true;
+	}
+
+	/**
+	 * @return a description of why the dependencies are not available, including the missing dependencies.
+	 */
+	String getFailureMessage() {
+		String message = failure != null ? failure : deadline.getDescription();
+		List<String> missing = new ArrayList<String>();
+		if (lifecycleWiringComponent instanceof ComponentContext) {
+			for (DependencyContext dependency : ((ComponentContext) lifecycleWiringComponent).getDependencies()) {
+				if (dependency.isRequired() && !dependency.isAvailable()) {
+					missing.add(dependency.toString());
+				}
+			}
+		}
+		if (missing.isEmpty()) {
+			return message;
+		}
+		return message + " Missing dependencies: " + StringUtils.join(missing, ", ");
+	}
+
+	/**
+	 * @return the service dependencies declared for the test suite, each as its service name and filter separated by
+	 *         a tab.
+	 */
+	List<String> getDependencyDeclarations() {
+		List<String> declarations = new ArrayList<String>();
+		if (lifecycleWiringComponent instanceof ComponentContext) {
+			for (DependencyContext dependency : ((ComponentContext) lifecycleWiringComponent).getDependencies()) {
+				if (dependency instanceof ComponentDependencyDeclaration) {
+					ComponentDependencyDeclaration declaration = (ComponentDependencyDeclaration) dependency;
+					if ("service".equals(declaration.getType())) {
+						String name = declaration.getSimpleName();
+						String filter = declaration.getFilter();
+						declarations.add((name != null ? name : "") + '\t' + (filter != null ? filter : ""));
+					}
+				}
+			}
+		}
+		return declarations;
+	}
+
+	/**
+	 * @return true if the dependencies are available.
+	 */
+	boolean isWired() {
+		return failure == null && wiringService.isStarted();
+	}
+
+	/**
+	 * Removes the configuration and services of the test suite and its wiring component.
+	 */
+	void unwire() {
+		if (lifecycleDependencyManager != null) {
+			lifecycleDependencyManager.clear(); // teardown all configuration
+		}
+		if (lifecycleWiringComponent != null) {
+			dependencyManager.remove(lifecycleWiringComponent);
+		}
+	}
+
+	TestSuite getTestSuite() {
+		return testSuite;
+	}
+
+	/**
+	 * @return the deadline for the dependencies to become available, set by {@link #wire()}.
+	 */
+	Deadline getDeadline() {
+		return deadline;
+	}
+
+	static class TestSuiteWiringService {
+
+		private final LifecycleWiring wiring;
+		private final Queue<LifecycleWiring> wiredQueue;
+		private final CountDownLatch latch;
+		private volatile boolean started;
+
+		public TestSuiteWiringService(LifecycleWiring wiring, Queue<LifecycleWiring> wiredQueue) {
+			this.wiring = wiring;
+			this.wiredQueue = wiredQueue;
+			this.latch = new CountDownLatch(1);
+		}
+
+		Object[] getComposition() {
+			return new Object[] { wiring.testSuiteLifecycle };
+		}
+
+		void start() {
+			started = true;
+			release();
+		}
+
+		void release() {
+			if (latch.getCount() > 0) {
+				latch.countDown();
+				if (wiredQueue != null) {
+					wiredQueue.offer(wiring);
+				}
+			}
+		}
+
+		boolean isStarted() {
+			return started;
+		}
+
+		boolean await(long timeout, TimeUnit unit) {
+			try {
+				return latch.await(timeout, unit);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+	}
+}
@@ -0,0 +1,277 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.testrunner;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.beinformed.framework.osgi.osgitest.LoadResult;
+import com.beinformed.framework.osgi.osgitest.TestCase;
+import com.beinformed.framework.osgi.osgitest.TestCaseMonitor;
+import com.beinformed.framework.osgi.osgitest.TestSuite;
+import com.beinformed.framework.osgi.osgitest.base.LatencyHistogram;
+
+/**
+ * Drives a single test case with load and collects the latency of every invocation.<br />
+ * A generator is used for one load run only.
+ */
+class LoadGenerator {
+
+	private final TestSuite testSuite;
+
+	private final TestCase testCase;
+
+	private final LatencyHistogram latencies = new LatencyHistogram();
+
+	private final AtomicLong errors = new AtomicLong();
+
+	private final AtomicReference<Failure> firstFailure = new AtomicReference<Failure>();
+
+	private volatile boolean stopped;
+
+	LoadGenerator(TestSuite testSuite, TestCase testCase) {
+		this.testSuite = testSuite;
+		this.testCase = testCase;
+	}
+
+	/**
+	 * Runs the given number of workers on the executor, each executing the test case again as soon as its previous
+	 * invocation has returned, and waits for them to finish.
+	 * @param deadline the end of the load.
+	 * @param iterations the total number of invocations, or 0 for no limit.
+	 */
+	LoadResult closedLoop(ExecutorService executor, int workers, final Deadline deadline, long iterations) {
+		final AtomicLong remaining = new AtomicLong(iterations > 0 ? iterations : Long.MAX_VALUE);
+		final CountDownLatch done = new CountDownLatch(workers);
+		long start = System.nanoTime();
+		for (int i = 0; i < workers; i++) {
+			try {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							InvocationMonitor invocation = new InvocationMonitor();
+							while (!stopped && !deadline.isExpired() && remaining.getAndDecrement() > 0) {
+								invoke(invocation, System.nanoTime());
+							}
+						} finally {
+							done.countDown();
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				done.countDown();
+			}
+		}
+		await(done);
+		long duration = System.nanoTime() - start;
+		return new LoadStatistics(latencies, errors.get(), duration, 0, latencies.getCount() * (double) TimeUnit.SECONDS.toNanos(1) / Math.max(1, duration));
+	}
+
+	/**
+	 * Starts invocations of the test case on the executor at a constant rate from the current thread, and waits for
+	 * them to finish. An invocation that cannot start on time, because the previous ones still hold all permits or
+	 * the current thread fell behind, starts as soon as possible; its latency includes the delay.
+	 * @param ratePerSecond the number of invocations to start per second.
+	 * @param maxConcurrency the maximum number of invocations running at once, or 0 for no limit.
+	 * @param deadline the end of the load.
+	 * @param iterations the total number of invocations, or 0 for no limit.
+	 */
+	LoadResult openLoop(ExecutorService executor, double ratePerSecond, int maxConcurrency, Deadline deadline, long iterations) {
+		final int permits = maxConcurrency > 0 ? maxConcurrency : Integer.MAX_VALUE;
+		final Semaphore inFlight = new Semaphore(permits);
+		double interval = TimeUnit.SECONDS.toNanos(1) / ratePerSecond;
+		long limit = iterations > 0 ? iterations : Long.MAX_VALUE;
+		long start = System.nanoTime();
+		long started = 0;
+		long lastStart = start;
+		try {
+			while (!stopped && started < limit) {
+				final long intendedStart = start + (long) (started * interval);
+				if (!deadline.isExpired() && deadline.remainingNanos() < intendedStart - System.nanoTime()) {
+					break; // next invocation would start after the end of the load
+				}
+				long delay;
+				while ((delay = intendedStart - System.nanoTime()) > 0) {
+					TimeUnit.NANOSECONDS.sleep(delay);
+				}
+				if (deadline.isExpired()) {
+					break;
+				}
+				inFlight.acquire();
+				try {
+					executor.execute(new Runnable() {
+						@Override
+						public void run() {
+							try {
+								invoke(new InvocationMonitor(), intendedStart);
+							} finally {
+								inFlight.release();
+							}
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					inFlight.release();
+					break;
+				}
+				started++;
+				lastStart = System.nanoTime();
+			}
+			inFlight.acquire(permits);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			stop();
+		}
+		long duration = System.nanoTime() - start;
+		// started invocations over the time from the first intended start up to one interval after the last start
+		double achievedRate = started == 0 ? 0 : started * (double) TimeUnit.SECONDS.toNanos(1) / (lastStart - start + interval);
+		return new LoadStatistics(latencies, errors.get(), duration, ratePerSecond, achievedRate);
+	}
+
+	/**
+	 * Stops the load; running invocations see their monitor cancelled.
+	 */
+	void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * @return the first failure reported by an invocation, or null if all invocations passed.
+	 */
+	Failure getFirstFailure() {
+		return firstFailure.get();
+	}
+
+	private void await(CountDownLatch done) {
+		try {
+			done.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			stop();
+		}
+	}
+
+	/**
+	 * Executes the test case once and records its latency, measured from the given start time.
+	 */
+	private void invoke(InvocationMonitor invocation, long intendedStart) {
+		invocation.reset();
+		try {
+			testSuite.test(testCase.getIdentifier(), invocation);
+		} catch (Throwable t) {
+			invocation.error("Exception while running test case", t);
+		}
+		latencies.record(System.nanoTime() - intendedStart);
+		if (invocation.failure != null) {
+			errors.incrementAndGet();
+			firstFailure.compareAndSet(null, invocation.failure);
+		}
+	}
+
+	/**
+	 * The first failure reported by an invocation.
+	 */
+	static class Failure {
+
+		private final String message;
+
+		private final Throwable exception;
+
+		Failure(String message, Throwable exception) {
+			this.message = message;
+			this.exception = exception;
+		}
+
+		String getMessage() {
+			return message;
+		}
+
+		Throwable getException() {
+			return exception;
+		}
+	}
+
+	/**
+	 * Monitor handed to the test case. It only keeps the first failure of the current invocation and is reused
+	 * for all invocations of a worker.
+	 */
+	private class InvocationMonitor implements TestCaseMonitor {
+
+		private Failure failure;
+
+		void reset() {
+			failure = null;
+		}
+
+		@Override
+		public TestSuite getTestSuite() {
+			return testSuite;
+		}
+
+		@Override
+		public TestCase getTestCase() {
+			return testCase;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return stopped;
+		}
+
+		@Override
+		public void assertion(boolean condition, String messageOnFailure) {
+			if (!condition && failure == null) {
+				failure = new Failure(messageOnFailure, null);
+			}
+		}
+
+		@Override
+		public void error(String message, Throwable exception) {
+			if (failure == null) {
+				failure = new Failure(message, exception);
+			}
+		}
+
+		@Override
+		public void beginTestRun() {
+		}
+
+		@Override
+		public void beginTestSuite(TestSuite suite) {
+		}
+
+		@Override
+		public void beginTest(TestCase nestedTestCase) {
+		}
+
+		@Override
+		public void endTest(TestCase nestedTestCase) {
+		}
+
+		@Override
+		public void endTestSuite(TestSuite suite) {
+		}
+
+		@Override
+		public void endTestRun() {
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.testrunner;
+
+import java.util.concurrent.TimeUnit;
+
+import com.beinformed.framework.osgi.osgitest.LatencyStatistics;
+import com.beinformed.framework.osgi.osgitest.LoadResult;
+
+/**
+ * LoadResult of a completed load run.
+ */
+class LoadStatistics implements LoadResult {
+
+	private final LatencyStatistics latencies;
+
+	private final long errors;
+
+	private final long duration;
+
+	private final double targetRate;
+
+	private final double achievedRate;
+
+	/**
+	 * @param duration the duration of the load run in nanoseconds.
+	 * @param targetRate the target rate of an open loop load run, or 0.
+	 * @param achievedRate the number of invocations actually started per second.
+	 */
+	LoadStatistics(LatencyStatistics latencies, long errors, long duration, double targetRate, double achievedRate) {
+		this.latencies = latencies;
+		this.errors = errors;
+		this.duration = duration;
+		this.targetRate = targetRate;
+		this.achievedRate = achievedRate;
+	}
+
+	@Override
+	public long getCount() {
+		return latencies.getCount();
+	}
+
+	@Override
+	public long getMin() {
+		return latencies.getMin();
+	}
+
+	@Override
+	public double getMean() {
+		return latencies.getMean();
+	}
+
+	@Override
+	public long getPercentile(double percentile) {
+		return latencies.getPercentile(percentile);
+	}
+
+	@Override
+	public long getMax() {
+		return latencies.getMax();
+	}
+
+	@Override
+	public long getOperations() {
+		return latencies.getCount();
+	}
+
+	@Override
+	public long getErrors() {
+		return errors;
+	}
+
+	@Override
+	public double getErrorRate() {
+		long operations = getOperations();
+		return operations == 0 ? 0 : (double) errors / operations;
+	}
+
+	@Override
+	public long getDuration() {
+		return duration;
+	}
+
+	@Override
+	public double getThroughput() {
+		return duration <= 0 ? 0 : getOperations() * (double) TimeUnit.SECONDS.toNanos(1) / duration;
+	}
+
+	@Override
+	public double getTargetRate() {
+		return targetRate;
+	}
+
+	@Override
+	public double getAchievedRate() {
+		return achievedRate;
+	}
+
+	@Override
+	public String toString() {
+		String rate = targetRate > 0 ? String.format(" (started %.1f/s of target %.1f/s)", achievedRate, targetRate) : "";
+		return String.format("%d operations in %d ms, %.1f ops/s%s, error rate %.2f%%, latency %s", getOperations(),
+				TimeUnit.NANOSECONDS.toMillis(duration), getThroughput(), rate, getErrorRate() * 100, latencies);
+	}
+}
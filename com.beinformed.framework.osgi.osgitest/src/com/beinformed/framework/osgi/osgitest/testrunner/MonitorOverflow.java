@@ -0,0 +1,38 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.testrunner;
+
+/**
+ * What an {@link AsyncTestMonitor} does with an event when its buffer is full.
+ * <ul>
+ * <li>BLOCK: the test thread waits until the monitor has caught up.</li>
+ * <li>DROP_PASSES: passed assertions are dropped, other events wait until the monitor has caught up.</li>
+ * <li>SPILL: the event is added to an unbounded overflow queue, which the monitor works through once it has caught
+ * up with the buffer.</li>
+ * </ul>
+ */
+enum MonitorOverflow {
+
+	BLOCK, DROP_PASSES, SPILL;
+
+	/**
+	 * Parses an overflow name, e.g. "block", "drop-passes" or "spill". Case and the use of '-' or '_' do not matter.
+	 * @throws IllegalArgumentException when the name does not denote an overflow.
+	 */
+	static MonitorOverflow parse(String name) {
+		return valueOf(name.trim().toUpperCase().replace('-', '_'));
+	}
+}
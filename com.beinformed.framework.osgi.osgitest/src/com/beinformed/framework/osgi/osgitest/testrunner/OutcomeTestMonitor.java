@@ -0,0 +1,119 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.testrunner;
+
+import com.beinformed.framework.osgi.osgitest.LatencyStatistics;
+import com.beinformed.framework.osgi.osgitest.MeasurementMonitor;
+import com.beinformed.framework.osgi.osgitest.ScopedTestMonitor;
+import com.beinformed.framework.osgi.osgitest.TestCase;
+import com.beinformed.framework.osgi.osgitest.TestSuite;
+
+/**
+ * TestMonitor that passes all events on to another monitor and remembers whether any assertion failed or any
+ * error was reported. Used to find out whether a test suite passed.
+ */
+class OutcomeTestMonitor implements ScopedTestMonitor, MeasurementMonitor {
+
+	private final ScopedTestMonitor target;
+
+	private volatile boolean failed;
+
+	OutcomeTestMonitor(ScopedTestMonitor target) {
+		this.target = target;
+	}
+
+	/**
+	 * @return true if an assertion failed or an error was reported.
+	 */
+	boolean hasFailed() {
+		return failed;
+	}
+
+	@Override
+	public void beginTestRun() {
+		target.beginTestRun();
+	}
+
+	@Override
+	public void beginTestSuite(TestSuite suite) {
+		target.beginTestSuite(suite);
+	}
+
+	@Override
+	public void beginTest(TestCase testCase) {
+		target.beginTest(testCase);
+	}
+
+	@Override
+	public void assertion(boolean condition, String messageOnFailure) {
+		if (!condition) {
+			failed = true;
+		}
+		target.assertion(condition, messageOnFailure);
+	}
+
+	@Override
+	public void error(String message, Throwable exception) {
+		failed = true;
+		target.error(message, exception);
+	}
+
+	@Override
+	public void endTest(TestCase testCase) {
+		target.endTest(testCase);
+	}
+
+	@Override
+	public void beginTest(TestSuite suite, TestCase testCase) {
+		target.beginTest(suite, testCase);
+	}
+
+	@Override
+	public void assertion(TestSuite suite, TestCase testCase, boolean condition, String messageOnFailure) {
+		if (!condition) {
+			failed = true;
+		}
+		target.assertion(suite, testCase, condition, messageOnFailure);
+	}
+
+	@Override
+	public void error(TestSuite suite, TestCase testCase, String message, Throwable exception) {
+		failed = true;
+		target.error(suite, testCase, message, exception);
+	}
+
+	@Override
+	public void endTest(TestSuite suite, TestCase testCase) {
+		target.endTest(suite, testCase);
+	}
+
+	@Override
+	public void measurement(TestSuite suite, TestCase testCase, LatencyStatistics statistics) {
+		if (target instanceof MeasurementMonitor) {
+			((MeasurementMonitor) target).measurement(suite, testCase, statistics);
+		}
+	}
+
+	@Override
+	public void endTestSuite(TestSuite suite) {
+		target.endTestSuite(suite);
+	}
+
+	@Override
+	public void endTestRun() {
+		target.endTestRun();
+	}
+}
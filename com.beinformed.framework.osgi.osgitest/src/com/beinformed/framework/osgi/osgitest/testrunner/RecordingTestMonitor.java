@@ -0,0 +1,264 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.testrunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.beinformed.framework.osgi.osgitest.LatencyStatistics;
+import com.beinformed.framework.osgi.osgitest.MeasurementMonitor;
+import com.beinformed.framework.osgi.osgitest.ScopedTestMonitor;
+import com.beinformed.framework.osgi.osgitest.TestCase;
+import com.beinformed.framework.osgi.osgitest.TestMonitor;
+import com.beinformed.framework.osgi.osgitest.TestSuite;
+
+/**
+ * TestMonitor that records all received events so they can be replayed on another monitor later on.<br />
+ * Used to keep the events of a test suite or test case together when they are executed concurrently.
+ * Test case scoped events are replayed as such on a {@link ScopedTestMonitor} and through the unqualified
+ * call backs on any other monitor. Measurements are only replayed on a {@link MeasurementMonitor}. <br />
+ * Passed assertions that follow each other for the same test case are recorded as a count, so a test case that
+ * makes many assertions only takes memory for the ones that fail. They are replayed with the message of the first.
+ */
+class RecordingTestMonitor implements ScopedTestMonitor, MeasurementMonitor {
+
+	private final List<Event> events = new ArrayList<Event>();
+
+	/**
+	 * Replays all recorded events, in the order they were received, on the given monitor.
+	 * @param target the monitor to replay the events on.
+	 */
+	synchronized void replay(TestMonitor target) {
+		for (Event event : events) {
+			event.dispatch(target);
+		}
+	}
+
+	private synchronized void record(Event event) {
+		events.add(event);
+	}
+
+	/**
+	 * Records a passed assertion, by counting it when the last recorded event is a passed assertion of the same
+	 * test case.
+	 * @param scoped whether the assertion was received through the test case scoped call back.
+	 */
+	private synchronized void passed(boolean scoped, TestSuite suite, TestCase testCase, String messageOnFailure) {
+		Event last = events.isEmpty() ? null : events.get(events.size() - 1);
+		if (last instanceof PassedAssertions) {
+			PassedAssertions passed = (PassedAssertions) last;
+			if (passed.scoped == scoped && passed.suite == suite && passed.testCase == testCase) {
+				passed.count++;
+				return;
+			}
+		}
+		events.add(new PassedAssertions(scoped, suite, testCase, messageOnFailure));
+	}
+
+	@Override
+	public void beginTestRun() {
+		record(new Event() {
+			@Override
+			void dispatch(TestMonitor target) {
+				target.beginTestRun();
+			}
+		});
+	}
+
+	@Override
+	public void beginTestSuite(final TestSuite suite) {
+		record(new Event() {
+			@Override
+			void dispatch(TestMonitor target) {
+				target.beginTestSuite(suite);
+			}
+		});
+	}
+
+	@Override
+	public void beginTest(final TestCase testCase) {
+		record(new Event() {
+			@Override
+			void dispatch(TestMonitor target) {
+				target.beginTest(testCase);
+			}
+		});
+	}
+
+	@Override
+	public void assertion(final boolean condition, final String messageOnFailure) {
+		if (condition) {
+			passed(false, null, null, messageOnFailure);
+			return;
+		}
+		record(new Event() {
+			@Override
+			void dispatch(TestMonitor target) {
+				target.assertion(condition, messageOnFailure);
+			}
+		});
+	}
+
+	@Override
+	public void error(final String message, final Throwable exception) {
+		record(new Event() {
+			@Override
+			void dispatch(TestMonitor target) {
+				target.error(message, exception);
+			}
+		});
+	}
+
+	@Override
+	public void endTest(final TestCase testCase) {
+		record(new Event() {
+			@Override
+			void dispatch(TestMonitor target) {
+				target.endTest(testCase);
+			}
+		});
+	}
+
+	@Override
+	public void beginTest(final TestSuite suite, final TestCase testCase) {
+		record(new Event() {
+			@Override
+			void dispatch(TestMonitor target) {
+				if (target instanceof ScopedTestMonitor) {
+					((ScopedTestMonitor) target).beginTest(suite, testCase);
+				} else {
+					target.beginTest(testCase);
+				}
+			}
+		});
+	}
+
+	@Override
+	public void assertion(final TestSuite suite, final TestCase testCase, final boolean condition, final String messageOnFailure) {
+		if (condition) {
+			passed(true, suite, testCase, messageOnFailure);
+			return;
+		}
+		record(new Event() {
+			@Override
+			void dispatch(TestMonitor target) {
+				if (target instanceof ScopedTestMonitor) {
+					((ScopedTestMonitor) target).assertion(suite, testCase, condition, messageOnFailure);
+				} else {
+					target.assertion(condition, messageOnFailure);
+				}
+			}
+		});
+	}
+
+	@Override
+	public void error(final TestSuite suite, final TestCase testCase, final String message, final Throwable exception) {
+		record(new Event() {
+			@Override
+			void dispatch(TestMonitor target) {
+				if (target instanceof ScopedTestMonitor) {
+					((ScopedTestMonitor) target).error(suite, testCase, message, exception);
+				} else {
+					target.error(message, exception);
+				}
+			}
+		});
+	}
+
+	@Override
+	public void endTest(final TestSuite suite, final TestCase testCase) {
+		record(new Event() {
+			@Override
+			void dispatch(TestMonitor target) {
+				if (target instanceof ScopedTestMonitor) {
+					((ScopedTestMonitor) target).endTest(suite, testCase);
+				} else {
+					target.endTest(testCase);
+				}
+			}
+		});
+	}
+
+	@Override
+	public void measurement(final TestSuite suite, final TestCase testCase, final LatencyStatistics statistics) {
+		record(new Event() {
+			@Override
+			void dispatch(TestMonitor target) {
+				if (target instanceof MeasurementMonitor) {
+					((MeasurementMonitor) target).measurement(suite, testCase, statistics);
+				}
+			}
+		});
+	}
+
+	@Override
+	public void endTestSuite(final TestSuite suite) {
+		record(new Event() {
+			@Override
+			void dispatch(TestMonitor target) {
+				target.endTestSuite(suite);
+			}
+		});
+	}
+
+	@Override
+	public void endTestRun() {
+		record(new Event() {
+			@Override
+			void dispatch(TestMonitor target) {
+				target.endTestRun();
+			}
+		});
+	}
+
+	private abstract static class Event {
+		abstract void dispatch(TestMonitor target);
+	}
+
+	/**
+	 * A number of passed assertions in a row, of one test case or, when not scoped, of the unqualified call backs.
+	 */
+	private static final class PassedAssertions extends Event {
+
+		private final boolean scoped;
+
+		private final TestSuite suite;
+
+		private final TestCase testCase;
+
+		private final String messageOnFailure;
+
+		private long count = 1;
+
+		PassedAssertions(boolean scoped, TestSuite suite, TestCase testCase, String messageOnFailure) {
+			this.scoped = scoped;
+			this.suite = suite;
+			this.testCase = testCase;
+			this.messageOnFailure = messageOnFailure;
+		}
+
+		@Override
+		void dispatch(TestMonitor target) {
+			for (long i = 0; i < count; i++) {
+				if (scoped && target instanceof ScopedTestMonitor) {
+					((ScopedTestMonitor) target).assertion(suite, testCase, true, messageOnFailure);
+				} else {
+					target.assertion(true, messageOnFailure);
+				}
+			}
+		}
+	}
+}
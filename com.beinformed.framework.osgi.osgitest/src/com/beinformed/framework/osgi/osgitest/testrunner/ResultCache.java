@@ -0,0 +1,297 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.testrunner;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.lang.StringUtils;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.beinformed.framework.osgi.osgitest.TestCase;
+import com.beinformed.framework.osgi.osgitest.TestSuite;
+
+/**
+ * Results of earlier test runs, kept per test suite together with a fingerprint of everything the outcome of the
+ * test suite depends on. <br />
+ * The fingerprint covers the label and test cases of the test suite, the bundle that contains it, the bundles it
+ * imports packages from, the bundles that registered the services named in {@link TestSuite#DEPENDENCIES_PROPERTY}
+ * and, for lifecycle test suites, the bundles that registered the services their wiring declared the last time it
+ * passed. Each bundle is identified by its symbolic name, version and the time it was last installed or updated.
+ * Only passing results are kept, so a test suite is only skipped when it passed the last time it ran and nothing it
+ * depends on changed since. <br />
+ * The results are stored as a properties file, keyed by the symbolic name of the bundle that contains the test
+ * suite, the class of the test suite and its label.
+ */
+class ResultCache {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ResultCache.class);
+
+	/**
+	 * Suffix of the keys that hold the service dependencies declared by the wiring of a lifecycle test suite.
+	 */
+	private static final String DEPENDENCIES_SUFFIX = "#dependencies";
+
+	private final File file;
+
+	private final BundleContext context;
+
+	private final Properties passed = new Properties();
+
+	/**
+	 * The content fingerprinted for each test suite in this test run, without the wired dependencies.
+	 */
+	private final Map<TestSuite, String> contents = new HashMap<TestSuite, String>();
+
+	private final Map<TestSuite, String> keys = new HashMap<TestSuite, String>();
+
+	/**
+	 * The service dependencies declared by the wirings of lifecycle test suites in this test run.
+	 */
+	private final Map<TestSuite, String> wiredDependencies = new HashMap<TestSuite, String>();
+
+	private boolean modified;
+
+	/**
+	 * Loads the results stored in the given file, if it exists.
+	 */
+	ResultCache(File file, BundleContext context) {
+		this.file = file;
+		this.context = context;
+		if (file.isFile()) {
+			try {
+				InputStream in = new FileInputStream(file);
+				try {
+					passed.load(in);
+				} finally {
+					in.close();
+				}
+			} catch (IOException e) {
+				LOGGER.warn("Could not read test result cache " + file + ", all test suites will be executed.", e);
+				passed.clear();
+			}
+		}
+	}
+
+	/**
+	 * Computes the fingerprint of the given test suite for this test run.
+	 * @param reference the service reference of the test suite.
+	 */
+	synchronized void fingerprint(ServiceReference reference, TestSuite testSuite) {
+		Set<String> bundles = new TreeSet<String>();
+		Bundle origin = getOriginBundle(reference);
+		if (origin != null) {
+			addBundle(bundles, origin);
+			BundleWiring wiring = origin.adapt(BundleWiring.class);
+			if (wiring != null) {
+				List<BundleWire> wires = wiring.getRequiredWires(null);
+				if (wires != null) {
+					for (BundleWire wire : wires) {
+						addBundle(bundles, wire.getProviderWiring().getBundle());
+					}
+				}
+			}
+		}
+		Bundle registrant = reference.getBundle();
+		if (registrant != null) {
+			addBundle(bundles, registrant);
+		}
+		Object dependencies = reference.getProperty(TestSuite.DEPENDENCIES_PROPERTY);
+		if (dependencies instanceof String[]) {
+			for (String dependency : (String[]) dependencies) {
+				addServiceBundles(bundles, dependency, null);
+			}
+		}
+
+		StringBuilder content = new StringBuilder(String.valueOf(testSuite.getLabel()));
+		for (TestCase testCase : testSuite.getTestCases()) {
+			content.append('\n').append(testCase.getIdentifier());
+		}
+		for (String bundle : bundles) {
+			content.append('\n').append(bundle);
+		}
+		contents.put(testSuite, content.toString());
+		keys.put(testSuite, (origin != null ? origin.getSymbolicName() : "") + '/' + testSuite.getClass().getName() + '/' + testSuite.getLabel());
+	}
+
+	/**
+	 * Records the service dependencies the lifecycle wiring of the given test suite declared, so the bundles that
+	 * register them are part of its fingerprint.
+	 * @param declarations the declared dependencies, each as its service name and filter separated by a tab.
+	 */
+	synchronized void wired(TestSuite testSuite, List<String> declarations) {
+		List<String> sorted = new ArrayList<String>(declarations);
+		Collections.sort(sorted);
+		wiredDependencies.put(testSuite, StringUtils.join(sorted, "\n"));
+	}
+
+	/**
+	 * @return the fingerprint of the given test suite including the bundles registering the given dependencies, or
+	 *         null if the test suite was not fingerprinted in this test run.
+	 */
+	private String fingerprint(TestSuite testSuite, String dependencies) {
+		String content = contents.get(testSuite);
+		if (content == null) {
+			return null;
+		}
+		if (StringUtils.isEmpty(dependencies)) {
+			return digest(content);
+		}
+		Set<String> bundles = new TreeSet<String>();
+		for (String declaration : dependencies.split("\n")) {
+			int separator = declaration.indexOf('\t');
+			String name = separator >= 0 ? declaration.substring(0, separator) : declaration;
+			String filter = separator >= 0 ? declaration.substring(separator + 1) : "";
+			addServiceBundles(bundles, name.length() > 0 ? name : null, filter.length() > 0 ? filter : null);
+		}
+		StringBuilder wired = new StringBuilder(content).append("\nwired:");
+		for (String bundle : bundles) {
+			wired.append('\n').append(bundle);
+		}
+		return digest(wired.toString());
+	}
+
+	private void addServiceBundles(Set<String> bundles, String serviceName, String filter) {
+		try {
+			addServiceBundles(bundles, context.getServiceReferences(serviceName, filter));
+		} catch (InvalidSyntaxException e) {
+			LOGGER.warn("Ignoring dependency {} with invalid filter {}", serviceName, filter);
+		}
+	}
+
+	private Bundle getOriginBundle(ServiceReference reference) {
+		Object bundleId = reference.getProperty(TestSuite.BUNDLE_PROPERTY);
+		if (bundleId != null) {
+			try {
+				return context.getBundle(Long.parseLong(bundleId.toString().trim()));
+			} catch (NumberFormatException e) {
+				LOGGER.warn("Ignoring invalid {} of test suite: {}", TestSuite.BUNDLE_PROPERTY, bundleId);
+			}
+		}
+		return reference.getBundle();
+	}
+
+	private static void addServiceBundles(Set<String> bundles, ServiceReference[] services) {
+		if (services != null) {
+			for (ServiceReference service : services) {
+				Bundle provider = service.getBundle();
+				if (provider != null) {
+					addBundle(bundles, provider);
+				}
+			}
+		}
+	}
+
+	private static void addBundle(Set<String> bundles, Bundle bundle) {
+		bundles.add(bundle.getSymbolicName() + ';' + bundle.getVersion() + ';' + bundle.getLastModified());
+	}
+
+	private static String digest(String content) {
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(content.getBytes("UTF-8"));
+			StringBuilder hex = new StringBuilder(hash.length * 2);
+			for (byte b : hash) {
+				hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return true if the given test suite passed the last time it was executed and its fingerprint did not change
+	 *         since.
+	 */
+	synchronized boolean isUnchangedPass(TestSuite testSuite) {
+		String key = keys.get(testSuite);
+		if (key == null) {
+			return false;
+		}
+		String fingerprint = fingerprint(testSuite, passed.getProperty(key + DEPENDENCIES_SUFFIX));
+		return fingerprint != null && fingerprint.equals(passed.getProperty(key));
+	}
+
+	/**
+	 * Records the outcome of the given test suite in this test run.
+	 */
+	synchronized void record(TestSuite testSuite, boolean testSuitePassed) {
+		String key = keys.get(testSuite);
+		if (key == null) {
+			return;
+		}
+		String dependencies = wiredDependencies.get(testSuite);
+		String fingerprint = fingerprint(testSuite, dependencies);
+		if (testSuitePassed && fingerprint != null) {
+			modified |= !fingerprint.equals(passed.setProperty(key, fingerprint));
+			if (StringUtils.isEmpty(dependencies)) {
+				modified |= passed.remove(key + DEPENDENCIES_SUFFIX) != null;
+			} else {
+				modified |= !dependencies.equals(passed.setProperty(key + DEPENDENCIES_SUFFIX, dependencies));
+			}
+		} else {
+			modified |= passed.remove(key) != null;
+			modified |= passed.remove(key + DEPENDENCIES_SUFFIX) != null;
+		}
+	}
+
+	/**
+	 * Stores the results, if any changed.
+	 */
+	synchronized void store() {
+		if (!modified) {
+			return;
+		}
+		try {
+			File parent = file.getAbsoluteFile().getParentFile();
+			if (parent != null) {
+				parent.mkdirs();
+			}
+			OutputStream out = new FileOutputStream(file);
+			try {
+				passed.store(out, "Fingerprints of passed test suites");
+			} finally {
+				out.close();
+			}
+			modified = false;
+		} catch (IOException e) {
+			LOGGER.error("Could not store test result cache " + file, e);
+		}
+	}
+}
@@ -0,0 +1,245 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.testrunner;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.beinformed.framework.osgi.osgitest.ScopedTestMonitor;
+import com.beinformed.framework.osgi.osgitest.TestCase;
+import com.beinformed.framework.osgi.osgitest.TestCaseMonitor;
+import com.beinformed.framework.osgi.osgitest.TestSuite;
+import com.beinformed.framework.osgi.osgitest.base.LatencyHistogram;
+
+/**
+ * TestCaseMonitor handed to a TestSuite for the execution of a single test case. All results are
+ * passed on to the underlying monitor attributed to the test case this scope was created for.<br />
+ * The scope reports the begin and end of the test case exactly once, either when the test case completes
+ * or when it is timed out. Results that are reported after the end of the test case are ignored.
+ * The duration of a test case that completes is recorded in the latency histogram, if one is given.<br />
+ * A test case that is timed out may still be running; its thread is interrupted and the interrupt is cleared
+ * again when {@link #run()} returns, so it does not leak into the next task of a pooled thread.
+ */
+class TestCaseScope implements TestCaseMonitor {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(TestCaseScope.class);
+
+	private final TestSuite testSuite;
+
+	private final TestCase testCase;
+
+	private final ScopedTestMonitor monitor;
+
+	private final RecordingTestMonitor recorder;
+
+	private final ScopedTestMonitor target;
+
+	private final LatencyHistogram latencies;
+
+	private final CountDownLatch finished = new CountDownLatch(1);
+
+	private boolean begun;
+
+	private boolean closed;
+
+	private volatile boolean cancelled;
+
+	private Thread thread;
+
+	/**
+	 * @param monitor the monitor to report to.
+	 * @param buffered whether the results are to be passed on to the monitor as one block once the test case has ended.
+	 * @param latencies optional histogram to record the duration of the test case in.
+	 */
+	TestCaseScope(TestSuite testSuite, TestCase testCase, ScopedTestMonitor monitor, boolean buffered, LatencyHistogram latencies) {
+		this.testSuite = testSuite;
+		this.testCase = testCase;
+		this.monitor = monitor;
+		this.recorder = buffered ? new RecordingTestMonitor() : null;
+		this.target = buffered ? recorder : monitor;
+		this.latencies = latencies;
+	}
+
+	/**
+	 * Executes the test case on the current thread. When the thread is interrupted before the test case starts,
+	 * the test case is ended with an error instead.
+	 */
+	void run() {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			if (Thread.currentThread().isInterrupted()) {
+				timeOut("Interrupted before the test case could start");
+				return;
+			}
+			begin();
+			thread = Thread.currentThread();
+		}
+		long start = System.nanoTime();
+		try {
+			testSuite.test(testCase.getIdentifier(), this);
+		} catch (Throwable t) {
+			error("Exception while running test case", t);
+		} finally {
+			if (latencies != null && !cancelled) {
+				latencies.record(System.nanoTime() - start);
+			}
+			synchronized (this) {
+				thread = null;
+				if (cancelled) {
+					// clear the interrupt of the timeout, the thread may be reused
+					Thread.interrupted();
+				}
+			}
+			finish();
+		}
+	}
+
+	/**
+	 * Ends the test case if it did not end yet. The timeout is reported with the stack of the thread running the
+	 * test case, the test case is cancelled and its thread is interrupted.
+	 * @param reason describes the timeout that was exceeded.
+	 */
+	synchronized void timeOut(String reason) {
+		if (closed) {
+			return;
+		}
+		begin();
+		TestTimeoutException exception = new TestTimeoutException(reason, thread);
+		target.error(testSuite, testCase, exception.getMessage(), exception);
+		cancelled = true;
+		if (thread != null) {
+			thread.interrupt();
+		}
+		finish();
+	}
+
+	/**
+	 * Waits until the test case has ended.
+	 * @return true if the test case has ended, false if the waiting time elapsed first.
+	 */
+	boolean awaitFinished(long timeout, TimeUnit unit) throws InterruptedException {
+		return finished.await(timeout, unit);
+	}
+
+	private void begin() {
+		if (!begun) {
+			begun = true;
+			target.beginTest(testSuite, testCase);
+		}
+	}
+
+	private synchronized void finish() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		target.endTest(testSuite, testCase);
+		if (recorder != null) {
+			synchronized (monitor) {
+				recorder.replay(monitor);
+			}
+		}
+		finished.countDown();
+	}
+
+	@Override
+	public TestSuite getTestSuite() {
+		return testSuite;
+	}
+
+	@Override
+	public TestCase getTestCase() {
+		return testCase;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public synchronized void assertion(boolean condition, String messageOnFailure) {
+		if (isOpen()) {
+			target.assertion(testSuite, testCase, condition, messageOnFailure);
+		}
+	}
+
+	@Override
+	public synchronized void error(String message, Throwable exception) {
+		if (isOpen()) {
+			target.error(testSuite, testCase, message, exception);
+		}
+	}
+
+	@Override
+	public synchronized void beginTest(TestCase nestedTestCase) {
+		if (isOpen()) {
+			target.beginTest(testSuite, nestedTestCase);
+		}
+	}
+
+	@Override
+	public synchronized void endTest(TestCase nestedTestCase) {
+		if (isOpen()) {
+			target.endTest(testSuite, nestedTestCase);
+		}
+	}
+
+	@Override
+	public synchronized void beginTestRun() {
+		if (isOpen()) {
+			target.beginTestRun();
+		}
+	}
+
+	@Override
+	public synchronized void beginTestSuite(TestSuite suite) {
+		if (isOpen()) {
+			target.beginTestSuite(suite);
+		}
+	}
+
+	@Override
+	public synchronized void endTestSuite(TestSuite suite) {
+		if (isOpen()) {
+			target.endTestSuite(suite);
+		}
+	}
+
+	@Override
+	public synchronized void endTestRun() {
+		if (isOpen()) {
+			target.endTestRun();
+		}
+	}
+
+	private boolean isOpen() {
+		if (closed) {
+			LOGGER.debug("Ignoring result reported by {} after it has ended", this);
+		}
+		return !closed;
+	}
+
+	@Override
+	public String toString() {
+		return "TestCaseScope[" + testSuite.getLabel() + ", " + testCase.getIdentifier() + "]";
+	}
+}
@@ -0,0 +1,278 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.testrunner;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parsed selection expression, see {@link com.beinformed.framework.osgi.osgitest.SelectiveTestRunner#executeTests(String)}.
+ * A selection is evaluated against a {@link TestSuiteIndex} to the set of test cases it matches, kept as a bit
+ * set per indexed test suite.
+ */
+abstract class TestSelection {
+
+	/**
+	 * @return the test cases matched by this selection, by indexed test suite. Test suites of which no test case
+	 *         matches may be left out.
+	 */
+	abstract Map<TestSuiteIndex.Entry, BitSet> evaluate(TestSuiteIndex index);
+
+	/**
+	 * Parses the given selection expression.
+	 * @throws IllegalArgumentException if the expression is not valid.
+	 */
+	static TestSelection parse(String expression) {
+		if (expression == null) {
+			throw new IllegalArgumentException("No selection expression given");
+		}
+		Parser parser = new Parser(expression);
+		TestSelection selection = parser.parseOr();
+		if (parser.peek() != null) {
+			throw parser.error("Unexpected '" + parser.peek() + "'");
+		}
+		return selection;
+	}
+
+	/**
+	 * Matches the test suites with a label matching the pattern, or the test cases with an identifier matching it.
+	 */
+	private static final class Term extends TestSelection {
+
+		private final String key;
+
+		private final String pattern;
+
+		Term(String key, String pattern) {
+			this.key = key;
+			this.pattern = pattern;
+		}
+
+		@Override
+		Map<TestSuiteIndex.Entry, BitSet> evaluate(TestSuiteIndex index) {
+			if (Parser.SUITE.equals(key)) {
+				return index.selectByLabel(pattern);
+			} else if (Parser.CASE.equals(key)) {
+				return index.selectByTestCase(pattern);
+			} else {
+				return index.selectByTag(pattern);
+			}
+		}
+	}
+
+	private static final class Not extends TestSelection {
+
+		private final TestSelection operand;
+
+		Not(TestSelection operand) {
+			this.operand = operand;
+		}
+
+		@Override
+		Map<TestSuiteIndex.Entry, BitSet> evaluate(TestSuiteIndex index) {
+			Map<TestSuiteIndex.Entry, BitSet> excluded = operand.evaluate(index);
+			Map<TestSuiteIndex.Entry, BitSet> result = new LinkedHashMap<TestSuiteIndex.Entry, BitSet>();
+			for (TestSuiteIndex.Entry entry : index.getEntries()) {
+				BitSet testCases = entry.allTestCases();
+				BitSet exclude = excluded.get(entry);
+				if (exclude != null) {
+					testCases.andNot(exclude);
+				}
+				if (!testCases.isEmpty()) {
+					result.put(entry, testCases);
+				}
+			}
+			return result;
+		}
+	}
+
+	private static final class And extends TestSelection {
+
+		private final TestSelection left;
+
+		private final TestSelection right;
+
+		And(TestSelection left, TestSelection right) {
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		Map<TestSuiteIndex.Entry, BitSet> evaluate(TestSuiteIndex index) {
+			Map<TestSuiteIndex.Entry, BitSet> result = left.evaluate(index);
+			if (result.isEmpty()) {
+				return result;
+			}
+			Map<TestSuiteIndex.Entry, BitSet> other = right.evaluate(index);
+			for (Iterator<Map.Entry<TestSuiteIndex.Entry, BitSet>> iterator = result.entrySet().iterator(); iterator.hasNext();) {
+				Map.Entry<TestSuiteIndex.Entry, BitSet> entry = iterator.next();
+				BitSet testCases = other.get(entry.getKey());
+				if (testCases != null) {
+					entry.getValue().and(testCases);
+				}
+				if (testCases == null || entry.getValue().isEmpty()) {
+					iterator.remove();
+				}
+			}
+			return result;
+		}
+	}
+
+	private static final class Or extends TestSelection {
+
+		private final TestSelection left;
+
+		private final TestSelection right;
+
+		Or(TestSelection left, TestSelection right) {
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		Map<TestSuiteIndex.Entry, BitSet> evaluate(TestSuiteIndex index) {
+			Map<TestSuiteIndex.Entry, BitSet> result = left.evaluate(index);
+			for (Map.Entry<TestSuiteIndex.Entry, BitSet> entry : right.evaluate(index).entrySet()) {
+				BitSet testCases = result.get(entry.getKey());
+				if (testCases == null) {
+					result.put(entry.getKey(), entry.getValue());
+				} else {
+					testCases.or(entry.getValue());
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Recursive descent parser of selection expressions. {@code not} binds stronger than {@code and}, which binds
+	 * stronger than {@code or} and {@code ,}.
+	 */
+	private static final class Parser {
+
+		static final String SUITE = "suite";
+
+		static final String CASE = "case";
+
+		static final String TAG = "tag";
+
+		private final String expression;
+
+		private final List<String> tokens = new ArrayList<String>();
+
+		private int position;
+
+		Parser(String expression) {
+			this.expression = expression;
+			tokenize();
+		}
+
+		private void tokenize() {
+			int i = 0;
+			while (i < expression.length()) {
+				char c = expression.charAt(i);
+				if (Character.isWhitespace(c)) {
+					i++;
+				} else if (c == '(' || c == ')' || c == '!' || c == ',') {
+					tokens.add(String.valueOf(c));
+					i++;
+				} else {
+					StringBuilder token = new StringBuilder();
+					while (i < expression.length()) {
+						c = expression.charAt(i);
+						if (c == '"') {
+							int end = expression.indexOf('"', i + 1);
+							if (end < 0) {
+								throw error("Unterminated quote");
+							}
+							token.append(expression, i + 1, end);
+							i = end + 1;
+						} else if (Character.isWhitespace(c) || c == '(' || c == ')' || c == ',') {
+							break;
+						} else {
+							token.append(c);
+							i++;
+						}
+					}
+					tokens.add(token.toString());
+				}
+			}
+		}
+
+		String peek() {
+			return position < tokens.size() ? tokens.get(position) : null;
+		}
+
+		private String next() {
+			String token = peek();
+			if (token == null) {
+				throw error("Unexpected end of expression");
+			}
+			position++;
+			return token;
+		}
+
+		TestSelection parseOr() {
+			TestSelection selection = parseAnd();
+			while ("or".equalsIgnoreCase(peek()) || ",".equals(peek())) {
+				position++;
+				selection = new Or(selection, parseAnd());
+			}
+			return selection;
+		}
+
+		private TestSelection parseAnd() {
+			TestSelection selection = parseNot();
+			while ("and".equalsIgnoreCase(peek())) {
+				position++;
+				selection = new And(selection, parseNot());
+			}
+			return selection;
+		}
+
+		private TestSelection parseNot() {
+			String token = next();
+			if ("not".equalsIgnoreCase(token) || "!".equals(token)) {
+				return new Not(parseNot());
+			}
+			if ("(".equals(token)) {
+				TestSelection selection = parseOr();
+				if (!")".equals(next())) {
+					throw error("Expected ')'");
+				}
+				return selection;
+			}
+			int separator = token.indexOf(':');
+			String key = separator > 0 ? token.substring(0, separator).toLowerCase() : null;
+			if (!SUITE.equals(key) && !CASE.equals(key) && !TAG.equals(key)) {
+				throw error("Expected suite:<label>, case:<identifier> or tag:<tag> instead of '" + token + "'");
+			}
+			String pattern = token.substring(separator + 1);
+			if (pattern.length() == 0) {
+				throw error("No " + key + " given");
+			}
+			return new Term(key, pattern);
+		}
+
+		IllegalArgumentException error(String message) {
+			return new IllegalArgumentException(message + " in selection '" + expression + "'");
+		}
+	}
+}
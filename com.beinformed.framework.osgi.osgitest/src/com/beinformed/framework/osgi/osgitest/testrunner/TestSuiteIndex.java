@@ -0,0 +1,384 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.testrunner;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.osgi.framework.ServiceReference;
+
+import com.beinformed.framework.osgi.osgitest.Tagged;
+import com.beinformed.framework.osgi.osgitest.TestCase;
+import com.beinformed.framework.osgi.osgitest.TestSuite;
+
+/**
+ * The registered test suites, indexed by label, by the identifiers of their test cases and by the tags of the test
+ * suites and their test cases, so a
+ * {@link TestSelection} is evaluated without walking every test suite. The test cases and tags of a test suite are
+ * indexed when it is added, and only then: a test suite that changes its test cases after it was added keeps being
+ * selected by the old ones until it is added again, which the runner does when the properties of its service are
+ * modified. <br />
+ * Test suites are added and removed by the dependency manager while test runs select from the index, so all
+ * access is synchronized.
+ */
+class TestSuiteIndex {
+
+	private final Map<ServiceReference, Entry> entries = new LinkedHashMap<ServiceReference, Entry>();
+
+	private final Map<String, Set<Entry>> byLabel = new HashMap<String, Set<Entry>>();
+
+	private final Map<String, Set<Entry>> byTestCase = new HashMap<String, Set<Entry>>();
+
+	private final Map<String, Set<Entry>> byTag = new HashMap<String, Set<Entry>>();
+
+	/**
+	 * Adds the given test suite, or replaces the test suite registered under the given reference.
+	 */
+	synchronized void add(ServiceReference reference, TestSuite testSuite) {
+		remove(reference);
+		Entry entry = new Entry(reference, testSuite);
+		entries.put(reference, entry);
+		put(byLabel, testSuite.getLabel(), entry);
+		for (String identifier : entry.positions.keySet()) {
+			put(byTestCase, identifier, entry);
+		}
+		for (String tag : entry.getTags()) {
+			put(byTag, tag, entry);
+		}
+	}
+
+	synchronized void remove(ServiceReference reference) {
+		Entry entry = entries.remove(reference);
+		if (entry == null) {
+			return;
+		}
+		take(byLabel, entry.testSuite.getLabel(), entry);
+		for (String identifier : entry.positions.keySet()) {
+			take(byTestCase, identifier, entry);
+		}
+		for (String tag : entry.getTags()) {
+			take(byTag, tag, entry);
+		}
+	}
+
+	private static void put(Map<String, Set<Entry>> index, String key, Entry entry) {
+		if (key == null) {
+			return;
+		}
+		Set<Entry> indexed = index.get(key);
+		if (indexed == null) {
+			indexed = new LinkedHashSet<Entry>();
+			index.put(key, indexed);
+		}
+		indexed.add(entry);
+	}
+
+	private static void take(Map<String, Set<Entry>> index, String key, Entry entry) {
+		Set<Entry> indexed = key != null ? index.get(key) : null;
+		if (indexed != null && indexed.remove(entry) && indexed.isEmpty()) {
+			index.remove(key);
+		}
+	}
+
+	/**
+	 * @return a copy of the registered test suites by service reference.
+	 */
+	synchronized Map<ServiceReference, TestSuite> getTestSuites() {
+		Map<ServiceReference, TestSuite> testSuites = new LinkedHashMap<ServiceReference, TestSuite>();
+		for (Entry entry : entries.values()) {
+			testSuites.put(entry.reference, entry.testSuite);
+		}
+		return testSuites;
+	}
+
+	/**
+	 * @return the first registered test suite with the given label, or null if there is none.
+	 */
+	synchronized TestSuite findByLabel(String label) {
+		Set<Entry> indexed = label != null ? byLabel.get(label) : null;
+		return indexed != null ? indexed.iterator().next().testSuite : null;
+	}
+
+	synchronized Collection<Entry> getEntries() {
+		return new ArrayList<Entry>(entries.values());
+	}
+
+	/**
+	 * @return all test cases of the test suites with a label matching the given pattern.
+	 */
+	synchronized Map<Entry, BitSet> selectByLabel(String pattern) {
+		Map<Entry, BitSet> selected = new LinkedHashMap<Entry, BitSet>();
+		for (Entry entry : lookup(byLabel, pattern)) {
+			selected.put(entry, entry.allTestCases());
+		}
+		return selected;
+	}
+
+	/**
+	 * @return the test cases with a tag matching the given pattern, and all test cases of the test suites with such
+	 *         a tag.
+	 */
+	synchronized Map<Entry, BitSet> selectByTag(String pattern) {
+		Map<Entry, BitSet> selected = new LinkedHashMap<Entry, BitSet>();
+		Pattern regex = toRegex(pattern);
+		for (Entry entry : lookup(byTag, pattern)) {
+			selected.put(entry, entry.selectByTag(pattern, regex));
+		}
+		return selected;
+	}
+
+	/**
+	 * @return the test cases with an identifier matching the given pattern.
+	 */
+	synchronized Map<Entry, BitSet> selectByTestCase(String pattern) {
+		Map<Entry, BitSet> selected = new LinkedHashMap<Entry, BitSet>();
+		Pattern regex = toRegex(pattern);
+		for (Entry entry : lookup(byTestCase, pattern)) {
+			BitSet testCases = new BitSet();
+			if (regex == null) {
+				testCases.set(entry.positions.get(pattern));
+			} else {
+				for (Map.Entry<String, Integer> position : entry.positions.entrySet()) {
+					if (regex.matcher(position.getKey()).matches()) {
+						testCases.set(position.getValue());
+					}
+				}
+			}
+			selected.put(entry, testCases);
+		}
+		return selected;
+	}
+
+	/**
+	 * @return the entries indexed under the given key, or under any key matching it when it contains wildcards.
+	 */
+	private static Set<Entry> lookup(Map<String, Set<Entry>> index, String pattern) {
+		Pattern regex = toRegex(pattern);
+		if (regex == null) {
+			Set<Entry> indexed = index.get(pattern);
+			return indexed != null ? indexed : Collections.<Entry> emptySet();
+		}
+		Set<Entry> matched = new LinkedHashSet<Entry>();
+		for (Map.Entry<String, Set<Entry>> indexed : index.entrySet()) {
+			if (regex.matcher(indexed.getKey()).matches()) {
+				matched.addAll(indexed.getValue());
+			}
+		}
+		return matched;
+	}
+
+	/**
+	 * @return the regular expression for a pattern with {@code *} and {@code ?} wildcards, or null if the pattern has
+	 *         no wildcards.
+	 */
+	private static Pattern toRegex(String pattern) {
+		if (pattern.indexOf('*') < 0 && pattern.indexOf('?') < 0) {
+			return null;
+		}
+		StringBuilder regex = new StringBuilder();
+		StringBuilder literal = new StringBuilder();
+		for (char c : pattern.toCharArray()) {
+			if (c == '*' || c == '?') {
+				if (literal.length() > 0) {
+					regex.append(Pattern.quote(literal.toString()));
+					literal.setLength(0);
+				}
+				regex.append(c == '*' ? ".*" : ".");
+			} else {
+				literal.append(c);
+			}
+		}
+		if (literal.length() > 0) {
+			regex.append(Pattern.quote(literal.toString()));
+		}
+		return Pattern.compile(regex.toString(), Pattern.DOTALL);
+	}
+
+	/**
+	 * Evaluates the given selection.
+	 */
+	synchronized Selection select(TestSelection selection) {
+		Selection result = new Selection();
+		for (Map.Entry<Entry, BitSet> selected : selection.evaluate(this).entrySet()) {
+			Entry entry = selected.getKey();
+			BitSet testCases = selected.getValue();
+			if (testCases.isEmpty()) {
+				continue;
+			}
+			result.testSuites.put(entry.reference, entry.testSuite);
+			result.testCaseCount += testCases.cardinality();
+			if (testCases.cardinality() < entry.testCases.size()) {
+				List<TestCase> partial = new ArrayList<TestCase>();
+				for (int i = testCases.nextSetBit(0); i >= 0; i = testCases.nextSetBit(i + 1)) {
+					partial.add(entry.testCases.get(i));
+				}
+				result.partialTestCases.put(entry.testSuite, partial);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The test suites and test cases matched by a selection.
+	 */
+	static final class Selection {
+
+		private final Map<ServiceReference, TestSuite> testSuites = new LinkedHashMap<ServiceReference, TestSuite>();
+
+		private final Map<TestSuite, List<TestCase>> partialTestCases = new HashMap<TestSuite, List<TestCase>>();
+
+		private int testCaseCount;
+
+		/**
+		 * @return the test suites of which at least one test case is selected, by service reference.
+		 */
+		Map<ServiceReference, TestSuite> getTestSuites() {
+			return testSuites;
+		}
+
+		/**
+		 * @return the selected test cases of the test suites of which not all test cases are selected.
+		 */
+		Map<TestSuite, List<TestCase>> getPartialTestCases() {
+			return partialTestCases;
+		}
+
+		int getTestCaseCount() {
+			return testCaseCount;
+		}
+	}
+
+	/**
+	 * A registered test suite with its test cases and tags as they were when it was added. The tags of the test
+	 * suite are those in its {@link TestSuite#TAGS_PROPERTY} service property and, if it is {@link Tagged}, its own.
+	 */
+	static final class Entry {
+
+		private final ServiceReference reference;
+
+		private final TestSuite testSuite;
+
+		private final List<TestCase> testCases;
+
+		/**
+		 * Position of each test case in the list of test cases by identifier. The first test case with an
+		 * identifier wins.
+		 */
+		private final Map<String, Integer> positions = new LinkedHashMap<String, Integer>();
+
+		private final Set<String> suiteTags;
+
+		/**
+		 * The test cases with each tag of a {@link Tagged} test case.
+		 */
+		private final Map<String, BitSet> testCaseTags = new HashMap<String, BitSet>();
+
+		Entry(ServiceReference reference, TestSuite testSuite) {
+			this.reference = reference;
+			this.testSuite = testSuite;
+			this.testCases = new ArrayList<TestCase>(testSuite.getTestCases());
+			for (int i = 0; i < testCases.size(); i++) {
+				String identifier = testCases.get(i).getIdentifier();
+				if (identifier != null && !positions.containsKey(identifier)) {
+					positions.put(identifier, i);
+				}
+				if (testCases.get(i) instanceof Tagged) {
+					for (String tag : ((Tagged) testCases.get(i)).getTags()) {
+						BitSet tagged = testCaseTags.get(tag);
+						if (tagged == null) {
+							tagged = new BitSet();
+							testCaseTags.put(tag, tagged);
+						}
+						tagged.set(i);
+					}
+				}
+			}
+			this.suiteTags = getTags(reference);
+			if (testSuite instanceof Tagged) {
+				suiteTags.addAll(((Tagged) testSuite).getTags());
+			}
+		}
+
+		/**
+		 * @return the tags of the test suite and of its test cases.
+		 */
+		Set<String> getTags() {
+			Set<String> tags = new LinkedHashSet<String>(suiteTags);
+			tags.addAll(testCaseTags.keySet());
+			return tags;
+		}
+
+		/**
+		 * @return all test cases if the test suite has a tag matching the given pattern, otherwise the test cases
+		 *         with such a tag.
+		 */
+		BitSet selectByTag(String pattern, Pattern regex) {
+			for (String tag : suiteTags) {
+				if (regex == null ? tag.equals(pattern) : regex.matcher(tag).matches()) {
+					return allTestCases();
+				}
+			}
+			BitSet selected = new BitSet();
+			for (Map.Entry<String, BitSet> tagged : testCaseTags.entrySet()) {
+				if (regex == null ? tagged.getKey().equals(pattern) : regex.matcher(tagged.getKey()).matches()) {
+					selected.or(tagged.getValue());
+				}
+			}
+			return selected;
+		}
+
+		/**
+		 * @return the tags in the {@link TestSuite#TAGS_PROPERTY} service property, given as a {@code String[]} or as
+		 *         a comma separated {@code String}.
+		 */
+		private static Set<String> getTags(ServiceReference reference) {
+			Object property = reference.getProperty(TestSuite.TAGS_PROPERTY);
+			String[] values;
+			if (property instanceof String[]) {
+				values = (String[]) property;
+			} else if (property != null) {
+				values = property.toString().split(",");
+			} else {
+				return new LinkedHashSet<String>();
+			}
+			Set<String> tags = new LinkedHashSet<String>();
+			for (String value : values) {
+				if (value != null && value.trim().length() > 0) {
+					tags.add(value.trim());
+				}
+			}
+			return tags;
+		}
+
+		/**
+		 * @return a new bit set with the bits of all test cases set.
+		 */
+		BitSet allTestCases() {
+			BitSet all = new BitSet(testCases.size());
+			all.set(0, testCases.size());
+			return all;
+		}
+	}
+}
@@ -0,0 +1,30 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.testrunner;
+
+/**
+ * Reported to the monitors when a test case is timed out. Its stack trace is the stack of the thread that was
+ * running the test case at the time it was timed out, so the monitors show where the test case was hanging.
+ */
+class TestTimeoutException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	TestTimeoutException(String message, Thread thread) {
+		super(thread != null ? message + " (thread '" + thread.getName() + "', state " + thread.getState() + ")" : message);
+		setStackTrace(thread != null ? thread.getStackTrace() : new StackTraceElement[0]);
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.base;
+
+import junit.framework.TestCase;
+
+public class LatencyHistogramTest extends TestCase {
+
+	public void testSmallValuesHaveABucketOfTheirOwn() {
+		for (long value = 0; value < 64; value++) {
+			assertEquals(value, LatencyHistogram.bucketOf(value));
+			assertEquals(value, LatencyHistogram.highestValueOf((int) value));
+		}
+	}
+
+	public void testBucketBoundaries() {
+		assertEquals(64, LatencyHistogram.bucketOf(64));
+		assertEquals(127, LatencyHistogram.bucketOf(127));
+		assertEquals(128, LatencyHistogram.bucketOf(128));
+		assertEquals(128, LatencyHistogram.bucketOf(129));
+		assertEquals(129, LatencyHistogram.bucketOf(130));
+		assertEquals(129, LatencyHistogram.highestValueOf(128));
+		assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValueOf(LatencyHistogram.bucketOf(Long.MAX_VALUE)));
+	}
+
+	public void testBucketsAreContiguousAndPrecise() {
+		int previous = 0;
+		for (int exponent = 0; exponent < 63; exponent++) {
+			for (long value : new long[] { 1L << exponent, (1L << exponent) + (1L << exponent) / 2, (2L << exponent) - 1 }) {
+				int bucket = LatencyHistogram.bucketOf(value);
+				assertTrue("bucket of " + value + " not ascending", bucket >= previous);
+				previous = bucket;
+				long highest = LatencyHistogram.highestValueOf(bucket);
+				long lowest = bucket == 0 ? 0 : LatencyHistogram.highestValueOf(bucket - 1) + 1;
+				assertTrue(value + " above bucket " + bucket, value <= highest);
+				assertTrue(value + " below bucket " + bucket, value >= lowest);
+				assertTrue("bucket " + bucket + " too wide for " + value, highest - lowest <= value / 64);
+			}
+		}
+	}
+
+	public void testEmptyHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMin());
+		assertEquals(0, histogram.getMax());
+		assertEquals(0.0, histogram.getMean(), 0.0);
+		assertEquals(0, histogram.getPercentile(50));
+	}
+
+	public void testStatistics() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 1; value <= 10000; value++) {
+			histogram.record(value * 1000);
+		}
+		assertEquals(10000, histogram.getCount());
+		assertEquals(1000, histogram.getMin());
+		assertEquals(10000000, histogram.getMax());
+		assertEquals(5000500.0, histogram.getMean(), 0.0);
+		assertPercentile(histogram, 50, 5000000);
+		assertPercentile(histogram, 90, 9000000);
+		assertPercentile(histogram, 99, 9900000);
+		assertPercentile(histogram, 0, 1000);
+		assertEquals(10000000, histogram.getPercentile(100));
+	}
+
+	public void testNegativeDurationsAreRecordedAsZero() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(-5);
+		assertEquals(1, histogram.getCount());
+		assertEquals(0, histogram.getMin());
+		assertEquals(0, histogram.getMax());
+	}
+
+	private static void assertPercentile(LatencyHistogram histogram, double percentile, long expected) {
+		long actual = histogram.getPercentile(percentile);
+		assertTrue("p" + percentile + " was " + actual + ", expected " + expected, actual >= expected && actual <= expected + expected / 64);
+	}
+}
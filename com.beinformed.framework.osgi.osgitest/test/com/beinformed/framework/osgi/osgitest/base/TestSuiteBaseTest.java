@@ -0,0 +1,101 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.base;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.beinformed.framework.osgi.osgitest.TestMonitor;
+
+public class TestSuiteBaseTest extends TestCase {
+
+	public void testAssertionErrorsAreReported() {
+		Recorder recorder = new Recorder();
+		new Suite().test("failingAssertion", recorder);
+		assertEquals(1, recorder.errors.size());
+		assertTrue(recorder.errors.get(0) instanceof AssertionError);
+	}
+
+	public void testExceptionsAreReported() {
+		Recorder recorder = new Recorder();
+		new Suite().test("failingCall", recorder);
+		assertEquals(1, recorder.errors.size());
+		assertTrue(recorder.errors.get(0) instanceof IllegalStateException);
+	}
+
+	public void testVirtualMachineErrorsAreRethrown() {
+		Recorder recorder = new Recorder();
+		try {
+			new Suite().test("outOfMemory", recorder);
+			fail("Expected an OutOfMemoryError");
+		} catch (OutOfMemoryError e) {
+			assertTrue(recorder.errors.isEmpty());
+		}
+	}
+
+	public void testAddTestsKeepsTheOrderAndSkipsMissingMethods() {
+		TestSuiteBase suite = new TestSuiteBase("bulk") {
+			{
+				addTests("failingCall", "missing", "failingAssertion");
+			}
+
+			public void failingAssertion(TestMonitor monitor) {
+				throw new AssertionError("expected 1");
+			}
+
+			public void failingCall(TestMonitor monitor) {
+				throw new IllegalStateException("closed");
+			}
+		};
+		assertEquals(2, suite.getTestCases().size());
+		assertEquals("failingCall", suite.getTestCases().get(0).getIdentifier());
+		assertEquals("failingAssertion", suite.getTestCases().get(1).getIdentifier());
+	}
+
+	public static final class Suite extends TestSuiteBase {
+
+		public Suite() {
+			super("suite");
+			addTest("failingAssertion");
+			addTest("failingCall");
+			addTest("outOfMemory");
+		}
+
+		public void failingAssertion(TestMonitor monitor) {
+			throw new AssertionError("expected 1");
+		}
+
+		public void failingCall(TestMonitor monitor) {
+			throw new IllegalStateException("closed");
+		}
+
+		public void outOfMemory(TestMonitor monitor) {
+			throw new OutOfMemoryError("simulated");
+		}
+	}
+
+	private static final class Recorder extends NullTestMonitor {
+
+		private final List<Throwable> errors = new ArrayList<Throwable>();
+
+		@Override
+		public void error(String message, Throwable exception) {
+			errors.add(exception);
+		}
+	}
+}
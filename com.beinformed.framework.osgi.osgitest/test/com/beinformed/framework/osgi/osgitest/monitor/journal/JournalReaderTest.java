@@ -0,0 +1,306 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.monitor.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.beinformed.framework.osgi.osgitest.LatencyStatistics;
+import com.beinformed.framework.osgi.osgitest.MeasurementMonitor;
+import com.beinformed.framework.osgi.osgitest.ScopedTestMonitor;
+import com.beinformed.framework.osgi.osgitest.TestCase;
+import com.beinformed.framework.osgi.osgitest.TestMonitor;
+import com.beinformed.framework.osgi.osgitest.TestSuite;
+import com.beinformed.framework.osgi.osgitest.base.LatencyHistogram;
+import com.beinformed.framework.osgi.osgitest.base.TestMetaData;
+
+public class JournalReaderTest extends junit.framework.TestCase {
+
+	private File directory;
+
+	private JournalTestMonitor journal;
+
+	private final TestCase create = new TestMetaData("create", "Create an order");
+
+	private final TestCase cancel = new TestMetaData("cancel", "Cancel an order");
+
+	private final TestSuite orders = new Suite("Orders", create, cancel);
+
+	@Override
+	protected void setUp() throws Exception {
+		directory = File.createTempFile("journal", "");
+		assertTrue(directory.delete() && directory.mkdir());
+		journal = new JournalTestMonitor();
+		journal.setDirectory(directory);
+		journal.setSegmentSize(Journal.MIN_SEGMENT_SIZE);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		journal.stop();
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	public void testRoundTrip() throws IOException {
+		journal.start();
+		journal.beginTestRun();
+		journal.beginTestSuite(orders);
+		journal.beginTest(orders, create);
+		journal.assertion(orders, create, true, null);
+		journal.assertion(orders, create, false, "Order was not created");
+		journal.error(orders, create, "Unexpected exception", new IllegalStateException("Closed"));
+		journal.endTest(orders, create);
+		journal.beginTest(orders, cancel);
+		journal.assertion(orders, cancel, true, null);
+		journal.endTest(orders, cancel);
+		LatencyHistogram latencies = new LatencyHistogram();
+		latencies.record(1000);
+		latencies.record(3000);
+		journal.measurement(orders, cancel, latencies);
+		journal.endTestSuite(orders);
+		journal.endTestRun();
+		journal.stop();
+
+		Recorder recorder = new Recorder();
+		JournalReader reader = new JournalReader(directory);
+		reader.replay(recorder);
+		assertEquals(Arrays.asList("beginTestRun", "beginTestSuite Orders", "beginTest Orders create", "assertion Orders create true null",
+				"assertion Orders create false Order was not created",
+				"error Orders create Unexpected exception java.lang.IllegalStateException: Closed", "endTest Orders create",
+				"beginTest Orders cancel", "assertion Orders cancel true null", "endTest Orders cancel",
+				"measurement Orders cancel n=2 min=1000 max=3000 mean=2000", "endTestSuite Orders", "endTestRun"), recorder.events);
+		assertEquals(1, reader.getSegments());
+		// the events and the definitions of the test suite and its two test cases
+		assertEquals(16, reader.getRecords());
+		assertTrue(recorder.stackTrace, recorder.stackTrace.contains(JournalReaderTest.class.getName() + ".testRoundTrip"));
+		assertEquals("Cancel an order", recorder.lastTestCase.getLabel());
+	}
+
+	public void testEventsSpanSegments() throws IOException {
+		journal.start();
+		journal.beginTestSuite(orders);
+		journal.beginTest(orders, create);
+		for (int i = 0; i < 20000; i++) {
+			journal.assertion(orders, create, false, "Assertion " + i + " failed");
+		}
+		journal.endTest(orders, create);
+		journal.endTestSuite(orders);
+		journal.stop();
+
+		Recorder recorder = new Recorder();
+		JournalReader reader = new JournalReader(directory);
+		reader.replay(recorder);
+		assertTrue(reader.getSegments() > 1);
+		assertEquals(20004, recorder.events.size());
+		assertEquals("assertion Orders create false Assertion 0 failed", recorder.events.get(2));
+		assertEquals("assertion Orders create false Assertion 19999 failed", recorder.events.get(20001));
+		assertEquals("endTestSuite Orders", recorder.events.get(20003));
+	}
+
+	public void testEachSessionDefinesItsOwnIds() throws IOException {
+		TestSuite other = new Suite("Other", create);
+		journal.start();
+		journal.beginTestSuite(orders);
+		journal.endTestSuite(orders);
+		journal.stop();
+		journal.start();
+		journal.beginTestSuite(other);
+		journal.beginTest(other, create);
+		journal.endTest(other, create);
+		journal.endTestSuite(other);
+		journal.stop();
+
+		Recorder recorder = new Recorder();
+		new JournalReader(directory).replay(recorder);
+		assertEquals(Arrays.asList("beginTestSuite Orders", "endTestSuite Orders", "beginTestSuite Other", "beginTest Other create",
+				"endTest Other create", "endTestSuite Other"), recorder.events);
+	}
+
+	public void testTestSuiteIsDefinedAgainWhenItRunsAgain() throws IOException {
+		journal.start();
+		for (int i = 0; i < 2; i++) {
+			journal.beginTestSuite(orders);
+			journal.beginTest(orders, create);
+			journal.assertion(orders, create, i == 0, "Run " + i + " failed");
+			journal.endTest(orders, create);
+			journal.endTestSuite(orders);
+		}
+		journal.stop();
+
+		Recorder recorder = new Recorder();
+		JournalReader reader = new JournalReader(directory);
+		reader.replay(recorder);
+		assertEquals(Arrays.asList("beginTestSuite Orders", "beginTest Orders create", "assertion Orders create true null",
+				"endTest Orders create", "endTestSuite Orders", "beginTestSuite Orders", "beginTest Orders create",
+				"assertion Orders create false Run 1 failed", "endTest Orders create", "endTestSuite Orders"), recorder.events);
+		// the ids are dropped at the end of the test suite, so both runs define the test suite and its test case
+		assertEquals(14, reader.getRecords());
+	}
+
+	public void testReplayStopsAtAnIncompleteRecord() throws IOException {
+		journal.start();
+		journal.beginTestRun();
+		journal.beginTestSuite(orders);
+		journal.endTestSuite(orders);
+		journal.stop();
+
+		// a record of which the length was never written, as if the process died while writing it
+		File segment = new File(directory, Journal.segmentName(0));
+		RandomAccessFile file = new RandomAccessFile(segment, "rw");
+		try {
+			file.seek(Journal.SEGMENT_HEADER_SIZE + Journal.LENGTH_OFFSET);
+			int length = file.readInt();
+			file.seek(Journal.SEGMENT_HEADER_SIZE + length + Journal.LENGTH_OFFSET);
+			file.writeInt(0);
+		} finally {
+			file.close();
+		}
+
+		Recorder recorder = new Recorder();
+		JournalReader reader = new JournalReader(directory);
+		reader.replay(recorder);
+		assertEquals(Collections.singletonList("beginTestRun"), recorder.events);
+		assertEquals(1, reader.getRecords());
+	}
+
+	public void testReplayOfAMissingDirectoryFails() {
+		try {
+			new JournalReader(new File(directory, "missing")).replay(new Recorder());
+			fail("Expected an IOException");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Records the events it receives as text.
+	 */
+	private static final class Recorder implements ScopedTestMonitor, MeasurementMonitor {
+
+		private final List<String> events = new ArrayList<String>();
+
+		private String stackTrace;
+
+		private TestCase lastTestCase;
+
+		@Override
+		public void beginTestRun() {
+			events.add("beginTestRun");
+		}
+
+		@Override
+		public void beginTestSuite(TestSuite suite) {
+			events.add("beginTestSuite " + suite.getLabel());
+		}
+
+		@Override
+		public void beginTest(TestCase testCase) {
+			events.add("beginTest " + testCase.getIdentifier());
+		}
+
+		@Override
+		public void beginTest(TestSuite suite, TestCase testCase) {
+			events.add("beginTest " + suite.getLabel() + " " + testCase.getIdentifier());
+			lastTestCase = testCase;
+		}
+
+		@Override
+		public void assertion(boolean condition, String messageOnFailure) {
+			events.add("assertion " + condition + " " + messageOnFailure);
+		}
+
+		@Override
+		public void assertion(TestSuite suite, TestCase testCase, boolean condition, String messageOnFailure) {
+			events.add("assertion " + suite.getLabel() + " " + testCase.getIdentifier() + " " + condition + " " + messageOnFailure);
+		}
+
+		@Override
+		public void error(String message, Throwable exception) {
+			events.add("error " + message + " " + exception);
+		}
+
+		@Override
+		public void error(TestSuite suite, TestCase testCase, String message, Throwable exception) {
+			events.add("error " + suite.getLabel() + " " + testCase.getIdentifier() + " " + message + " " + exception);
+			StringWriter writer = new StringWriter();
+			exception.printStackTrace(new PrintWriter(writer));
+			stackTrace = writer.toString();
+		}
+
+		@Override
+		public void endTest(TestCase testCase) {
+			events.add("endTest " + testCase.getIdentifier());
+		}
+
+		@Override
+		public void endTest(TestSuite suite, TestCase testCase) {
+			events.add("endTest " + suite.getLabel() + " " + testCase.getIdentifier());
+		}
+
+		@Override
+		public void measurement(TestSuite suite, TestCase testCase, LatencyStatistics statistics) {
+			events.add("measurement " + suite.getLabel() + " " + testCase.getIdentifier() + " n=" + statistics.getCount() + " min="
+					+ statistics.getMin() + " max=" + statistics.getMax() + " mean=" + Math.round(statistics.getMean()));
+		}
+
+		@Override
+		public void endTestSuite(TestSuite suite) {
+			events.add("endTestSuite " + suite.getLabel());
+		}
+
+		@Override
+		public void endTestRun() {
+			events.add("endTestRun");
+		}
+	}
+
+	private static final class Suite implements TestSuite {
+
+		private final String label;
+
+		private final List<TestCase> testCases;
+
+		Suite(String label, TestCase... testCases) {
+			this.label = label;
+			this.testCases = Arrays.asList(testCases);
+		}
+
+		@Override
+		public String getLabel() {
+			return label;
+		}
+
+		@Override
+		public List<TestCase> getTestCases() {
+			return testCases;
+		}
+
+		@Override
+		public void test(String testCaseId, TestMonitor monitor) {
+			// not executed
+		}
+	}
+}
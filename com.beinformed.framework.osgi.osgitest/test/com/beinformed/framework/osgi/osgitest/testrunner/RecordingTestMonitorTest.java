@@ -0,0 +1,93 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.testrunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.beinformed.framework.osgi.osgitest.ScopedTestMonitor;
+import com.beinformed.framework.osgi.osgitest.TestCase;
+import com.beinformed.framework.osgi.osgitest.TestSuite;
+import com.beinformed.framework.osgi.osgitest.base.NullTestMonitor;
+import com.beinformed.framework.osgi.osgitest.base.TestMetaData;
+
+public class RecordingTestMonitorTest extends junit.framework.TestCase {
+
+	private final TestCase create = new TestMetaData("create");
+
+	private final TestCase cancel = new TestMetaData("cancel");
+
+	public void testPassedAssertionsAreReplayedInOrder() {
+		RecordingTestMonitor recording = new RecordingTestMonitor();
+		recording.beginTest(null, create);
+		for (int i = 0; i < 3; i++) {
+			recording.assertion(null, create, true, null);
+		}
+		recording.assertion(null, create, false, "failed");
+		recording.assertion(null, create, true, null);
+		recording.assertion(null, cancel, true, null);
+		recording.assertion(true, null);
+		recording.assertion(true, null);
+		recording.endTest(null, create);
+
+		Recorder recorder = new Recorder();
+		recording.replay(recorder);
+		assertEquals(Arrays.asList("beginTest create", "assertion create true", "assertion create true", "assertion create true",
+				"assertion create false", "assertion create true", "assertion cancel true", "assertion true", "assertion true",
+				"endTest create"), recorder.events);
+	}
+
+	public void testPassedAssertionsAreCounted() {
+		RecordingTestMonitor recording = new RecordingTestMonitor();
+		for (int i = 0; i < 100000; i++) {
+			recording.assertion(null, create, true, null);
+		}
+		Recorder recorder = new Recorder();
+		recording.replay(recorder);
+		assertEquals(100000, recorder.events.size());
+	}
+
+	private static final class Recorder extends NullTestMonitor implements ScopedTestMonitor {
+
+		private final List<String> events = new ArrayList<String>();
+
+		@Override
+		public void assertion(boolean condition, String messageOnFailure) {
+			events.add("assertion " + condition);
+		}
+
+		@Override
+		public void beginTest(TestSuite suite, TestCase testCase) {
+			events.add("beginTest " + testCase.getIdentifier());
+		}
+
+		@Override
+		public void assertion(TestSuite suite, TestCase testCase, boolean condition, String messageOnFailure) {
+			events.add("assertion " + testCase.getIdentifier() + " " + condition);
+		}
+
+		@Override
+		public void error(TestSuite suite, TestCase testCase, String message, Throwable exception) {
+			events.add("error " + testCase.getIdentifier() + " " + message);
+		}
+
+		@Override
+		public void endTest(TestSuite suite, TestCase testCase) {
+			events.add("endTest " + testCase.getIdentifier());
+		}
+	}
+}
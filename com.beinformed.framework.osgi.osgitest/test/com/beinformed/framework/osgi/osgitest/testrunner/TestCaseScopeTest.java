@@ -0,0 +1,288 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.testrunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.beinformed.framework.osgi.osgitest.ScopedTestMonitor;
+import com.beinformed.framework.osgi.osgitest.TestCase;
+import com.beinformed.framework.osgi.osgitest.TestMonitor;
+import com.beinformed.framework.osgi.osgitest.TestSuite;
+import com.beinformed.framework.osgi.osgitest.base.NullTestMonitor;
+import com.beinformed.framework.osgi.osgitest.base.TestMetaData;
+
+public class TestCaseScopeTest extends junit.framework.TestCase {
+
+	private final TestCase testCase = new TestMetaData("test");
+
+	private ExecutorService executor;
+
+	@Override
+	protected void setUp() throws Exception {
+		executor = Executors.newSingleThreadExecutor();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		executor.shutdownNow();
+	}
+
+	public void testCompletedTestCaseIsReportedOnce() throws InterruptedException {
+		Recorder recorder = new Recorder();
+		TestCaseScope scope = new TestCaseScope(new Suite(new Body() {
+			@Override
+			public void run(TestMonitor monitor) {
+				monitor.assertion(true, null);
+			}
+		}), testCase, recorder, false, null);
+		scope.run();
+		scope.timeOut("Too late");
+		scope.run();
+		assertTrue(scope.awaitFinished(0, TimeUnit.MILLISECONDS));
+		assertFalse(scope.isCancelled());
+		assertEquals(Arrays.asList("beginTest", "assertion true", "endTest"), recorder.events());
+	}
+
+	public void testTimeOutBeforeTheTestCaseRuns() throws InterruptedException {
+		final AtomicBoolean executed = new AtomicBoolean();
+		Recorder recorder = new Recorder();
+		TestCaseScope scope = new TestCaseScope(new Suite(new Body() {
+			@Override
+			public void run(TestMonitor monitor) {
+				executed.set(true);
+			}
+		}), testCase, recorder, false, null);
+		scope.timeOut("Deadline expired");
+		scope.run();
+		assertFalse(executed.get());
+		assertTrue(scope.awaitFinished(0, TimeUnit.MILLISECONDS));
+		assertEquals(Arrays.asList("beginTest", "error TestTimeoutException", "endTest"), recorder.events());
+	}
+
+	public void testTimeOutInterruptsTheRunningTestCase() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final AtomicBoolean interrupted = new AtomicBoolean();
+		Recorder recorder = new Recorder();
+		final TestCaseScope scope = new TestCaseScope(new Suite(new Body() {
+			@Override
+			public void run(TestMonitor monitor) {
+				started.countDown();
+				try {
+					Thread.sleep(10000);
+				} catch (InterruptedException e) {
+					interrupted.set(true);
+				}
+				monitor.assertion(true, "after the timeout");
+			}
+		}), testCase, recorder, false, null);
+		Future<Boolean> interruptLeft = executor.submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				scope.run();
+				return Thread.currentThread().isInterrupted();
+			}
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		scope.timeOut("Test case did not complete");
+		assertTrue(scope.isCancelled());
+		assertTrue(scope.awaitFinished(0, TimeUnit.MILLISECONDS));
+		assertFalse("interrupt leaked into the next task", interruptLeft.get(5, TimeUnit.SECONDS));
+		assertTrue(interrupted.get());
+		assertEquals(Arrays.asList("beginTest", "error TestTimeoutException", "endTest"), recorder.events());
+	}
+
+	public void testTimeOutWhileTheTestCaseReturnsDoesNotLeakTheInterrupt() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch returning = new CountDownLatch(1);
+		final AtomicReference<Thread> worker = new AtomicReference<Thread>();
+		// the timeout is reported under the scope lock, before the thread is interrupted: let the test case return
+		// and wait until its thread needs the lock to end the test case
+		Recorder recorder = new Recorder() {
+			@Override
+			public synchronized void error(TestSuite suite, TestCase testCase, String message, Throwable exception) {
+				super.error(suite, testCase, message, exception);
+				returning.countDown();
+				long deadline = System.currentTimeMillis() + 5000;
+				while (worker.get().getState() != Thread.State.BLOCKED && System.currentTimeMillis() < deadline) {
+					Thread.yield();
+				}
+			}
+		};
+		final TestCaseScope scope = new TestCaseScope(new Suite(new Body() {
+			@Override
+			public void run(TestMonitor monitor) {
+				worker.set(Thread.currentThread());
+				started.countDown();
+				awaitUninterruptibly(returning);
+			}
+		}), testCase, recorder, false, null);
+		Future<Boolean> interruptLeft = executor.submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				scope.run();
+				return Thread.currentThread().isInterrupted();
+			}
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		scope.timeOut("Test case did not complete");
+		assertFalse("interrupt leaked into the next task", interruptLeft.get(5, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList("beginTest", "error TestTimeoutException", "endTest"), recorder.events());
+	}
+
+	public void testRaceBetweenCompletionAndTimeOut() throws Exception {
+		for (int i = 0; i < 2000; i++) {
+			Recorder recorder = new Recorder();
+			final TestCaseScope scope = new TestCaseScope(new Suite(new Body() {
+				@Override
+				public void run(TestMonitor monitor) {
+					monitor.assertion(true, null);
+				}
+			}), testCase, recorder, i % 2 == 0, null);
+			Future<Boolean> interruptLeft = executor.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					scope.run();
+					return Thread.interrupted();
+				}
+			});
+			if (i % 3 != 0) {
+				Thread.yield();
+			}
+			scope.timeOut("Test case did not complete");
+			assertFalse("interrupt leaked into the next task in iteration " + i, interruptLeft.get(5, TimeUnit.SECONDS));
+			assertTrue(scope.awaitFinished(0, TimeUnit.MILLISECONDS));
+			List<String> events = recorder.events();
+			assertEquals(events.toString(), "beginTest", events.get(0));
+			assertEquals(events.toString(), "endTest", events.get(events.size() - 1));
+			assertEquals(events.toString(), 1, Collections.frequency(events, "endTest"));
+		}
+	}
+
+	public void testInterruptedThreadDoesNotRunTheTestCase() throws InterruptedException {
+		final AtomicBoolean executed = new AtomicBoolean();
+		Recorder recorder = new Recorder();
+		TestCaseScope scope = new TestCaseScope(new Suite(new Body() {
+			@Override
+			public void run(TestMonitor monitor) {
+				executed.set(true);
+			}
+		}), testCase, recorder, false, null);
+		Thread.currentThread().interrupt();
+		try {
+			scope.run();
+		} finally {
+			assertTrue(Thread.interrupted());
+		}
+		assertFalse(executed.get());
+		assertTrue(scope.awaitFinished(0, TimeUnit.MILLISECONDS));
+		assertEquals(Arrays.asList("beginTest", "error TestTimeoutException", "endTest"), recorder.events());
+	}
+
+	public void testBufferedResultsArePassedOnWhenTheTestCaseEnds() {
+		final Recorder recorder = new Recorder();
+		TestCaseScope scope = new TestCaseScope(new Suite(new Body() {
+			@Override
+			public void run(TestMonitor monitor) {
+				monitor.assertion(false, "failed");
+				assertTrue(recorder.events().isEmpty());
+			}
+		}), testCase, recorder, true, null);
+		scope.run();
+		assertEquals(Arrays.asList("beginTest", "assertion false", "endTest"), recorder.events());
+	}
+
+	private static void awaitUninterruptibly(CountDownLatch latch) {
+		while (true) {
+			try {
+				latch.await();
+				return;
+			} catch (InterruptedException e) {
+				// keep waiting
+			}
+		}
+	}
+
+	private interface Body {
+		void run(TestMonitor monitor);
+	}
+
+	private static final class Suite implements TestSuite {
+
+		private final Body body;
+
+		Suite(Body body) {
+			this.body = body;
+		}
+
+		@Override
+		public String getLabel() {
+			return "suite";
+		}
+
+		@Override
+		public List<TestCase> getTestCases() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public void test(String testCaseId, TestMonitor monitor) {
+			body.run(monitor);
+		}
+	}
+
+	/**
+	 * Records the test case events it receives.
+	 */
+	private static class Recorder extends NullTestMonitor implements ScopedTestMonitor {
+
+		private final List<String> events = new ArrayList<String>();
+
+		synchronized List<String> events() {
+			return new ArrayList<String>(events);
+		}
+
+		@Override
+		public synchronized void beginTest(TestSuite suite, TestCase testCase) {
+			events.add("beginTest");
+		}
+
+		@Override
+		public synchronized void assertion(TestSuite suite, TestCase testCase, boolean condition, String messageOnFailure) {
+			events.add("assertion " + condition);
+		}
+
+		@Override
+		public synchronized void error(TestSuite suite, TestCase testCase, String message, Throwable exception) {
+			events.add("error " + exception.getClass().getSimpleName());
+		}
+
+		@Override
+		public synchronized void endTest(TestSuite suite, TestCase testCase) {
+			events.add("endTest");
+		}
+	}
+}
@@ -0,0 +1,210 @@
+/*
+ *  Copyright 2012 Be Informed B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.beinformed.framework.osgi.osgitest.testrunner;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.osgi.framework.ServiceReference;
+
+import com.beinformed.framework.osgi.osgitest.TestCase;
+import com.beinformed.framework.osgi.osgitest.TestMonitor;
+import com.beinformed.framework.osgi.osgitest.TestSuite;
+import com.beinformed.framework.osgi.osgitest.base.TestMetaData;
+
+public class TestSelectionTest extends junit.framework.TestCase {
+
+	private TestSuiteIndex index;
+
+	@Override
+	protected void setUp() throws Exception {
+		index = new TestSuiteIndex();
+		index.add(reference(null), new Suite("OrderService").with("create", "smoke").with("cancel").with("slowReport", "slow"));
+		index.add(reference("manual"), new Suite("OrderUI").with("click").with("slowRender", "slow"));
+		index.add(reference(null), new Suite("Billing Service").with("invoice", "smoke"));
+	}
+
+	public void testSuiteTermMatchesAllTestCasesOfTheSuite() {
+		assertSelected("suite:OrderService", "OrderService/create", "OrderService/cancel", "OrderService/slowReport");
+	}
+
+	public void testCaseTermMatchesTestCasesOfAnySuite() {
+		assertSelected("case:click", "OrderUI/click");
+	}
+
+	public void testTagTermMatchesTaggedTestCasesAndTaggedSuites() {
+		assertSelected("tag:smoke", "OrderService/create", "Billing Service/invoice");
+		assertSelected("tag:manual", "OrderUI/click", "OrderUI/slowRender");
+	}
+
+	public void testWildcards() {
+		assertSelected("suite:Order*", "OrderService/create", "OrderService/cancel", "OrderService/slowReport", "OrderUI/click",
+				"OrderUI/slowRender");
+		assertSelected("case:slow*", "OrderService/slowReport", "OrderUI/slowRender");
+		assertSelected("case:c?ncel", "OrderService/cancel");
+	}
+
+	public void testQuotedTermsMayContainSpaces() {
+		assertSelected("suite:\"Billing Service\"", "Billing Service/invoice");
+		assertSelected("suite:\"Billing *\"", "Billing Service/invoice");
+	}
+
+	public void testAndIntersects() {
+		assertSelected("suite:Order* and tag:slow", "OrderService/slowReport", "OrderUI/slowRender");
+		assertSelected("suite:OrderUI and tag:smoke");
+	}
+
+	public void testOrUnites() {
+		assertSelected("case:click or case:invoice", "OrderUI/click", "Billing Service/invoice");
+		assertSelected("case:click, case:invoice", "OrderUI/click", "Billing Service/invoice");
+	}
+
+	public void testNotComplements() {
+		assertSelected("not suite:Order*", "Billing Service/invoice");
+		assertSelected("!tag:slow and suite:OrderUI", "OrderUI/click");
+	}
+
+	public void testNotBindsStrongerThanAndWhichBindsStrongerThanOr() {
+		assertSelected("case:invoice or suite:OrderUI and not tag:slow", "OrderUI/click", "Billing Service/invoice");
+		assertSelected("(case:invoice or suite:OrderUI) and not tag:slow", "OrderUI/click", "Billing Service/invoice");
+		assertSelected("not (tag:slow or tag:smoke)", "OrderService/cancel", "OrderUI/click");
+	}
+
+	public void testKeywordsAndKeysAreCaseInsensitive() {
+		assertSelected("SUITE:OrderUI AND NOT Tag:slow", "OrderUI/click");
+	}
+
+	public void testTermsMatchNothing() {
+		assertSelected("suite:Unknown");
+		assertSelected("case:unknown or tag:unknown");
+	}
+
+	public void testSelectReportsPartialSuites() {
+		TestSuiteIndex.Selection selection = index.select(TestSelection.parse("suite:OrderService or case:click"));
+		assertEquals(4, selection.getTestCaseCount());
+		assertEquals(2, selection.getTestSuites().size());
+		Map<TestSuite, List<TestCase>> partial = selection.getPartialTestCases();
+		assertEquals(1, partial.size());
+		TestSuite orderUI = index.findByLabel("OrderUI");
+		assertEquals(1, partial.get(orderUI).size());
+		assertEquals("click", partial.get(orderUI).get(0).getIdentifier());
+	}
+
+	public void testInvalidExpressions() {
+		assertInvalid(null);
+		assertInvalid("");
+		assertInvalid("OrderService");
+		assertInvalid("label:OrderService");
+		assertInvalid("suite:");
+		assertInvalid("suite:Order and");
+		assertInvalid("(suite:Order");
+		assertInvalid("suite:Order)");
+		assertInvalid("suite:\"Order");
+		assertInvalid("not");
+	}
+
+	private void assertSelected(String expression, String... expected) {
+		Set<String> selected = new TreeSet<String>();
+		for (Map.Entry<TestSuite, List<TestCase>> entry : select(expression).entrySet()) {
+			for (TestCase testCase : entry.getValue()) {
+				selected.add(entry.getKey().getLabel() + "/" + testCase.getIdentifier());
+			}
+		}
+		assertEquals(expression, new TreeSet<String>(Arrays.asList(expected)), selected);
+	}
+
+	/**
+	 * @return the selected test cases by test suite, including the test suites of which all test cases are selected.
+	 */
+	private Map<TestSuite, List<TestCase>> select(String expression) {
+		TestSuiteIndex.Selection selection = index.select(TestSelection.parse(expression));
+		Map<TestSuite, List<TestCase>> selected = new HashMap<TestSuite, List<TestCase>>();
+		for (TestSuite testSuite : selection.getTestSuites().values()) {
+			List<TestCase> testCases = selection.getPartialTestCases().get(testSuite);
+			selected.put(testSuite, testCases != null ? testCases : testSuite.getTestCases());
+		}
+		return selected;
+	}
+
+	private static void assertInvalid(String expression) {
+		try {
+			TestSelection.parse(expression);
+			fail("Expected '" + expression + "' to be invalid");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * @return a service reference with the given test suite tags property.
+	 */
+	private static ServiceReference reference(final String tags) {
+		return (ServiceReference) Proxy.newProxyInstance(TestSelectionTest.class.getClassLoader(), new Class<?>[] { ServiceReference.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						if ("getProperty".equals(method.getName())) {
+							return TestSuite.TAGS_PROPERTY.equals(args[0]) ? tags : null;
+						} else if ("hashCode".equals(method.getName())) {
+							return System.identityHashCode(proxy);
+						} else if ("equals".equals(method.getName())) {
+							return proxy == args[0];
+						}
+						return null;
+					}
+				});
+	}
+
+	private static final class Suite implements TestSuite {
+
+		private final String label;
+
+		private final List<TestCase> testCases = new ArrayList<TestCase>();
+
+		Suite(String label) {
+			this.label = label;
+		}
+
+		Suite with(String identifier, String... tags) {
+			testCases.add(new TestMetaData(identifier, identifier, tags));
+			return this;
+		}
+
+		@Override
+		public String getLabel() {
+			return label;
+		}
+
+		@Override
+		public List<TestCase> getTestCases() {
+			return Collections.unmodifiableList(testCases);
+		}
+
+		@Override
+		public void test(String testCaseId, TestMonitor monitor) {
+			// not executed
+		}
+	}
+}
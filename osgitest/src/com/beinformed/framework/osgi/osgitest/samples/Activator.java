@@ -15,6 +15,8 @@
  */
 package com.beinformed.framework.osgi.osgitest.samples;
 
+import java.util.Properties;
+
 import org.apache.felix.dm.DependencyActivatorBase;
 import org.apache.felix.dm.DependencyManager;
 import org.osgi.framework.BundleContext;
@@ -47,7 +49,9 @@ public class Activator extends DependencyActivatorBase {
 				.setImplementation(lifecycleTestSuite));
 		
 		TestSuite lifecycleTestSuiteUnresolvableDependency = new MyBaseClassBasedLifecycleTestSuiteWithUnresolvableDependency("My base class lifecycle based testsuite with unresolvable dependency.");
-		manager.add(manager.createComponent().setInterface(TestSuite.class.getName(), null)
+		Properties lifecycleTestSuiteUnresolvableDependencyProperties = new Properties();
+		lifecycleTestSuiteUnresolvableDependencyProperties.put(TestSuite.WIRING_TIMEOUT_PROPERTY, "5000");
+		manager.add(manager.createComponent().setInterface(TestSuite.class.getName(), lifecycleTestSuiteUnresolvableDependencyProperties)
 				.setImplementation(lifecycleTestSuiteUnresolvableDependency));
 	}
 	
@@ -19,10 +19,10 @@ import com.beinformed.framework.osgi.osgitest.TestMonitor;
 import com.beinformed.framework.osgi.osgitest.annotation.TestCase;
 import com.beinformed.framework.osgi.osgitest.annotation.TestSuite;
 
-@TestSuite(label="My annotation based testsuite")
+@TestSuite(label="My annotation based testsuite", tags="sample")
 public class MyAnnotationBasedTestSuite {
 
-	@TestCase(identifier="annotation-1", label="First annotation based test")
+	@TestCase(identifier="annotation-1", label="First annotation based test", tags={"smoke", "prod-safe"})
 	public void testAnnotationTestCase(TestMonitor monitor) {
 		monitor.assertion(true, "The world is ending.");
 	}
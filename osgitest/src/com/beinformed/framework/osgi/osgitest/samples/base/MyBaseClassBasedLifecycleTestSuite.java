@@ -17,9 +17,13 @@ import java.util.Properties;
 
 import org.apache.felix.dm.Component;
 import org.apache.felix.dm.DependencyManager;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.beinformed.framework.osgi.frameworkstate.FrameworkStateService;
+import com.beinformed.framework.osgi.frameworkstate.Token;
 import com.beinformed.framework.osgi.osgitest.TestMonitor;
 import com.beinformed.framework.osgi.osgitest.TestSuiteLifecycle;
 import com.beinformed.framework.osgi.osgitest.base.TestSuiteBase;
@@ -43,18 +47,33 @@ public class MyBaseClassBasedLifecycleTestSuite extends TestSuiteBase implements
 	@Override
 	public void setup(final DependencyManager dependencyManager) {
 		LOGGER.info("setup...");
+		// tell the framework we are still busy, so the test runner does not give up on the wiring while the
+		// component is not published yet
+		final BundleContext context = dependencyManager.getBundleContext();
+		final ServiceReference reference = context.getServiceReference(FrameworkStateService.class.getName());
+		final FrameworkStateService frameworkStateService = reference != null ? (FrameworkStateService) context.getService(reference) : null;
+		final Token token = frameworkStateService != null ? frameworkStateService.startWork(this) : null;
 		new Thread(() -> {
-			LOGGER.info("pausing component publishing...");
 			try {
-				Thread.sleep(2000);
-			} catch (Exception e) {
+				LOGGER.info("pausing component publishing...");
+				try {
+					Thread.sleep(2000);
+				} catch (Exception e) {
+				}
+				LOGGER.info("publising component...");
+				Properties properties = new Properties();
+				properties.setProperty("key", "bla");
+				dependencyManager.add(dependencyManager.createComponent()
+						.setImplementation(this)
+						.setInterface(Object.class.getName(), properties));
+			} finally {
+				if (token != null) {
+					frameworkStateService.endWork(token);
+				}
+				if (frameworkStateService != null) {
+					context.ungetService(reference);
+				}
 			}
-			LOGGER.info("publising component...");
-			Properties properties = new Properties();
-			properties.setProperty("key", "bla");
-			dependencyManager.add(dependencyManager.createComponent()
-					.setImplementation(this)
-					.setInterface(Object.class.getName(), properties));
 		}).start();
 	}
 